@@ -17,6 +17,7 @@ import java.time.LocalDateTime;
 @Table(name = "cierre_caja")
 @NamedQueries({
     @NamedQuery(name = "CierreCaja.findAll", query = "SELECT c FROM CierreCaja c"),
+    @NamedQuery(name = "CierreCaja.pagina", query = "SELECT c FROM CierreCaja c WHERE c.id < :cursor ORDER BY c.id DESC"),
     @NamedQuery(name = "CierreCaja.findByUsuario", query = "SELECT c FROM CierreCaja c WHERE c.usuario.id = :usuarioId ORDER BY c.fechaApertura DESC"),
     @NamedQuery(name = "CierreCaja.findAbiertos", query = "SELECT c FROM CierreCaja c WHERE c.estado = 'ABIERTO'"),
     @NamedQuery(name = "CierreCaja.findAbiertoByUsuario", 
@@ -56,6 +57,10 @@ public class CierreCaja implements Serializable {
     @Column(name = "tarjeta_sistema", precision = 10, scale = 2)
     private BigDecimal tarjetaSistema = BigDecimal.ZERO;
 
+    // Cantidad de facturas activas de la caja; se mantiene junto con los totales del sistema
+    @Column(name = "cantidad_facturas")
+    private Long cantidadFacturas = 0L;
+
     @Column(name = "diferencia_efectivo", precision = 10, scale = 2)
     private BigDecimal diferenciaEfectivo = BigDecimal.ZERO;
 
@@ -76,6 +81,7 @@ public class CierreCaja implements Serializable {
         this.fechaApertura = LocalDateTime.now();
         this.efectivoSistema = BigDecimal.ZERO;
         this.tarjetaSistema = BigDecimal.ZERO;
+        this.cantidadFacturas = 0L;
     }
 
     // Getters y Setters
@@ -95,6 +101,8 @@ public class CierreCaja implements Serializable {
     public void setEfectivoSistema(BigDecimal efectivoSistema) { this.efectivoSistema = efectivoSistema; }
     public BigDecimal getTarjetaSistema() { return tarjetaSistema; }
     public void setTarjetaSistema(BigDecimal tarjetaSistema) { this.tarjetaSistema = tarjetaSistema; }
+    public Long getCantidadFacturas() { return cantidadFacturas; }
+    public void setCantidadFacturas(Long cantidadFacturas) { this.cantidadFacturas = cantidadFacturas; }
     public BigDecimal getDiferenciaEfectivo() { return diferenciaEfectivo; }
     public void setDiferenciaEfectivo(BigDecimal diferenciaEfectivo) { this.diferenciaEfectivo = diferenciaEfectivo; }
     public BigDecimal getDiferenciaTarjeta() { return diferenciaTarjeta; }
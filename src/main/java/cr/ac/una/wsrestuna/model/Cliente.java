@@ -16,6 +16,7 @@ import java.time.LocalDate;
 @NamedQueries({
     @NamedQuery(name = "Cliente.findAll", query = "SELECT c FROM Cliente c"),
     @NamedQuery(name = "Cliente.findActivos", query = "SELECT c FROM Cliente c WHERE c.estado = 'A'"),
+    @NamedQuery(name = "Cliente.paginaActivos", query = "SELECT c FROM Cliente c WHERE c.estado = 'A' AND c.id < :cursor ORDER BY c.id DESC"),
     @NamedQuery(name = "Cliente.findByCorreo", query = "SELECT c FROM Cliente c WHERE c.correo = :correo"),
     @NamedQuery(name = "Cliente.findByNombre", query = "SELECT c FROM Cliente c WHERE UPPER(c.nombre) LIKE :nombre")
 })
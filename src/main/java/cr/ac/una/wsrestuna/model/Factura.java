@@ -18,11 +18,12 @@ import java.util.List;
 @Table(name = "factura")
 @NamedQueries({
     @NamedQuery(name = "Factura.findAll", query = "SELECT f FROM Factura f"),
+    @NamedQuery(name = "Factura.pagina", query = "SELECT f FROM Factura f WHERE f.id < :cursor ORDER BY f.id DESC"),
     @NamedQuery(name = "Factura.findByFecha", 
-                query = "SELECT f FROM Factura f WHERE f.fechaHora BETWEEN :fechaInicio AND :fechaFin ORDER BY f.fechaHora DESC"),
-    @NamedQuery(name = "Factura.findByUsuario", query = "SELECT f FROM Factura f WHERE f.usuario.id = :usuarioId"),
+                query = "SELECT f FROM Factura f WHERE f.fechaHora BETWEEN :fechaInicio AND :fechaFin AND f.id < :cursor ORDER BY f.id DESC"),
+    @NamedQuery(name = "Factura.findByUsuario", query = "SELECT f FROM Factura f WHERE f.usuario.id = :usuarioId AND f.id < :cursor ORDER BY f.id DESC"),
     @NamedQuery(name = "Factura.findByCierre", query = "SELECT f FROM Factura f WHERE f.cierreCaja.id = :cierreId"),
-    @NamedQuery(name = "Factura.findByCliente", query = "SELECT f FROM Factura f WHERE f.cliente.id = :clienteId")
+    @NamedQuery(name = "Factura.findByCliente", query = "SELECT f FROM Factura f WHERE f.cliente.id = :clienteId AND f.id < :cursor ORDER BY f.id DESC")
 })
 public class Factura implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -141,13 +141,6 @@ public class GrupoProducto implements Serializable {
         return "S".equals(this.menuRapido);
     }
 
-    public void incrementarVentas() {
-        if (this.totalVentas == null) {
-            this.totalVentas = 0L;
-        }
-        this.totalVentas++;
-    }
-
     @Override
     public int hashCode() {
         int hash = 0;
@@ -16,6 +16,8 @@ import java.util.List;
 @NamedQueries({
     @NamedQuery(name = "Orden.findAll",
             query = "SELECT o FROM Orden o"),
+    @NamedQuery(name = "Orden.pagina",
+            query = "SELECT o FROM Orden o WHERE o.id < :cursor ORDER BY o.id DESC"),
     @NamedQuery(name = "Orden.findAbiertas",
             query = "SELECT o FROM Orden o WHERE o.estado = 'ABIERTA'"),
     @NamedQuery(name = "Orden.findByMesa",
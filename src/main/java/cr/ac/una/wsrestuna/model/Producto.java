@@ -199,17 +199,6 @@ public class Producto implements Serializable {
         return "S".equals(this.menuRapido);
     }
 
-    public void incrementarVentas() {
-        if (this.totalVentas == null) {
-            this.totalVentas = 0L;
-        }
-        this.totalVentas++;
-
-        if (this.grupo != null) {
-            this.grupo.incrementarVentas();
-        }
-    }
-
     @Override
     public int hashCode() {
         return (id != null ? id.hashCode() : 0);
@@ -50,6 +50,14 @@ public class Salon implements Serializable {
     @Column(name = "tipo_imagen", length = 50)
     private String tipoImagen;
 
+    /** SHA-256 de imagen_mesa; nombre del archivo en ImagenAlmacenService. */
+    @Size(max = 64)
+    @Column(name = "imagen_hash", length = 64)
+    private String imagenHash;
+
+    @Transient
+    private boolean quitarImagen;
+
     @NotNull
     @Size(min = 1, max = 1)
     @Column(name = "cobra_servicio", nullable = false, length = 1)
@@ -80,8 +88,10 @@ public class Salon implements Serializable {
         this.id = id;
     }
 
-    // ⭐ Propiedad virtual para JSON (Base64)
+    // ⭐ Propiedad virtual para JSON (Base64): solo de entrada. La imagen se
+    // descarga aparte por imagenUrl; leerla aquí cargaría el LOB en cada listado.
     @Transient
+    @JsonbTransient
     public String getImagenMesa() {
         if (imagenMesaBytes != null && imagenMesaBytes.length > 0) {
             return Base64.getEncoder().encodeToString(imagenMesaBytes);
@@ -92,11 +102,26 @@ public class Salon implements Serializable {
     public void setImagenMesa(String base64) {
         if (base64 != null && !base64.isEmpty()) {
             this.imagenMesaBytes = Base64.getDecoder().decode(base64);
+            this.quitarImagen = false;
         } else {
             this.imagenMesaBytes = null;
+            // "" es la forma explícita de borrar la imagen; null o ausente la conserva
+            this.quitarImagen = base64 != null;
         }
     }
 
+    /** true si el JSON de entrada pidió borrar la imagen (imagenMesa = ""). */
+    @JsonbTransient
+    public boolean isQuitarImagen() {
+        return quitarImagen;
+    }
+
+    /** URL versionada de la imagen (GET /salones/{id}/imagen), o null si no tiene. */
+    @Transient
+    public String getImagenUrl() {
+        return (imagenHash == null || id == null) ? null : "/api/salones/" + id + "/imagen?v=" + imagenHash;
+    }
+
     // Getters y Setters normales
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -113,6 +138,9 @@ public class Salon implements Serializable {
     public String getTipoImagen() { return tipoImagen; }
     public void setTipoImagen(String tipoImagen) { this.tipoImagen = tipoImagen; }
 
+    public String getImagenHash() { return imagenHash; }
+    public void setImagenHash(String imagenHash) { this.imagenHash = imagenHash; }
+
     public String getCobraServicio() { return cobraServicio; }
     public void setCobraServicio(String cobraServicio) { this.cobraServicio = cobraServicio; }
 
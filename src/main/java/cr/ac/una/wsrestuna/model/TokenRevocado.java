@@ -0,0 +1,61 @@
+package cr.ac.una.wsrestuna.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Revocación de tokens de sesión (tabla token_revocado).
+ *
+ * Con jti revoca un solo token (logout); sin jti revoca todos los tokens del
+ * usuario emitidos antes de {@code antesDe} (cambio de clave, rol o estado).
+ * La fila deja de importar en {@code expira}, cuando esos tokens ya vencieron.
+ */
+@Entity
+@Table(name = "token_revocado")
+@NamedQueries({
+    @NamedQuery(name = "TokenRevocado.findVigentes", query = "SELECT t FROM TokenRevocado t WHERE t.expira > :ahora"),
+    @NamedQuery(name = "TokenRevocado.deleteVencidos", query = "DELETE FROM TokenRevocado t WHERE t.expira <= :ahora")
+})
+public class TokenRevocado implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "token_revocado_seq")
+    @SequenceGenerator(name = "token_revocado_seq", sequenceName = "seq_token_revocado", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "jti", length = 32)
+    private String jti;
+
+    @Column(name = "antes_de")
+    private LocalDateTime antesDe;
+
+    @Column(name = "expira", nullable = false)
+    private LocalDateTime expira;
+
+    public TokenRevocado() {
+    }
+
+    public TokenRevocado(Long usuarioId, String jti, LocalDateTime antesDe, LocalDateTime expira) {
+        this.usuarioId = usuarioId;
+        this.jti = jti;
+        this.antesDe = antesDe;
+        this.expira = expira;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+    public String getJti() { return jti; }
+    public void setJti(String jti) { this.jti = jti; }
+    public LocalDateTime getAntesDe() { return antesDe; }
+    public void setAntesDe(LocalDateTime antesDe) { this.antesDe = antesDe; }
+    public LocalDateTime getExpira() { return expira; }
+    public void setExpira(LocalDateTime expira) { this.expira = expira; }
+}
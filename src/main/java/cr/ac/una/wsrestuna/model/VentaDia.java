@@ -0,0 +1,89 @@
+package cr.ac.una.wsrestuna.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ventas acumuladas por día, cajero y salonero (tabla ventas_dia).
+ *
+ * La mantiene VentasHoraService junto con ventas_hora; sirve los reportes de
+ * ventas por período, por salonero y de descuentos. 0 = sin salonero.
+ */
+@Entity
+@Table(name = "ventas_dia", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ventas_dia", columnNames = {"dia", "usuario_id", "salonero_id"})
+})
+public class VentaDia implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ventas_dia_seq")
+    @SequenceGenerator(name = "ventas_dia_seq", sequenceName = "seq_ventas_dia", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "dia", nullable = false)
+    private LocalDate dia;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "salonero_id", nullable = false)
+    private Long saloneroId;
+
+    @Column(name = "facturas", nullable = false)
+    private Long facturas = 0L;
+
+    // Facturas con descuento mayor a cero
+    @Column(name = "facturas_descuento", nullable = false)
+    private Long facturasDescuento = 0L;
+
+    @Column(name = "subtotal", nullable = false, precision = 14, scale = 2)
+    private BigDecimal subtotal = BigDecimal.ZERO;
+
+    @Column(name = "impuesto_venta", nullable = false, precision = 14, scale = 2)
+    private BigDecimal impuestoVenta = BigDecimal.ZERO;
+
+    @Column(name = "impuesto_servicio", nullable = false, precision = 14, scale = 2)
+    private BigDecimal impuestoServicio = BigDecimal.ZERO;
+
+    @Column(name = "descuento", nullable = false, precision = 14, scale = 2)
+    private BigDecimal descuento = BigDecimal.ZERO;
+
+    @Column(name = "total", nullable = false, precision = 14, scale = 2)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    public VentaDia() {
+    }
+
+    public VentaDia(LocalDate dia, Long usuarioId, Long saloneroId) {
+        this.dia = dia;
+        this.usuarioId = usuarioId;
+        this.saloneroId = saloneroId;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDate getDia() { return dia; }
+    public void setDia(LocalDate dia) { this.dia = dia; }
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+    public Long getSaloneroId() { return saloneroId; }
+    public void setSaloneroId(Long saloneroId) { this.saloneroId = saloneroId; }
+    public Long getFacturas() { return facturas; }
+    public void setFacturas(Long facturas) { this.facturas = facturas; }
+    public Long getFacturasDescuento() { return facturasDescuento; }
+    public void setFacturasDescuento(Long facturasDescuento) { this.facturasDescuento = facturasDescuento; }
+    public BigDecimal getSubtotal() { return subtotal; }
+    public void setSubtotal(BigDecimal subtotal) { this.subtotal = subtotal; }
+    public BigDecimal getImpuestoVenta() { return impuestoVenta; }
+    public void setImpuestoVenta(BigDecimal impuestoVenta) { this.impuestoVenta = impuestoVenta; }
+    public BigDecimal getImpuestoServicio() { return impuestoServicio; }
+    public void setImpuestoServicio(BigDecimal impuestoServicio) { this.impuestoServicio = impuestoServicio; }
+    public BigDecimal getDescuento() { return descuento; }
+    public void setDescuento(BigDecimal descuento) { this.descuento = descuento; }
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+}
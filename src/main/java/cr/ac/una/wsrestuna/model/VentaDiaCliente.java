@@ -0,0 +1,60 @@
+package cr.ac.una.wsrestuna.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Compras por día y cliente (tabla ventas_dia_cliente). Solo facturas con
+ * cliente; la mantiene VentasHoraService para el reporte de mejores clientes.
+ */
+@Entity
+@Table(name = "ventas_dia_cliente", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ventas_dia_cliente", columnNames = {"dia", "cliente_id"})
+})
+public class VentaDiaCliente implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ventas_dia_cliente_seq")
+    @SequenceGenerator(name = "ventas_dia_cliente_seq", sequenceName = "seq_ventas_dia_cliente", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "dia", nullable = false)
+    private LocalDate dia;
+
+    @Column(name = "cliente_id", nullable = false)
+    private Long clienteId;
+
+    @Column(name = "facturas", nullable = false)
+    private Long facturas = 0L;
+
+    @Column(name = "descuento", nullable = false, precision = 14, scale = 2)
+    private BigDecimal descuento = BigDecimal.ZERO;
+
+    @Column(name = "total", nullable = false, precision = 14, scale = 2)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    public VentaDiaCliente() {
+    }
+
+    public VentaDiaCliente(LocalDate dia, Long clienteId) {
+        this.dia = dia;
+        this.clienteId = clienteId;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDate getDia() { return dia; }
+    public void setDia(LocalDate dia) { this.dia = dia; }
+    public Long getClienteId() { return clienteId; }
+    public void setClienteId(Long clienteId) { this.clienteId = clienteId; }
+    public Long getFacturas() { return facturas; }
+    public void setFacturas(Long facturas) { this.facturas = facturas; }
+    public BigDecimal getDescuento() { return descuento; }
+    public void setDescuento(BigDecimal descuento) { this.descuento = descuento; }
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+}
@@ -0,0 +1,90 @@
+package cr.ac.una.wsrestuna.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Ventas acumuladas por hora, cajero, salonero y salón (tabla ventas_hora).
+ *
+ * La mantiene VentasHoraService a partir de las facturas creadas y anuladas.
+ * Las dimensiones sin valor (factura sin orden, sin mesa) se guardan como 0
+ * para que la clave única funcione.
+ */
+@Entity
+@Table(name = "ventas_hora", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ventas_hora", columnNames = {"hora", "usuario_id", "salonero_id", "salon_id"})
+})
+public class VentaHora implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ventas_hora_seq")
+    @SequenceGenerator(name = "ventas_hora_seq", sequenceName = "seq_ventas_hora", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "hora", nullable = false)
+    private LocalDateTime hora;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "salonero_id", nullable = false)
+    private Long saloneroId;
+
+    @Column(name = "salon_id", nullable = false)
+    private Long salonId;
+
+    @Column(name = "facturas", nullable = false)
+    private Long facturas = 0L;
+
+    @Column(name = "subtotal", nullable = false, precision = 14, scale = 2)
+    private BigDecimal subtotal = BigDecimal.ZERO;
+
+    @Column(name = "impuesto_venta", nullable = false, precision = 14, scale = 2)
+    private BigDecimal impuestoVenta = BigDecimal.ZERO;
+
+    @Column(name = "impuesto_servicio", nullable = false, precision = 14, scale = 2)
+    private BigDecimal impuestoServicio = BigDecimal.ZERO;
+
+    @Column(name = "descuento", nullable = false, precision = 14, scale = 2)
+    private BigDecimal descuento = BigDecimal.ZERO;
+
+    @Column(name = "total", nullable = false, precision = 14, scale = 2)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    public VentaHora() {
+    }
+
+    public VentaHora(LocalDateTime hora, Long usuarioId, Long saloneroId, Long salonId) {
+        this.hora = hora;
+        this.usuarioId = usuarioId;
+        this.saloneroId = saloneroId;
+        this.salonId = salonId;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDateTime getHora() { return hora; }
+    public void setHora(LocalDateTime hora) { this.hora = hora; }
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+    public Long getSaloneroId() { return saloneroId; }
+    public void setSaloneroId(Long saloneroId) { this.saloneroId = saloneroId; }
+    public Long getSalonId() { return salonId; }
+    public void setSalonId(Long salonId) { this.salonId = salonId; }
+    public Long getFacturas() { return facturas; }
+    public void setFacturas(Long facturas) { this.facturas = facturas; }
+    public BigDecimal getSubtotal() { return subtotal; }
+    public void setSubtotal(BigDecimal subtotal) { this.subtotal = subtotal; }
+    public BigDecimal getImpuestoVenta() { return impuestoVenta; }
+    public void setImpuestoVenta(BigDecimal impuestoVenta) { this.impuestoVenta = impuestoVenta; }
+    public BigDecimal getImpuestoServicio() { return impuestoServicio; }
+    public void setImpuestoServicio(BigDecimal impuestoServicio) { this.impuestoServicio = impuestoServicio; }
+    public BigDecimal getDescuento() { return descuento; }
+    public void setDescuento(BigDecimal descuento) { this.descuento = descuento; }
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+}
@@ -0,0 +1,74 @@
+package cr.ac.una.wsrestuna.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Cantidades vendidas por hora, producto, grupo, cajero y salón
+ * (tabla ventas_hora_producto). El grupo es el del producto al momento de
+ * registrar la venta. Igual que en VentaHora, 0 = sin salón.
+ */
+@Entity
+@Table(name = "ventas_hora_producto", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_ventas_hora_producto", columnNames = {"hora", "producto_id", "usuario_id", "salon_id"})
+})
+public class VentaHoraProducto implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ventas_hora_producto_seq")
+    @SequenceGenerator(name = "ventas_hora_producto_seq", sequenceName = "seq_ventas_hora_producto", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "hora", nullable = false)
+    private LocalDateTime hora;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "grupo_id", nullable = false)
+    private Long grupoId;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "salon_id", nullable = false)
+    private Long salonId;
+
+    @Column(name = "cantidad", nullable = false)
+    private Long cantidad = 0L;
+
+    @Column(name = "subtotal", nullable = false, precision = 14, scale = 2)
+    private BigDecimal subtotal = BigDecimal.ZERO;
+
+    public VentaHoraProducto() {
+    }
+
+    public VentaHoraProducto(LocalDateTime hora, Long productoId, Long grupoId, Long usuarioId, Long salonId) {
+        this.hora = hora;
+        this.productoId = productoId;
+        this.grupoId = grupoId;
+        this.usuarioId = usuarioId;
+        this.salonId = salonId;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public LocalDateTime getHora() { return hora; }
+    public void setHora(LocalDateTime hora) { this.hora = hora; }
+    public Long getProductoId() { return productoId; }
+    public void setProductoId(Long productoId) { this.productoId = productoId; }
+    public Long getGrupoId() { return grupoId; }
+    public void setGrupoId(Long grupoId) { this.grupoId = grupoId; }
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+    public Long getSalonId() { return salonId; }
+    public void setSalonId(Long salonId) { this.salonId = salonId; }
+    public Long getCantidad() { return cantidad; }
+    public void setCantidad(Long cantidad) { this.cantidad = cantidad; }
+    public BigDecimal getSubtotal() { return subtotal; }
+    public void setSubtotal(BigDecimal subtotal) { this.subtotal = subtotal; }
+}
@@ -0,0 +1,141 @@
+package cr.ac.una.wsrestuna.resources;
+
+import cr.ac.una.wsrestuna.service.ClaveService;
+import cr.ac.una.wsrestuna.service.MetricasHttpService;
+import cr.ac.una.wsrestuna.util.Histograma;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Métricas en formato de texto de Prometheus.
+ *
+ * GET /api/metrics
+ *
+ * - restuna_http_request_duration_seconds: histograma por método, ruta y
+ *   clase de estado; los límites son potencias de 2 en µs (64 µs a ~67 s).
+ * - restuna_http_requests_in_flight: peticiones en curso por endpoint.
+ * - restuna_sql_*: sentencias, filas, tiempo en BD y avisos de presupuesto
+ *   o N+1 por endpoint (ver MetricasHttpService).
+ * - restuna_bcrypt_*: el pool de contraseñas (ver ClaveService).
+ */
+@RequestScoped
+@Path("/metrics")
+public class MetricsResource {
+
+    static final String TIPO = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Límites de los buckets publicados: 2^6 .. 2^26 µs. */
+    private static final int EXP_DESDE = 6;
+
+    private static final Set<String> CONTADORES_BCRYPT =
+            Set.of("verificaciones", "hashes", "rehashes", "rechazadas");
+
+    private static final String[] CLASES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    @Inject
+    MetricasHttpService metricas;
+
+    @Inject
+    ClaveService claveService;
+
+    @GET
+    @Produces(TIPO)
+    public Response metrics() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        List<MetricasHttpService.Endpoint> endpoints = metricas.endpoints();
+
+        sb.append("# HELP restuna_http_request_duration_seconds Latencia de las peticiones por endpoint.\n");
+        sb.append("# TYPE restuna_http_request_duration_seconds histogram\n");
+        for (MetricasHttpService.Endpoint e : endpoints) {
+            for (int clase = 0; clase < CLASES.length; clase++) {
+                Histograma h = e.getHistograma(clase);
+                if (h == null) {
+                    continue;
+                }
+                Histograma.Foto f = h.foto();
+                String etiquetas = "method=\"" + e.getMetodo() + "\",path=\"" + escapar(e.getRuta())
+                        + "\",status=\"" + CLASES[clase] + "\"";
+                for (int exp = EXP_DESDE; exp <= Histograma.EXP_MAX; exp++) {
+                    long limite = 1L << exp;
+                    sb.append("restuna_http_request_duration_seconds_bucket{").append(etiquetas)
+                      .append(",le=\"").append(segundos(limite)).append("\"} ")
+                      .append(f.acumuladoHasta(limite)).append('\n');
+                }
+                sb.append("restuna_http_request_duration_seconds_bucket{").append(etiquetas)
+                  .append(",le=\"+Inf\"} ").append(f.getTotal()).append('\n');
+                sb.append("restuna_http_request_duration_seconds_sum{").append(etiquetas).append("} ")
+                  .append(segundos(f.getSumaMicros())).append('\n');
+                sb.append("restuna_http_request_duration_seconds_count{").append(etiquetas).append("} ")
+                  .append(f.getTotal()).append('\n');
+            }
+        }
+
+        sb.append("# HELP restuna_http_requests_in_flight Peticiones en curso por endpoint.\n");
+        sb.append("# TYPE restuna_http_requests_in_flight gauge\n");
+        for (MetricasHttpService.Endpoint e : endpoints) {
+            sb.append("restuna_http_requests_in_flight").append(etiquetas(e)).append(' ')
+              .append(e.getEnCurso()).append('\n');
+        }
+
+        contador(sb, endpoints, "restuna_sql_statements_total",
+                "Sentencias SQL ejecutadas por endpoint.", MetricasHttpService.Endpoint::getSentencias);
+        contador(sb, endpoints, "restuna_sql_rows_total",
+                "Filas leídas o modificadas por endpoint.", MetricasHttpService.Endpoint::getFilas);
+        sb.append("# HELP restuna_sql_seconds_total Tiempo en la BD por endpoint.\n");
+        sb.append("# TYPE restuna_sql_seconds_total counter\n");
+        for (MetricasHttpService.Endpoint e : endpoints) {
+            sb.append("restuna_sql_seconds_total").append(etiquetas(e)).append(' ')
+              .append(segundos(e.getDbMicros())).append('\n');
+        }
+        contador(sb, endpoints, "restuna_sql_budget_exceeded_total",
+                "Peticiones que pasaron el presupuesto de sentencias.", MetricasHttpService.Endpoint::getExcesos);
+        contador(sb, endpoints, "restuna_sql_repeated_statement_total",
+                "Peticiones con una sentencia repetida (posible N+1).", MetricasHttpService.Endpoint::getRepeticiones);
+
+        for (Map.Entry<String, Object> m : claveService.metricas().entrySet()) {
+            if (!(m.getValue() instanceof Number)) {
+                continue;
+            }
+            boolean contador = CONTADORES_BCRYPT.contains(m.getKey());
+            String nombre = "restuna_bcrypt_" + snake(m.getKey()) + (contador ? "_total" : "");
+            sb.append("# TYPE ").append(nombre).append(contador ? " counter\n" : " gauge\n");
+            sb.append(nombre).append(' ').append(m.getValue()).append('\n');
+        }
+
+        return Response.ok(sb.toString(), TIPO).build();
+    }
+
+    private static void contador(StringBuilder sb, List<MetricasHttpService.Endpoint> endpoints, String nombre,
+                                 String ayuda, ToLongFunction<MetricasHttpService.Endpoint> valor) {
+        sb.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        sb.append("# TYPE ").append(nombre).append(" counter\n");
+        for (MetricasHttpService.Endpoint e : endpoints) {
+            sb.append(nombre).append(etiquetas(e)).append(' ').append(valor.applyAsLong(e)).append('\n');
+        }
+    }
+
+    private static String etiquetas(MetricasHttpService.Endpoint e) {
+        return "{method=\"" + e.getMetodo() + "\",path=\"" + escapar(e.getRuta()) + "\"}";
+    }
+
+    private static String segundos(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+
+    private static String snake(String camel) {
+        return camel.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
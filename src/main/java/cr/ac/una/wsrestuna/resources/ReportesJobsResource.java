@@ -0,0 +1,119 @@
+package cr.ac.una.wsrestuna.resources;
+
+import cr.ac.una.wsrestuna.service.ReporteCacheService;
+import cr.ac.una.wsrestuna.service.ReporteJobService;
+import cr.ac.una.wsrestuna.service.ReporteJobService.Job;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reportes PDF asíncronos.
+ *
+ * POST /api/reportes/jobs           {"tipo":"FACTURAS_PDF","parametros":{"fechaInicio":"2025-01-01",...}}
+ * GET  /api/reportes/jobs/{id}      estado y progreso
+ * GET  /api/reportes/jobs/{id}/result  el PDF, cuando el estado es LISTO
+ */
+@RequestScoped
+@Path("/reportes/jobs")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class ReportesJobsResource {
+
+    private static final Logger LOG = Logger.getLogger(ReportesJobsResource.class.getName());
+
+    @Inject
+    ReporteJobService jobs;
+
+    @POST
+    public Response crear(Map<String, Object> datos) {
+        try {
+            if (datos == null || datos.get("tipo") == null) {
+                return error(Response.Status.BAD_REQUEST, "Debe indicar el tipo de reporte");
+            }
+            ReporteJobService.Tipo tipo = ReporteJobService.Tipo.valueOf(datos.get("tipo").toString());
+
+            Map<String, String> parametros = new HashMap<>();
+            if (datos.get("parametros") instanceof Map<?, ?> m) {
+                m.forEach((k, v) -> parametros.put(String.valueOf(k), v == null ? null : v.toString()));
+            }
+
+            Job job = jobs.enviar(tipo, parametros);
+            return Response.accepted(ok("Reporte en proceso", job))
+                    .location(URI.create("reportes/jobs/" + job.getId()))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return error(Response.Status.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(Response.Status.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al crear trabajo de reporte", e);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "Error: " + e.getMessage());
+        }
+    }
+
+    @GET
+    @Path("/{id}")
+    public Response estado(@PathParam("id") String id) {
+        Optional<Job> job = jobs.find(id);
+        if (job.isEmpty()) {
+            return error(Response.Status.NOT_FOUND, "Trabajo no encontrado o vencido");
+        }
+        return Response.ok(ok("Estado del reporte", job.get())).build();
+    }
+
+    @GET
+    @Path("/{id}/result")
+    @Produces({"application/pdf", MediaType.APPLICATION_JSON})
+    public Response resultado(@PathParam("id") String id) {
+        try {
+            Optional<Job> job = jobs.find(id);
+            if (job.isEmpty()) {
+                return error(Response.Status.NOT_FOUND, "Trabajo no encontrado o vencido");
+            }
+            Optional<java.nio.file.Path> pdf = jobs.resultado(id);
+            if (pdf.isEmpty()) {
+                // Todavía no está (o falló): el cliente consulta el estado
+                return Response.status(Response.Status.CONFLICT)
+                        .type(MediaType.APPLICATION_JSON_TYPE)
+                        .entity(ok("El reporte no está listo", job.get()))
+                        .build();
+            }
+            java.nio.file.Path archivo = pdf.get();
+            StreamingOutput salida = out -> ReporteCacheService.copiar(archivo, out);
+            return Response.ok(salida, "application/pdf")
+                    .header("Content-Disposition", "inline; filename=" + job.get().getNombreArchivo())
+                    .build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al leer resultado de reporte", e);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "Error: " + e.getMessage());
+        }
+    }
+
+    // -------- utils ----------
+    private static Map<String, Object> ok(String message, Object data) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("success", true);
+        out.put("message", message);
+        out.put("data", data);
+        return out;
+    }
+
+    private static Response error(Response.Status status, String message) {
+        Map<String, Object> out = new HashMap<>();
+        out.put("success", false);
+        out.put("message", message);
+        out.put("data", null);
+        return Response.status(status).type(MediaType.APPLICATION_JSON_TYPE).entity(out).build();
+    }
+}
@@ -1,12 +1,15 @@
 package cr.ac.una.wsrestuna.resources;
 
+import cr.ac.una.wsrestuna.service.ReporteCacheService;
 import cr.ac.una.wsrestuna.service.ReportesPdfService;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import java.time.LocalDate;
+import java.util.Optional;
 
 @RequestScoped
 @Path("/reportes")
@@ -21,8 +24,14 @@ public class ReportesPdfResource {
                                 @QueryParam("fechaFin")    String ff,
                                 @QueryParam("estado")      String estado,
                                 @QueryParam("usuario")     String usuario) {
-        byte[] bytes = pdf.facturasPdf(parse(fi), parse(ff), usuario, estado);
-        return Response.ok(bytes)
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = pdf.facturasPdfCache(desde, hasta, usuario, estado);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "facturas.pdf");
+        }
+        // Rangos largos: el PDF se escribe directo en la respuesta mientras se llena
+        StreamingOutput salida = out -> pdf.facturasPdf(desde, hasta, usuario, estado, out);
+        return Response.ok(salida)
                 .header("Content-Disposition", "inline; filename=facturas.pdf")
                 .build();
     }
@@ -33,6 +42,10 @@ public class ReportesPdfResource {
                                     @QueryParam("fechaFin")    String ff,
                                     @QueryParam("grupo")       String grupo,
                                     @QueryParam("top")         @DefaultValue("10") Integer top) {
+        Optional<java.nio.file.Path> cache = pdf.productosTopPdfCache(parse(fi), parse(ff), grupo, top);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "productos-top.pdf");
+        }
         byte[] bytes = pdf.productosTopPdf(parse(fi), parse(ff), grupo, top);
         return Response.ok(bytes)
                 .header("Content-Disposition", "inline; filename=productos-top.pdf")
@@ -43,12 +56,81 @@ public class ReportesPdfResource {
     @Produces("application/pdf")
     public Response cierresPdf(@QueryParam("fecha") String f,
                                @QueryParam("usuario") String usuario) {
+        Optional<java.nio.file.Path> cache = pdf.cierreCajaPdfCache(parse(f), usuario);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "cierre-caja.pdf");
+        }
         byte[] bytes = pdf.cierreCajaPdf(parse(f), usuario);
         return Response.ok(bytes)
                 .header("Content-Disposition", "inline; filename=cierre-caja.pdf")
                 .build();
     }
 
+    @GET @Path("/ventas/periodo/pdf")
+    @Produces("application/pdf")
+    public Response ventasPeriodoPdf(@QueryParam("fechaInicio") String fi,
+                                     @QueryParam("fechaFin")    String ff) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = pdf.ventasPeriodoPdfCache(desde, hasta);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "ventas-periodo.pdf");
+        }
+        return Response.ok(pdf.ventasPeriodoPdf(desde, hasta))
+                .header("Content-Disposition", "inline; filename=ventas-periodo.pdf")
+                .build();
+    }
+
+    @GET @Path("/ventas/salonero/pdf")
+    @Produces("application/pdf")
+    public Response ventasSaloneroPdf(@QueryParam("fechaInicio") String fi,
+                                      @QueryParam("fechaFin")    String ff) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = pdf.ventasSaloneroPdfCache(desde, hasta);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "ventas-salonero.pdf");
+        }
+        return Response.ok(pdf.ventasSaloneroPdf(desde, hasta))
+                .header("Content-Disposition", "inline; filename=ventas-salonero.pdf")
+                .build();
+    }
+
+    @GET @Path("/clientes/top/pdf")
+    @Produces("application/pdf")
+    public Response clientesTopPdf(@QueryParam("fechaInicio") String fi,
+                                   @QueryParam("fechaFin")    String ff,
+                                   @QueryParam("top")         @DefaultValue("10") Integer top) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = pdf.clientesTopPdfCache(desde, hasta, top);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "clientes-top.pdf");
+        }
+        return Response.ok(pdf.clientesTopPdf(desde, hasta, top))
+                .header("Content-Disposition", "inline; filename=clientes-top.pdf")
+                .build();
+    }
+
+    @GET @Path("/descuentos/pdf")
+    @Produces("application/pdf")
+    public Response descuentosPdf(@QueryParam("fechaInicio") String fi,
+                                  @QueryParam("fechaFin")    String ff,
+                                  @QueryParam("usuario")     String usuario) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = pdf.descuentosPdfCache(desde, hasta, usuario);
+        if (cache.isPresent()) {
+            return desdeCache(cache.get(), "descuentos.pdf");
+        }
+        return Response.ok(pdf.descuentosPdf(desde, hasta, usuario))
+                .header("Content-Disposition", "inline; filename=descuentos.pdf")
+                .build();
+    }
+
+    private static Response desdeCache(java.nio.file.Path archivo, String nombre) {
+        StreamingOutput salida = out -> ReporteCacheService.copiar(archivo, out);
+        return Response.ok(salida)
+                .header("Content-Disposition", "inline; filename=" + nombre)
+                .build();
+    }
+
     private static LocalDate parse(String s){
         if (s == null || s.isBlank()) return null;
         try { return LocalDate.parse(s); } catch (Exception e) { return null; }
@@ -58,6 +140,10 @@ public class ReportesPdfResource {
 @Path("/cierres/{id}/pdf")
 @Produces("application/pdf")
 public Response cierreByIdPdf(@PathParam("id") Long id) {
+    Optional<java.nio.file.Path> cache = pdf.cierreByIdPdfCache(id);
+    if (cache.isPresent()) {
+        return desdeCache(cache.get(), "cierre-" + id + ".pdf");
+    }
     byte[] bytes = pdf.cierreByIdPdf(id);
     return Response.ok(bytes)
         .header("Content-Disposition", "inline; filename=cierre-" + id + ".pdf")
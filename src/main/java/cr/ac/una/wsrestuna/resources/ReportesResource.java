@@ -1,15 +1,21 @@
 // src/main/java/cr/ac/una/wsrestuna/resources/ReportesResource.java
 package cr.ac.una.wsrestuna.resources;
 
+import cr.ac.una.wsrestuna.service.ReporteCacheService;
+import cr.ac.una.wsrestuna.service.ReporteCacheService.Periodo;
 import cr.ac.una.wsrestuna.service.ReportesService;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @RequestScoped
 @Path("/reportes")
@@ -19,13 +25,25 @@ public class ReportesResource {
     @Inject
     ReportesService reportes;
 
+    @Inject
+    ReporteCacheService reporteCache;
+
     // GET /api/reportes/facturas?fechaInicio=YYYY-MM-DD&fechaFin=YYYY-MM-DD&estado=A|C&usuario=...
     @GET @Path("/facturas")
     public Response facturas(@QueryParam("fechaInicio") String fi,
                              @QueryParam("fechaFin")    String ff,
                              @QueryParam("estado")      String estado,
                              @QueryParam("usuario")     String usuario) {
-        var data = reportes.listadoFacturas(parse(fi), parse(ff), usuario, estado);
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("facturas.json",
+                ReporteCacheService.params("usuario", usuario, "estado", estado), Periodo.dias(desde, hasta), out -> {
+                    var data = reportes.listadoFacturas(desde, hasta, usuario, estado);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return !data.isEmpty();
+                });
+        if (cache.isPresent()) return desdeCache(cache.get());
+
+        var data = reportes.listadoFacturas(desde, hasta, usuario, estado);
         return ok(data);
     }
 
@@ -33,7 +51,16 @@ public class ReportesResource {
     @GET @Path("/cierres")
     public Response cierres(@QueryParam("fecha") String f,
                             @QueryParam("usuario") String usuario) {
-        var data = reportes.cierreCaja(parse(f), usuario);
+        LocalDate fecha = parse(f);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("cierres.json",
+                ReporteCacheService.params("usuario", usuario), Periodo.dia(fecha), out -> {
+                    var data = reportes.cierreCaja(fecha, usuario);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return ReporteCacheService.cierresCerrados(data);
+                });
+        if (cache.isPresent()) return desdeCache(cache.get());
+
+        var data = reportes.cierreCaja(fecha, usuario);
         return ok(data);
     }
 
@@ -43,12 +70,58 @@ public class ReportesResource {
                                  @QueryParam("fechaFin")    String ff,
                                  @QueryParam("grupo")       String grupo,
                                  @QueryParam("top")         Integer top) {
-        var data = reportes.productosTop(parse(fi), parse(ff), grupo, top);
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("productosTop.json",
+                ReporteCacheService.params("grupo", grupo, "top", top), Periodo.dias(desde, hasta), out -> {
+                    var data = reportes.productosTop(desde, hasta, grupo, top);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return !data.isEmpty();
+                });
+        if (cache.isPresent()) return desdeCache(cache.get());
+
+        var data = reportes.productosTop(desde, hasta, grupo, top);
         return ok(data);
     }
 
-    // (Opcional) otros endpoints JSON que ya definiste en el cliente:
-    // /ventas/periodo, /ventas/salonero, /clientes/top, /descuentos ...
+    // ----- Analítica (tablas por día de VentasHoraService) -----
+
+    // GET /api/reportes/ventas/periodo?fechaInicio=...&fechaFin=...
+    @GET @Path("/ventas/periodo")
+    public Response ventasPeriodo(@QueryParam("fechaInicio") String fi,
+                                  @QueryParam("fechaFin")    String ff) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        return cacheado("ventasPeriodo.json", ReporteCacheService.params(), Periodo.dias(desde, hasta),
+                () -> reportes.ventasPeriodo(desde, hasta));
+    }
+
+    // GET /api/reportes/ventas/salonero?fechaInicio=...&fechaFin=...
+    @GET @Path("/ventas/salonero")
+    public Response ventasSalonero(@QueryParam("fechaInicio") String fi,
+                                   @QueryParam("fechaFin")    String ff) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        return cacheado("ventasSalonero.json", ReporteCacheService.params(), Periodo.dias(desde, hasta),
+                () -> reportes.ventasSalonero(desde, hasta));
+    }
+
+    // GET /api/reportes/clientes/top?fechaInicio=...&fechaFin=...&top=10
+    @GET @Path("/clientes/top")
+    public Response clientesTop(@QueryParam("fechaInicio") String fi,
+                                @QueryParam("fechaFin")    String ff,
+                                @QueryParam("top")         Integer top) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        return cacheado("clientesTop.json", ReporteCacheService.params("top", top), Periodo.dias(desde, hasta),
+                () -> reportes.clientesTop(desde, hasta, top));
+    }
+
+    // GET /api/reportes/descuentos?fechaInicio=...&fechaFin=...&usuario=...
+    @GET @Path("/descuentos")
+    public Response descuentos(@QueryParam("fechaInicio") String fi,
+                               @QueryParam("fechaFin")    String ff,
+                               @QueryParam("usuario")     String usuario) {
+        LocalDate desde = parse(fi), hasta = parse(ff);
+        return cacheado("descuentos.json", ReporteCacheService.params("usuario", usuario), Periodo.dias(desde, hasta),
+                () -> reportes.descuentos(desde, hasta, usuario));
+    }
 
     // -------- utils ----------
     private static LocalDate parse(String s){
@@ -56,8 +129,27 @@ public class ReportesResource {
         try { return LocalDate.parse(s); } catch (Exception e) { return null; }
     }
     private static Response ok(Object data){
+        return Response.ok(respuesta(data)).build();
+    }
+    private static Map<String,Object> respuesta(Object data){
         // Envelope para compatibilidad con tu RestClient.parseResponse()
-        Map<String,Object> out = Map.of("success", true, "message","OK", "data", data);
-        return Response.ok(out).build();
+        return Map.of("success", true, "message","OK", "data", data == null ? List.of() : data);
+    }
+    /** Caché primero (período cerrado); si no aplica, se consulta una sola vez y se responde directo. */
+    private Response cacheado(String reporte, Map<String, ?> params, Periodo periodo,
+                              Supplier<List<Map<String, Object>>> consulta) {
+        Optional<java.nio.file.Path> cache = reporteCache.obtener(reporte, params, periodo, out -> {
+            var data = consulta.get();
+            reporteCache.escribirJson(respuesta(data), out);
+            return !data.isEmpty();
+        });
+        if (cache.isPresent()) return desdeCache(cache.get());
+
+        return ok(consulta.get());
+    }
+    private static Response desdeCache(java.nio.file.Path archivo){
+        // Período cerrado: se envía el JSON armado en disco (del caché o recién generado)
+        StreamingOutput salida = out -> ReporteCacheService.copiar(archivo, out);
+        return Response.ok(salida, MediaType.APPLICATION_JSON).build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package cr.ac.una.wsrestuna.rest;
+
+import cr.ac.una.wsrestuna.service.TokenService;
+import jakarta.annotation.Priority;
+import jakarta.ejb.EJB;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import jakarta.ws.rs.ext.Provider;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Valida el token Bearer de cada petición sin ir a la BD.
+ *
+ * Con token válido deja la sesión en {@link TokenService#PROPIEDAD_SESION} y
+ * un SecurityContext con el usuario y su rol; con token inválido, vencido o
+ * revocado contesta 401. Sin token la petición sigue, salvo que
+ * {@code restuna.token.requerido} esté activo. Las rutas públicas no
+ * validan el token.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class AutenticacionFilter implements ContainerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    @EJB
+    private TokenService tokenService;
+
+    @Override
+    public void filter(ContainerRequestContext ctx) {
+        // En las rutas públicas no se mira el token: un cliente que conserva
+        // uno vencido tiene que poder volver a hacer login
+        if (publica(ctx)) {
+            return;
+        }
+        String auth = ctx.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (auth == null || !auth.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            if (tokenService.isRequerido()) {
+                rechazar(ctx, "Token requerido");
+            }
+            return;
+        }
+
+        Optional<TokenService.Sesion> sesion = tokenService.validar(auth.substring(BEARER.length()).trim());
+        if (sesion.isEmpty()) {
+            rechazar(ctx, "Token inválido o vencido");
+            return;
+        }
+
+        TokenService.Sesion s = sesion.get();
+        boolean seguro = ctx.getSecurityContext() != null && ctx.getSecurityContext().isSecure();
+        ctx.setProperty(TokenService.PROPIEDAD_SESION, s);
+        ctx.setSecurityContext(new SecurityContext() {
+            private final Principal principal = s::usuario;
+
+            @Override
+            public Principal getUserPrincipal() {
+                return principal;
+            }
+
+            @Override
+            public boolean isUserInRole(String rol) {
+                return rol != null && rol.equalsIgnoreCase(s.rol());
+            }
+
+            @Override
+            public boolean isSecure() {
+                return seguro;
+            }
+
+            @Override
+            public String getAuthenticationScheme() {
+                return "Bearer";
+            }
+        });
+    }
+
+    /** Rutas que se usan sin sesión: el login, las imágenes cacheables y las métricas. */
+    private static boolean publica(ContainerRequestContext ctx) {
+        String path = ctx.getUriInfo().getPath();
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return path.equals("usuarios/login")
+                || path.equals("metrics")
+                || (HttpMethod.GET.equals(ctx.getMethod()) && path.matches("salones/\\d+/imagen"));
+    }
+
+    private static void rechazar(ContainerRequestContext ctx, String mensaje) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", mensaje);
+        response.put("data", null);
+        ctx.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+                .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer realm=\"restuna\"")
+                .type(MediaType.APPLICATION_JSON)
+                .entity(response)
+                .build());
+    }
+}
@@ -2,6 +2,7 @@ package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.CierreCaja;
 import cr.ac.una.wsrestuna.service.CierreCajaService;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
@@ -26,10 +27,10 @@ public class CierreCajaRest {
     private CierreCajaService cierreService;
 
     @GET
-    public Response findAll() {
+    public Response findAll(@QueryParam("cursor") Long cursor, @QueryParam("limit") Integer limit) {
         try {
-            List<CierreCaja> cierres = cierreService.findAll();
-            return Response.ok(createResponse(true, "Cierres obtenidos", cierres)).build();
+            Pagina<CierreCaja> pagina = cierreService.findPagina(cursor, limit);
+            return Response.ok(createResponse("Cierres obtenidos", pagina)).build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener cierres", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -142,6 +143,29 @@ public class CierreCajaRest {
         }
     }
 
+    /**
+     * Recalcula los totales del sistema desde las facturas y corrige los
+     * acumulados si no coinciden.
+     */
+    @POST
+    @Path("/{id}/verificar")
+    public Response verificarTotales(@PathParam("id") Long id) {
+        try {
+            CierreCajaService.TotalesCaja tot = cierreService.calcularTotalesSistema(id);
+            Map<String, Object> data = new HashMap<>();
+            data.put("cierreId", tot.cierreId);
+            data.put("efectivoSistema", tot.efectivo);
+            data.put("tarjetaSistema", tot.tarjeta);
+            data.put("numeroFacturas", tot.cantidad);
+            return Response.ok(createResponse(true, "Totales verificados", data)).build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al verificar totales", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(createResponse(false, "Error: " + e.getMessage(), null))
+                    .build();
+        }
+    }
+
     private Map<String, Object> createResponse(boolean success, String message, Object data) {
         Map<String, Object> response = new HashMap<>();
         response.put("success", success);
@@ -176,17 +200,12 @@ public Response findByUsuarioYRango(@PathParam("usuarioId") Long usuarioId,
 @Path("/usuario/{usuarioId}/abierto/totales")
 public Response abiertoConTotales(@PathParam("usuarioId") Long usuarioId) {
     try {
-        var opt = cierreService.findAbiertoByUsuario(usuarioId);
+        var opt = cierreService.findCajaAbierta(usuarioId);
         if (opt.isEmpty()) {
             return Response.ok(createResponse(true, "Sin caja abierta", null)).build();
         }
+        // Los totales del sistema se mantienen al día con cada factura
         CierreCaja cc = opt.get();
-        var tot = cierreService.totalesCajaAbierta(usuarioId);
-
-        // Construyo un DTO ligero sobre la misma entidad (sin tocarla en DB)
-        cc.setEfectivoSistema(tot.efectivo);
-        cc.setTarjetaSistema(tot.tarjeta);
-        // Ojo: no persisto ni modifico estado; solo devuelvo valores calculados.
 
         Map<String, Object> data = new HashMap<>();
         data.put("id", cc.getId());
@@ -201,7 +220,7 @@ public Response abiertoConTotales(@PathParam("usuarioId") Long usuarioId) {
         data.put("diferenciaTarjeta", cc.getDiferenciaTarjeta());
         data.put("estado", cc.getEstado());
         // Si quieres enviar conteo:
-        data.put("numeroFacturas", tot.cantidad);
+        data.put("numeroFacturas", cc.getCantidadFacturas());
 
         return Response.ok(createResponse(true, "Caja abierta con totales", data)).build();
     } catch (Exception e) {
@@ -213,4 +232,13 @@ public Response abiertoConTotales(@PathParam("usuarioId") Long usuarioId) {
 }
 
 
+
+    /**
+     * Respuesta estándar con el nextCursor de la página (null si no hay más).
+     */
+    private Map<String, Object> createResponse(String message, Pagina<?> pagina) {
+        Map<String, Object> response = createResponse(true, message, pagina.getItems());
+        response.put("nextCursor", pagina.getNextCursor());
+        return response;
+    }
 }
@@ -1,7 +1,9 @@
 package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.Cliente;
+import cr.ac.una.wsrestuna.service.ClienteBusquedaService;
 import cr.ac.una.wsrestuna.service.ClienteService;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
@@ -30,11 +32,14 @@ public class ClienteRest {
     @EJB
     private ClienteService clienteService;
 
+    @EJB
+    private ClienteBusquedaService clienteBusqueda;
+
     @GET
-    public Response findAll() {
+    public Response findAll(@QueryParam("cursor") Long cursor, @QueryParam("limit") Integer limit) {
         try {
-            List<Cliente> clientes = clienteService.findActivos();
-            return Response.ok(createResponse(true, "Clientes obtenidos", clientes)).build();
+            Pagina<Cliente> pagina = clienteService.findActivosPagina(cursor, limit);
+            return Response.ok(createResponse("Clientes obtenidos", pagina)).build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener clientes", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -70,7 +75,8 @@ public Response buscar(
         @QueryParam("q") String q,
         @QueryParam("nombre") String nombre,
         @QueryParam("correo") String correo,
-        @QueryParam("telefono") String telefono) {
+        @QueryParam("telefono") String telefono,
+        @QueryParam("limit") Integer limit) {
     try {
         // 1) Tomamos el primer parámetro no vacío
         String term = (q != null && !q.isBlank()) ? q
@@ -85,8 +91,9 @@ public Response buscar(
                     .build();
         }
 
-        // 2) Buscar por nombre/correo/teléfono (tel. ignora guiones en el service)
-        List<Cliente> resultados = clienteService.buscarPorNombre(term);
+        // 2) Índice en memoria; mientras carga, SQL (tel. ignora guiones en el service)
+        List<Cliente> resultados = clienteBusqueda.buscar(term, limit)
+                .orElseGet(() -> clienteService.buscarPorNombre(term));
 
         return Response.ok(createResponse(true, "Búsqueda completada", resultados)).build();
     } catch (Exception e) {
@@ -191,4 +198,13 @@ public Response buscar(
         response.put("data", data);
         return response;
     }
+
+    /**
+     * Respuesta estándar con el nextCursor de la página (null si no hay más).
+     */
+    private Map<String, Object> createResponse(String message, Pagina<?> pagina) {
+        Map<String, Object> response = createResponse(true, message, pagina.getItems());
+        response.put("nextCursor", pagina.getNextCursor());
+        return response;
+    }
 }
\ No newline at end of file
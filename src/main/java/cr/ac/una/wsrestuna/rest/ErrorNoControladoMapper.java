@@ -0,0 +1,43 @@
+package cr.ac.una.wsrestuna.rest;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Convierte en respuesta cualquier excepción que un recurso no atrapó.
+ *
+ * Sin esto el contenedor arma su propio 500 y los filtros de respuesta no
+ * corren: {@link MetricasFilter} dejaba la petición "en curso" para siempre,
+ * sin muestra de latencia y con el perfil SQL colgado del hilo. Las
+ * WebApplicationException (404, 405, ...) conservan su respuesta; el resto
+ * sale como 500 con el mismo sobre success/message/data de los REST.
+ */
+@Provider
+public class ErrorNoControladoMapper implements ExceptionMapper<Throwable> {
+
+    private static final Logger LOG = Logger.getLogger(ErrorNoControladoMapper.class.getName());
+
+    @Override
+    public Response toResponse(Throwable e) {
+        if (e instanceof WebApplicationException) {
+            return ((WebApplicationException) e).getResponse();
+        }
+        LOG.log(Level.SEVERE, "Error no controlado en un recurso REST", e);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", "Error: " + e.getMessage());
+        response.put("data", null);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(response)
+                .build();
+    }
+}
@@ -3,6 +3,7 @@ package cr.ac.una.wsrestuna.rest;
 import cr.ac.una.wsrestuna.model.DetalleFactura;
 import cr.ac.una.wsrestuna.model.Factura;
 import cr.ac.una.wsrestuna.service.FacturaService;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
@@ -10,6 +11,7 @@ import jakarta.ws.rs.core.Response;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,11 +29,41 @@ public class FacturaRest {
     @EJB
     private FacturaService facturaService;
 
+    /**
+     * GET /api/facturas?cursor=&limit=
+     * Filtros opcionales: usuarioId, clienteId o fechaInicio+fechaFin (ISO-8601).
+     */
     @GET
-    public Response findAll() {
+    public Response findAll(
+            @QueryParam("cursor") Long cursor,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("usuarioId") Long usuarioId,
+            @QueryParam("clienteId") Long clienteId,
+            @QueryParam("fechaInicio") String fechaInicio,
+            @QueryParam("fechaFin") String fechaFin) {
         try {
-            List<Factura> facturas = facturaService.findAll();
-            return Response.ok(createResponse(true, "Facturas obtenidas", facturas)).build();
+            if ((fechaInicio == null) != (fechaFin == null)) {
+                // Con una sola fecha no se debe devolver el listado sin filtrar
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(createResponse(false, "Debe indicar fechaInicio y fechaFin juntas", null))
+                        .build();
+            }
+            Pagina<Factura> pagina;
+            if (usuarioId != null) {
+                pagina = facturaService.findByUsuario(usuarioId, cursor, limit);
+            } else if (clienteId != null) {
+                pagina = facturaService.findByCliente(clienteId, cursor, limit);
+            } else if (fechaInicio != null && fechaFin != null) {
+                pagina = facturaService.findByFecha(LocalDateTime.parse(fechaInicio),
+                        LocalDateTime.parse(fechaFin), cursor, limit);
+            } else {
+                pagina = facturaService.findPagina(cursor, limit);
+            }
+            return Response.ok(createResponse("Facturas obtenidas", pagina)).build();
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(createResponse(false, "Formato de fecha inválido", null))
+                    .build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener facturas", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -336,4 +368,13 @@ public class FacturaRest {
         response.put("data", data);
         return response;
     }
+
+    /**
+     * Respuesta estándar con el nextCursor de la página (null si no hay más).
+     */
+    private Map<String, Object> createResponse(String message, Pagina<?> pagina) {
+        Map<String, Object> response = createResponse(true, message, pagina.getItems());
+        response.put("nextCursor", pagina.getNextCursor());
+        return response;
+    }
 }
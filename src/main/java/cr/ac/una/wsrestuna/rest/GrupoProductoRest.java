@@ -1,9 +1,11 @@
 package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.GrupoProducto;
+import cr.ac.una.wsrestuna.service.CatalogoService;
 import cr.ac.una.wsrestuna.service.GrupoProductoService;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.util.HashMap;
@@ -29,11 +31,13 @@ public class GrupoProductoRest {
     @EJB
     private GrupoProductoService grupoService;
 
+    @EJB
+    private CatalogoService catalogoService;
+
     @GET
-    public Response findAll() {
+    public Response findAll(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         try {
-            List<GrupoProducto> grupos = grupoService.findActivos();
-            return Response.ok(createResponse(true, "Grupos obtenidos", grupos)).build();
+            return responderVista(CatalogoService.Vista.GRUPOS, ifNoneMatch);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener grupos", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -65,10 +69,9 @@ public class GrupoProductoRest {
 
     @GET
     @Path("/menu-rapido")
-    public Response findMenuRapido() {
+    public Response findMenuRapido(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         try {
-            List<GrupoProducto> grupos = grupoService.findMenuRapido();
-            return Response.ok(createResponse(true, "Menú rápido obtenido", grupos)).build();
+            return responderVista(CatalogoService.Vista.GRUPOS_MENU_RAPIDO, ifNoneMatch);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener menú rápido", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -153,18 +156,26 @@ public class GrupoProductoRest {
     
     @GET
 @Path("/ventas")
-public Response gruposOrdenadosPorVentas() {
+public Response gruposOrdenadosPorVentas(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
     try {
-        List<GrupoProductoService.GrupoVM> data = grupoService.obtenerGruposConProductosOrdenadosPorVentas();
-        return Response.ok(Map.of(
-            "success", true,
-            "message", "Grupos ordenados por ventas obtenidos",
-            "data", data
-        )).build();
+        return responderVista(CatalogoService.Vista.GRUPOS_VENTAS, ifNoneMatch);
     } catch (Exception e) {
         return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
             .entity(Map.of("success", false, "message", "Error: " + e.getMessage()))
             .build();
     }
 }
+
+    /**
+     * Responde con los bytes del snapshot de catálogo, o 304 si el cliente ya tiene el ETag.
+     */
+    private Response responderVista(CatalogoService.Vista vista, String ifNoneMatch) {
+        CatalogoService.Entrada entrada = catalogoService.getVista(vista);
+        if (entrada.coincide(ifNoneMatch)) {
+            return Response.notModified().header(HttpHeaders.ETAG, entrada.getEtag()).build();
+        }
+        return Response.ok(entrada.getJson(), MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ETAG, entrada.getEtag())
+                .build();
+    }
 }
\ No newline at end of file
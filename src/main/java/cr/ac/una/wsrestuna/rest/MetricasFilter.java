@@ -0,0 +1,85 @@
+package cr.ac.una.wsrestuna.rest;
+
+import cr.ac.una.wsrestuna.service.MetricasHttpService;
+import cr.ac.una.wsrestuna.util.PerfilSql;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/**
+ * Mide cada petición que llega a un método de recurso.
+ *
+ * Corre antes que {@link AutenticacionFilter}, así que los 401 también se
+ * cuentan. El tiempo va desde que se eligió el método hasta que la respuesta
+ * sale de los filtros; no incluye escribir el cuerpo (los PDF en streaming
+ * siguen escribiendo después). Las rutas que no existen (404 sin método)
+ * no se miden. Las excepciones que un recurso no atrapa pasan por
+ * {@link ErrorNoControladoMapper}, así que el filtro de respuesta corre
+ * siempre y cierra la medición.
+ *
+ * En el mismo tramo cuenta las sentencias SQL del hilo ({@link PerfilSql}).
+ * Con {@code restuna.sql.encabezados=true} las devuelve en X-Sql-Sentencias,
+ * X-Sql-Filas y X-Sql-Ms, para que una prueba de integración pueda afirmar
+ * cuántas sentencias hace cada endpoint.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 500)
+public class MetricasFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String PROPIEDAD = "restuna.metricas";
+    private static final boolean ENCABEZADOS_SQL = Boolean.getBoolean("restuna.sql.encabezados");
+
+    @Inject
+    private MetricasHttpService metricas;
+
+    @Context
+    private ResourceInfo recurso;
+
+    private static final class Medicion {
+        final MetricasHttpService.Endpoint endpoint;
+        final long inicio;
+
+        Medicion(MetricasHttpService.Endpoint endpoint, long inicio) {
+            this.endpoint = endpoint;
+            this.inicio = inicio;
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req) {
+        Method m = recurso.getResourceMethod();
+        if (m == null) {
+            return;
+        }
+        MetricasHttpService.Endpoint e = metricas.endpoint(recurso.getResourceClass(), m);
+        e.iniciar();
+        PerfilSql.iniciar();
+        req.setProperty(PROPIEDAD, new Medicion(e, System.nanoTime()));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req, ContainerResponseContext resp) {
+        Object p = req.getProperty(PROPIEDAD);
+        if (p instanceof Medicion) {
+            Medicion med = (Medicion) p;
+            med.endpoint.terminar(resp.getStatus(), (System.nanoTime() - med.inicio) / 1000L);
+            PerfilSql sql = PerfilSql.terminar();
+            if (sql != null) {
+                metricas.registrarSql(med.endpoint, sql);
+                if (ENCABEZADOS_SQL) {
+                    resp.getHeaders().putSingle("X-Sql-Sentencias", sql.getSentencias());
+                    resp.getHeaders().putSingle("X-Sql-Filas", sql.getFilas());
+                    resp.getHeaders().putSingle("X-Sql-Ms", sql.getDbMicros() / 1000.0);
+                }
+            }
+        }
+    }
+}
@@ -2,16 +2,26 @@ package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.DetalleOrden;
 import cr.ac.una.wsrestuna.model.Orden;
+import cr.ac.una.wsrestuna.service.OrdenEventosService;
 import cr.ac.una.wsrestuna.service.OrdenService;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,11 +35,14 @@ public class OrdenRest {
     @EJB
     private OrdenService ordenService;
 
+    @Inject
+    private OrdenEventosService ordenEventos;
+
     @GET
-    public Response findAll() {
+    public Response findAll(@QueryParam("cursor") Long cursor, @QueryParam("limit") Integer limit) {
         try {
-            List<Orden> ordenes = ordenService.findAll();
-            return Response.ok(createResponse(true, "Órdenes obtenidas", ordenes)).build();
+            Pagina<Orden> pagina = ordenService.findPagina(cursor, limit);
+            return Response.ok(createResponse("Órdenes obtenidas", pagina)).build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener órdenes", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -38,12 +51,56 @@ public class OrdenRest {
         }
     }
 
+    /**
+     * GET /api/ordenes/activas
+     * Sin "since" devuelve todas las órdenes abiertas (y el token en el header X-Sync-Token).
+     * Con "since" devuelve solo lo que cambió desde ese token:
+     * { token, completo, ordenes: [abiertas cambiadas], cerradas: [ids] },
+     * o 204 sin cuerpo si no hubo cambios.
+     */
     @GET
     @Path("/activas")
-    public Response findAbiertas() {
+    public Response findAbiertas(@QueryParam("since") String since) {
         try {
-            List<Orden> ordenes = ordenService.findAbiertas();
-            return Response.ok(createResponse(true, "Órdenes activas obtenidas", ordenes)).build();
+            // El token se toma antes de leer: lo que cambie entre medio se reenvía en el próximo poll
+            String token = ordenEventos.tokenActual();
+
+            if (since == null || since.isBlank()) {
+                List<Orden> ordenes = ordenService.findAbiertas();
+                return Response.ok(createResponse(true, "Órdenes activas obtenidas", ordenes))
+                        .header("X-Sync-Token", token)
+                        .build();
+            }
+
+            Map<String, Object> delta = new HashMap<>();
+            delta.put("token", token);
+
+            Set<Long> cambiadas = ordenEventos.ordenesCambiadasDesde(since.trim());
+            if (cambiadas != null && cambiadas.isEmpty()) {
+                // Nada cambió: sin cuerpo y sin tocar BD
+                return Response.noContent().header("X-Sync-Token", token).build();
+            }
+            if (cambiadas == null) {
+                // Token viejo o de otro arranque: se manda todo
+                delta.put("completo", true);
+                delta.put("ordenes", ordenService.findAbiertas());
+                delta.put("cerradas", List.of());
+            } else {
+                List<Orden> abiertas = new ArrayList<>();
+                List<Long> cerradas = new ArrayList<>(cambiadas);
+                for (Orden o : ordenService.findByIds(cambiadas)) {
+                    if (o.isAbierta()) {
+                        abiertas.add(o);
+                        cerradas.remove(o.getId());
+                    }
+                }
+                delta.put("completo", false);
+                delta.put("ordenes", abiertas);
+                delta.put("cerradas", cerradas);
+            }
+            return Response.ok(createResponse(true, "Cambios de órdenes activas", delta))
+                    .header("X-Sync-Token", token)
+                    .build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener órdenes activas", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -52,6 +109,21 @@ public class OrdenRest {
         }
     }
 
+    /**
+     * GET /api/ordenes/stream (text/event-stream)
+     * Cambios de órdenes en vivo para cocina/caja. Al reconectar, el cliente
+     * envía Last-Event-ID y recibe los eventos que se perdió, o RESINCRONIZAR
+     * si ya no se pueden reenviar (p. ej. después de un reinicio del servidor).
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void stream(@Context SseEventSink sink,
+                       @Context Sse sse,
+                       @HeaderParam("Last-Event-ID") String lastEventId) {
+        ordenEventos.suscribir(sink, sse, lastEventId);
+    }
+
     @GET
     @Path("/{id}")
     public Response findById(@PathParam("id") Long id) {
@@ -186,6 +258,67 @@ public class OrdenRest {
         }
     }
 
+// POST /ordenes/{ordenId}/detalles/batch
+// Body esperado: [ { "productoId": 5, "cantidad": 2 }, ... ]
+    @POST
+    @Path("/{ordenId}/detalles/batch")
+    public Response agregarDetalles(@PathParam("ordenId") Long ordenId, List<Map<String, Object>> items) {
+        try {
+            if (items == null || items.isEmpty()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(createResponse(false, "Lista de productos requerida", null))
+                        .build();
+            }
+
+            // Si el mismo producto viene repetido se suman las cantidades
+            Map<Long, Integer> cantidades = new LinkedHashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                Map<String, Object> item = items.get(i);
+                Long productoId = item == null ? null : entero(item.get("productoId"), Long.MAX_VALUE);
+                Long cantidad = item == null ? null : entero(item.get("cantidad"), Integer.MAX_VALUE);
+                if (productoId == null || productoId <= 0 || cantidad == null || cantidad <= 0) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(createResponse(false, "Item " + i
+                                    + " inválido: requiere productoId y cantidad enteros mayores que cero", null))
+                            .build();
+                }
+                long total = cantidad + cantidades.getOrDefault(productoId, 0);
+                if (total > Integer.MAX_VALUE) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(createResponse(false, "Item " + i + " inválido: cantidad demasiado grande", null))
+                            .build();
+                }
+                cantidades.put(productoId, (int) total);
+            }
+
+            List<DetalleOrden> detalles = ordenService.agregarDetalles(ordenId, cantidades);
+            return Response.status(Response.Status.CREATED)
+                    .entity(createResponse(true, "Detalles agregados/actualizados exitosamente", detalles))
+                    .build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al agregar detalles en lote", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(createResponse(false, "Error: " + e.getMessage(), null))
+                    .build();
+        }
+    }
+
+    /**
+     * Valor entero de un campo JSON (número o texto) hasta {@code max}, o null
+     * si falta, tiene decimales o no es un número.
+     */
+    private static Long entero(Object valor, long max) {
+        if (valor == null) {
+            return null;
+        }
+        try {
+            long v = new BigDecimal(valor.toString().trim()).longValueExact();
+            return v <= max ? v : null;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
 // PUT /ordenes/{ordenId}/detalles/{detalleId}
 // Body esperado: { "cantidad": 7 }
     @PUT
@@ -267,4 +400,13 @@ public class OrdenRest {
         return response;
     }
 
+
+    /**
+     * Respuesta estándar con el nextCursor de la página (null si no hay más).
+     */
+    private Map<String, Object> createResponse(String message, Pagina<?> pagina) {
+        Map<String, Object> response = createResponse(true, message, pagina.getItems());
+        response.put("nextCursor", pagina.getNextCursor());
+        return response;
+    }
 }
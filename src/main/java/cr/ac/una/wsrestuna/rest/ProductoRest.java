@@ -2,9 +2,12 @@ package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.GrupoProducto;
 import cr.ac.una.wsrestuna.model.Producto;
+import cr.ac.una.wsrestuna.service.CatalogoService;
+import cr.ac.una.wsrestuna.service.ProductoBusquedaService;
 import cr.ac.una.wsrestuna.service.ProductoService;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.util.HashMap;
@@ -30,11 +33,16 @@ public class ProductoRest {
     @EJB
     private ProductoService productoService;
 
+    @EJB
+    private CatalogoService catalogoService;
+
+    @EJB
+    private ProductoBusquedaService productoBusqueda;
+
     @GET
-    public Response findAll() {
+    public Response findAll(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         try {
-            List<Producto> productos = productoService.findActivos();
-            return Response.ok(createResponse(true, "Productos obtenidos", productos)).build();
+            return responderVista(CatalogoService.Vista.PRODUCTOS, ifNoneMatch);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener productos", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -80,10 +88,9 @@ public class ProductoRest {
 
     @GET
     @Path("/menu-rapido")
-    public Response findMenuRapido() {
+    public Response findMenuRapido(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         try {
-            List<Producto> productos = productoService.findMenuRapido();
-            return Response.ok(createResponse(true, "Menú rápido obtenido", productos)).build();
+            return responderVista(CatalogoService.Vista.PRODUCTOS_MENU_RAPIDO, ifNoneMatch);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener menú rápido", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -120,17 +127,24 @@ public class ProductoRest {
         }
     }
 
+    /**
+     * Búsqueda para el typeahead del POS, sobre el índice en memoria.
+     * GET /api/productos/buscar?q=...&limit=20 ("nombre" se sigue aceptando en lugar de q).
+     */
     @GET
     @Path("/buscar")
-    public Response buscarPorNombre(@QueryParam("nombre") String nombre) {
+    public Response buscarPorNombre(@QueryParam("q") String q,
+                                    @QueryParam("nombre") String nombre,
+                                    @QueryParam("limit") Integer limit) {
         try {
-            if (nombre == null || nombre.trim().isEmpty()) {
+            String texto = (q != null && !q.isBlank()) ? q : nombre;
+            if (texto == null || texto.trim().isEmpty()) {
                 return Response.status(Response.Status.BAD_REQUEST)
-                        .entity(createResponse(false, "Nombre requerido para búsqueda", null))
+                        .entity(createResponse(false, "Texto requerido para búsqueda", null))
                         .build();
             }
 
-            List<Producto> productos = productoService.buscarPorNombre(nombre);
+            List<Producto> productos = productoBusqueda.buscar(texto, limit);
             return Response.ok(createResponse(true, "Búsqueda completada", productos)).build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al buscar productos", e);
@@ -229,4 +243,17 @@ public Response create(Producto producto) {
         response.put("data", data);
         return response;
     }
+
+    /**
+     * Responde con los bytes del snapshot de catálogo, o 304 si el cliente ya tiene el ETag.
+     */
+    private Response responderVista(CatalogoService.Vista vista, String ifNoneMatch) {
+        CatalogoService.Entrada entrada = catalogoService.getVista(vista);
+        if (entrada.coincide(ifNoneMatch)) {
+            return Response.notModified().header(HttpHeaders.ETAG, entrada.getEtag()).build();
+        }
+        return Response.ok(entrada.getJson(), MediaType.APPLICATION_JSON_TYPE)
+                .header(HttpHeaders.ETAG, entrada.getEtag())
+                .build();
+    }
 }
\ No newline at end of file
@@ -1,17 +1,22 @@
 // src/main/java/cr/ac/una/wsrestuna/rest/ReportesRest.java
 package cr.ac.una.wsrestuna.rest;
 
+import cr.ac.una.wsrestuna.service.ReporteCacheService;
+import cr.ac.una.wsrestuna.service.ReporteCacheService.Periodo;
 import cr.ac.una.wsrestuna.service.ReportesPdfService;
 import cr.ac.una.wsrestuna.service.ReportesService;
+import cr.ac.una.wsrestuna.service.VentasHoraService;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Path("/reportes")
 @Consumes(MediaType.APPLICATION_JSON)
@@ -24,6 +29,12 @@ public class ReportesRest {
     @EJB
     private ReportesPdfService reportesPdfService;
 
+    @EJB
+    private ReporteCacheService reporteCache;
+
+    @EJB
+    private VentasHoraService ventasHora;
+
     private static final DateTimeFormatter DF = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     // ===== Endpoints JSON =====
@@ -34,6 +45,15 @@ public class ReportesRest {
                              @QueryParam("usuario")     String usuario) {
         LocalDate ini = blank(fIni) ? null : LocalDate.parse(fIni);
         LocalDate fin = blank(fFin) ? null : LocalDate.parse(fFin);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("facturas.json",
+                ReporteCacheService.params("usuario", usuario, "estado", estado), Periodo.dias(ini, fin), out -> {
+                    List<Map<String, Object>> data = reportesService.facturas(ini, fin, usuario, estado);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return !data.isEmpty();
+                });
+        if (cache.isPresent()) {
+            return desdeCache(cache.get());
+        }
         List<Map<String, Object>> data = reportesService.facturas(ini, fin, usuario, estado);
         return ok(data);
     }
@@ -45,6 +65,15 @@ public class ReportesRest {
                                  @QueryParam("top")         Integer top) {
         LocalDate ini = blank(fIni) ? null : LocalDate.parse(fIni);
         LocalDate fin = blank(fFin) ? null : LocalDate.parse(fFin);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("productosTop.json",
+                ReporteCacheService.params("grupo", grupo, "top", top), Periodo.dias(ini, fin), out -> {
+                    List<Map<String, Object>> data = reportesService.productosTop(ini, fin, grupo, top);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return !data.isEmpty();
+                });
+        if (cache.isPresent()) {
+            return desdeCache(cache.get());
+        }
         List<Map<String, Object>> data = reportesService.productosTop(ini, fin, grupo, top);
         return ok(data);
     }
@@ -53,14 +82,56 @@ public class ReportesRest {
     public Response cierres(@QueryParam("fecha")   String f,
                             @QueryParam("usuario") String cajero) {
         LocalDate fecha = blank(f) ? null : LocalDate.parse(f);
+        Optional<java.nio.file.Path> cache = reporteCache.obtener("cierres.json",
+                ReporteCacheService.params("usuario", cajero), Periodo.dia(fecha), out -> {
+                    List<Map<String, Object>> data = reportesService.cierres(fecha, cajero);
+                    reporteCache.escribirJson(respuesta(data), out);
+                    return ReporteCacheService.cierresCerrados(data);
+                });
+        if (cache.isPresent()) {
+            return desdeCache(cache.get());
+        }
         List<Map<String, Object>> data = reportesService.cierres(fecha, cajero);
         return ok(data);
     }
 
+    // ===== Mantenimiento del agregado de ventas por hora =====
+    // POST /api/reportes/ventas/reconstruir?desde=YYYY-MM-DD&hasta=YYYY-MM-DD
+    @POST @Path("/ventas/reconstruir")
+    public Response reconstruirVentas(@QueryParam("desde") String desde,
+                                      @QueryParam("hasta") String hasta) {
+        if (blank(desde)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("success", false, "message", "El parámetro desde es requerido"))
+                    .build();
+        }
+        try {
+            LocalDate ini = LocalDate.parse(desde);
+            LocalDate fin = blank(hasta) ? ini : LocalDate.parse(hasta);
+            int filas = ventasHora.reconstruir(ini, fin);
+            return Response.ok(Map.of(
+                    "success", true,
+                    "message", "Ventas por hora reconstruidas",
+                    "data", Map.of("desde", ini.toString(), "hasta", fin.toString(), "filas", filas)
+            )).build();
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("success", false, "message", "Parámetros inválidos: " + e.getMessage()))
+                    .build();
+        }
+    }
+
     // ===== PDF DETALLE (override de Produces) =====
     @GET @Path("/cierres/{id}/pdf")
     @Produces("application/pdf")
     public Response cierreByIdPdf(@PathParam("id") Long id){
+        Optional<java.nio.file.Path> cache = reportesPdfService.cierreByIdPdfCache(id);
+        if (cache.isPresent()) {
+            StreamingOutput salida = out -> ReporteCacheService.copiar(cache.get(), out);
+            return Response.ok(salida)
+                    .header("Content-Disposition","inline; filename=cierre-"+id+".pdf")
+                    .build();
+        }
         byte[] pdf = reportesPdfService.cierreByIdPdf(id);
         return Response.ok(pdf)
                 .header("Content-Disposition","inline; filename=cierre-"+id+".pdf")
@@ -69,12 +140,21 @@ public class ReportesRest {
 
     // ===== helpers =====
     private Response ok(List<Map<String, Object>> data) {
-        Map<String, Object> out = Map.of(
+        return Response.ok(respuesta(data)).build();
+    }
+
+    private static Map<String, Object> respuesta(List<Map<String, Object>> data) {
+        return Map.of(
                 "success", true,
                 "message", "OK",
                 "data", data == null ? List.of() : data
         );
-        return Response.ok(out).build();
+    }
+
+    /** Reporte JSON de un período cerrado, tal como quedó guardado en disco. */
+    private static Response desdeCache(java.nio.file.Path archivo) {
+        StreamingOutput salida = out -> ReporteCacheService.copiar(archivo, out);
+        return Response.ok(salida, MediaType.APPLICATION_JSON).build();
     }
 
     private static boolean blank(String s) { return s == null || s.isBlank(); }
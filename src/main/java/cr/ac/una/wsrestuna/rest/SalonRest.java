@@ -2,12 +2,16 @@ package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.Mesa;
 import cr.ac.una.wsrestuna.model.Salon;
-import cr.ac.una.wsrestuna.service.OrdenService;
+import cr.ac.una.wsrestuna.service.ImagenAlmacenService;
+import cr.ac.una.wsrestuna.service.MesaEstadoService;
+import cr.ac.una.wsrestuna.service.ReporteCacheService;
 import cr.ac.una.wsrestuna.service.SalonService;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,7 +26,12 @@ public class SalonRest {
     @EJB
     private SalonService salonService;
     @EJB
-    private OrdenService ordenService;
+    private MesaEstadoService mesaEstadoService;
+    @EJB
+    private ImagenAlmacenService imagenAlmacen;
+
+    /** Con ?v=hash la URL nunca cambia de contenido. */
+    private static final String CACHE_INMUTABLE = "public, max-age=31536000, immutable";
 
     // ==================== ENDPOINTS DE SALONES ====================
 
@@ -41,7 +50,9 @@ public class SalonRest {
                 dto.put("cobraServicio", s.getCobraServicio());
                 dto.put("estado", s.getEstado());
                 dto.put("version", s.getVersion());
-                // NO incluir imagenMesa ni tipoImagen
+                dto.put("imagenHash", s.getImagenHash());
+                dto.put("imagenUrl", s.getImagenUrl());
+                // NO incluir imagenMesa: se descarga aparte por imagenUrl
                 salonesDTO.add(dto);
             }
             
@@ -61,7 +72,7 @@ public class SalonRest {
             Optional<Salon> salon = salonService.findById(id);
             
             if (salon.isPresent()) {
-                // ⭐ AQUÍ SÍ incluye la imagen completa
+                // La imagen va por imagenUrl (GET /salones/{id}/imagen)
                 return Response.ok(createResponse(true, "Salón encontrado", salon.get())).build();
             } else {
                 return Response.status(Response.Status.NOT_FOUND)
@@ -81,7 +92,7 @@ public class SalonRest {
     public Response findSalones() {
         try {
             List<Salon> salones = salonService.findSalones();
-            // ⭐ AQUÍ SÍ incluye imágenes porque se usa en VistaSalones
+            // VistaSalones descarga cada imagen por imagenUrl; el navegador/cliente la cachea por hash
             return Response.ok(createResponse(true, "Salones obtenidos", salones)).build();
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener salones", e);
@@ -91,6 +102,61 @@ public class SalonRest {
         }
     }
 
+    /**
+     * Imagen del salón (o miniatura PNG con ?ancho=). ETag = hash del
+     * contenido; con ?v=hash se puede cachear sin volver a preguntar.
+     */
+    @GET
+    @Path("/{id}/imagen")
+    @Produces({"image/*", MediaType.APPLICATION_OCTET_STREAM})
+    public Response imagen(@PathParam("id") Long id,
+                           @QueryParam("v") String version,
+                           @QueryParam("ancho") Integer ancho,
+                           @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        try {
+            Optional<SalonService.ImagenRef> ref = salonService.imagen(id);
+            if (ref.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            SalonService.ImagenRef img = ref.get();
+
+            java.nio.file.Path archivo = img.archivo();
+            String tipo = mime(img.tipo());
+            String etag = "\"" + img.hash() + "\"";
+            if (ancho != null && ancho > 0 && archivo != null) {
+                Optional<java.nio.file.Path> mini = imagenAlmacen.miniatura(img.hash(), ancho);
+                if (mini.isPresent()) {
+                    archivo = mini.get();
+                    tipo = "image/png";
+                    etag = "\"" + img.hash() + "-w" + ImagenAlmacenService.anchoPermitido(ancho) + "\"";
+                }
+            }
+            String cache = img.hash().equals(version) ? CACHE_INMUTABLE : "no-cache";
+
+            if (coincide(ifNoneMatch, etag)) {
+                return Response.notModified()
+                        .header(HttpHeaders.ETAG, etag)
+                        .header(HttpHeaders.CACHE_CONTROL, cache)
+                        .build();
+            }
+            Response.ResponseBuilder rb;
+            if (archivo != null) {
+                java.nio.file.Path origen = archivo;
+                StreamingOutput salida = out -> ReporteCacheService.copiar(origen, out);
+                rb = Response.ok(salida).header(HttpHeaders.CONTENT_LENGTH, java.nio.file.Files.size(origen));
+            } else {
+                rb = Response.ok(img.datos());
+            }
+            return rb.type(tipo)
+                    .header(HttpHeaders.ETAG, etag)
+                    .header(HttpHeaders.CACHE_CONTROL, cache)
+                    .build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al obtener imagen del salón", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @POST
     public Response create(Salon salon) {
         try {
@@ -173,24 +239,10 @@ public class SalonRest {
 
             List<Mesa> mesas = salonService.findMesasBySalon(salonId);
 
-            // ⭐ SINCRONIZAR ESTADO CON ÓRDENES ACTIVAS
+            // ⭐ ESTADO DESDE EL REGISTRO EN MEMORIA (sin query por mesa ni escrituras)
             List<Map<String, Object>> mesasDTO = new ArrayList<>();
             for (Mesa mesa : mesas) {
-                // Verificar si realmente tiene orden activa
-                boolean tieneOrdenActiva = ordenService.mesaTieneOrdenActiva(mesa.getId());
-
-                // Actualizar estado si es necesario
-                String estadoReal = tieneOrdenActiva ? "OCUPADA" : "LIBRE";
-
-                // ⚠️ IMPORTANTE: Si el estado en BD no coincide, actualizarlo
-                if (!estadoReal.equals(mesa.getEstado())) {
-                    LOG.log(Level.WARNING,
-                            "⚠️ Mesa {0} desincronizada. BD={1}, Real={2}. Corrigiendo...",
-                            new Object[]{mesa.getIdentificador(), mesa.getEstado(), estadoReal});
-
-                    mesa.setEstado(estadoReal);
-                    salonService.updateMesa(mesa); // Actualizar en BD
-                }
+                String estadoReal = mesaEstadoService.getEstado(mesa.getId()).getEstado();
 
                 Map<String, Object> dto = new HashMap<>();
                 dto.put("id", mesa.getId());
@@ -364,6 +416,30 @@ public class SalonRest {
         }
     }
 
+    private static String mime(String tipoImagen) {
+        if (tipoImagen == null || tipoImagen.isBlank()) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        String t = tipoImagen.trim().toLowerCase();
+        if (t.contains("/")) {
+            return t;
+        }
+        return "image/" + (t.equals("jpg") ? "jpeg" : t);
+    }
+
+    private static boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*") || t.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Map<String, Object> createResponse(boolean success, String message, Object data) {
         Map<String, Object> response = new HashMap<>();
         response.put("success", success);
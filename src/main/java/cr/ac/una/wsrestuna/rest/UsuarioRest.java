@@ -1,9 +1,13 @@
 package cr.ac.una.wsrestuna.rest;
 
 import cr.ac.una.wsrestuna.model.Usuario;
+import cr.ac.una.wsrestuna.service.ClaveService;
+import cr.ac.una.wsrestuna.service.TokenService;
 import cr.ac.una.wsrestuna.service.UsuarioService;
 import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.util.HashMap;
@@ -29,6 +33,12 @@ public class UsuarioRest {
     @EJB
     private UsuarioService usuarioService;
 
+    @EJB
+    private TokenService tokenService;
+
+    @EJB
+    private ClaveService claveService;
+
     /**
      * GET /api/usuarios
      * Obtiene todos los usuarios activos
@@ -118,6 +128,8 @@ public class UsuarioRest {
             return Response.status(Response.Status.CREATED)
                     .entity(createResponse(true, "Usuario creado exitosamente", created))
                     .build();
+        } catch (ClaveService.Saturado e) {
+            return saturado(e);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al crear usuario", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -146,6 +158,8 @@ public class UsuarioRest {
             Usuario updated = usuarioService.update(usuario);
             updated.setClave(null);
             return Response.ok(createResponse(true, "Usuario actualizado exitosamente", updated)).build();
+        } catch (ClaveService.Saturado e) {
+            return saturado(e);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al actualizar usuario", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -182,7 +196,8 @@ public class UsuarioRest {
 
     /**
      * POST /api/usuarios/login
-     * Autentica un usuario
+     * Autentica un usuario; además de data devuelve "token" (Bearer) y
+     * "expira" (epoch en segundos)
      */
     @POST
     @Path("/login")
@@ -202,12 +217,18 @@ public class UsuarioRest {
             if (usuarioAuth.isPresent()) {
                 Usuario u = usuarioAuth.get();
                 u.setClave(null);
-                return Response.ok(createResponse(true, "Autenticación exitosa", u)).build();
+                TokenService.Emitido token = tokenService.emitir(u);
+                Map<String, Object> response = createResponse(true, "Autenticación exitosa", u);
+                response.put("token", token.token());
+                response.put("expira", token.expira());
+                return Response.ok(response).build();
             } else {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity(createResponse(false, "Credenciales inválidas", null))
                         .build();
             }
+        } catch (ClaveService.Saturado e) {
+            return saturado(e);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error en autenticación", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -216,6 +237,69 @@ public class UsuarioRest {
         }
     }
 
+    /**
+     * POST /api/usuarios/logout
+     * Revoca el token con el que se hace la petición
+     */
+    @POST
+    @Path("/logout")
+    public Response logout(@Context ContainerRequestContext ctx) {
+        try {
+            Object sesion = ctx.getProperty(TokenService.PROPIEDAD_SESION);
+            if (sesion instanceof TokenService.Sesion) {
+                tokenService.revocar((TokenService.Sesion) sesion);
+            }
+            return Response.ok(createResponse(true, "Sesión cerrada", null)).build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al cerrar sesión", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(createResponse(false, "Error: " + e.getMessage(), null))
+                    .build();
+        }
+    }
+
+    /**
+     * POST /api/usuarios/token/renovar
+     * Emite un token nuevo para la misma sesión, sin pedir la clave otra vez
+     */
+    @POST
+    @Path("/token/renovar")
+    public Response renovarToken(@Context ContainerRequestContext ctx) {
+        try {
+            Object sesion = ctx.getProperty(TokenService.PROPIEDAD_SESION);
+            if (!(sesion instanceof TokenService.Sesion)) {
+                return Response.status(Response.Status.UNAUTHORIZED)
+                        .entity(createResponse(false, "Token requerido", null))
+                        .build();
+            }
+            Optional<TokenService.Emitido> token = tokenService.renovar((TokenService.Sesion) sesion);
+            if (token.isEmpty()) {
+                return Response.status(Response.Status.UNAUTHORIZED)
+                        .entity(createResponse(false, "La sesión venció, debe autenticarse de nuevo", null))
+                        .build();
+            }
+            Map<String, Object> response = createResponse(true, "Token renovado", null);
+            response.put("token", token.get().token());
+            response.put("expira", token.get().expira());
+            return Response.ok(response).build();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al renovar token", e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(createResponse(false, "Error: " + e.getMessage(), null))
+                    .build();
+        }
+    }
+
+    /**
+     * GET /api/usuarios/clave/metricas
+     * Estado del pool de BCrypt: costo, cola, rechazos y tiempos
+     */
+    @GET
+    @Path("/clave/metricas")
+    public Response metricasClave() {
+        return Response.ok(createResponse(true, "Métricas de contraseñas", claveService.metricas())).build();
+    }
+
     /**
      * POST /api/usuarios/{id}/cambiar-clave
      * Cambia la contraseña de un usuario
@@ -242,6 +326,8 @@ public class UsuarioRest {
                         .entity(createResponse(false, "Contraseña antigua incorrecta", null))
                         .build();
             }
+        } catch (ClaveService.Saturado e) {
+            return saturado(e);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al cambiar contraseña", e);
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -250,6 +336,15 @@ public class UsuarioRest {
         }
     }
 
+    /** 429: el pool de BCrypt está lleno; el cliente reintenta en un segundo. */
+    private Response saturado(ClaveService.Saturado e) {
+        LOG.log(Level.WARNING, e.getMessage());
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header("Retry-After", "1")
+                .entity(createResponse(false, e.getMessage(), null))
+                .build();
+    }
+
     private Map<String, Object> createResponse(boolean success, String message, Object data) {
         Map<String, Object> response = new HashMap<>();
         response.put("success", success);
@@ -0,0 +1,50 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Id de la caja abierta de cada usuario, para no consultarlo en cada factura.
+ *
+ * Es solo una pista: al facturar CierreCajaService usa el id sin consultar
+ * la caja y, si el UPDATE de totales no encuentra la caja ABIERTA (por
+ * ejemplo, se cerró desde otro nodo), la descarta y la factura se reintenta.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CajaAbiertaCacheService {
+
+    private final ConcurrentHashMap<Long, Long> cajaPorUsuario = new ConcurrentHashMap<>();
+
+    public Long get(Long usuarioId) {
+        return usuarioId == null ? null : cajaPorUsuario.get(usuarioId);
+    }
+
+    public void put(Long usuarioId, Long cierreId) {
+        if (usuarioId != null && cierreId != null) {
+            cajaPorUsuario.put(usuarioId, cierreId);
+        }
+    }
+
+    /**
+     * Olvida la caja del usuario solo si sigue siendo la indicada.
+     */
+    public void remove(Long usuarioId, Long cierreId) {
+        if (usuarioId != null && cierreId != null) {
+            cajaPorUsuario.remove(usuarioId, cierreId);
+        }
+    }
+
+    /**
+     * Olvida la caja sin saber de qué usuario es.
+     */
+    public void removeCierre(Long cierreId) {
+        if (cierreId != null) {
+            cajaPorUsuario.values().remove(cierreId);
+        }
+    }
+}
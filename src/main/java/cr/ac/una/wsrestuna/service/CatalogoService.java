@@ -0,0 +1,232 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.GrupoProducto;
+import cr.ac.una.wsrestuna.model.Producto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot del catálogo (productos y grupos) que lee el POS en cada cambio
+ * de pantalla.
+ *
+ * Cada vista se arma una sola vez: se consulta, se serializa con JSON-B a un
+ * byte[] con el mismo sobre success/message/data y se calcula un ETag fuerte
+ * con el hash de esos bytes, así que cambia con cualquier dato visible
+ * (incluido totalVentas). Los REST devuelven esos bytes tal cual y contestan
+ * 304 si el cliente ya tiene el ETag.
+ *
+ * ProductoService y GrupoProductoService disparan un {@link Cambio} al crear,
+ * actualizar o eliminar; al confirmarse el commit se invalida todo. Las
+ * ventas solo afectan el orden de las vistas por ventas, que se rearman como
+ * mucho cada {@link #REFRESCO_VENTAS_MS} ms para no perder el caché en hora pico.
+ * El campo totalVentas de /productos y /grupos refleja el último rearmado.
+ * La excepción es GRUPOS_VENTAS, que sale de {@link RankingVentasService} sin
+ * consultar la BD y se vuelve a serializar solo cuando el ranking cambió.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CatalogoService {
+
+    private static final Logger LOG = Logger.getLogger(CatalogoService.class.getName());
+
+    /** Antigüedad máxima de una vista ordenada por ventas después de una venta. */
+    static final long REFRESCO_VENTAS_MS = 30_000L;
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @EJB
+    private RankingVentasService ranking;
+
+    /** Tipo de cambio que invalida el snapshot. */
+    public enum Cambio {
+        /** Alta, modificación o baja de productos o grupos. */
+        CATALOGO,
+        /** Se vendieron productos: cambia totalVentas y el orden por ventas. */
+        VENTAS
+    }
+
+    public enum Vista {
+        PRODUCTOS("Productos obtenidos", false),
+        PRODUCTOS_MENU_RAPIDO("Menú rápido obtenido", true),
+        GRUPOS("Grupos obtenidos", false),
+        GRUPOS_MENU_RAPIDO("Menú rápido obtenido", true),
+        GRUPOS_VENTAS("Grupos ordenados por ventas obtenidos", true);
+
+        private final String mensaje;
+        private final boolean ordenPorVentas;
+
+        Vista(String mensaje, boolean ordenPorVentas) {
+            this.mensaje = mensaje;
+            this.ordenPorVentas = ordenPorVentas;
+        }
+    }
+
+    /**
+     * Vista ya serializada. Inmutable: el arreglo no se expone para escritura.
+     */
+    public static final class Entrada {
+        private final byte[] json;
+        private final String etag;
+        private final long generacion;
+        private final long generacionVentas;
+        private final long creada;
+
+        Entrada(byte[] json, String etag, long generacion, long generacionVentas) {
+            this.json = json;
+            this.etag = etag;
+            this.generacion = generacion;
+            this.generacionVentas = generacionVentas;
+            this.creada = System.currentTimeMillis();
+        }
+
+        /** Cuerpo JSON listo para enviar; no modificar. */
+        public byte[] getJson() { return json; }
+
+        /** ETag fuerte, con comillas. */
+        public String getEtag() { return etag; }
+
+        /** true si el If-None-Match del cliente incluye este ETag. */
+        public boolean coincide(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || t.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ConcurrentHashMap<Vista, Entrada> vistas = new ConcurrentHashMap<>();
+    private final AtomicLong generacion = new AtomicLong();
+    private final AtomicLong generacionVentas = new AtomicLong();
+
+    private Jsonb jsonb;
+
+    @PostConstruct
+    public void init() {
+        jsonb = JsonbBuilder.create();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            jsonb.close();
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Error al cerrar Jsonb", e);
+        }
+    }
+
+    /**
+     * Devuelve la vista serializada; la arma si el catálogo cambió desde la última vez.
+     */
+    public Entrada getVista(Vista vista) {
+        long gen = generacion.get();
+        // El ranking por grupos se mantiene en memoria: su versión dice exactamente si cambió
+        long genVentas = vista == Vista.GRUPOS_VENTAS ? ranking.getVersion() : generacionVentas.get();
+
+        Entrada actual = vistas.get(vista);
+        if (actual != null && vigente(vista, actual, gen, genVentas)) {
+            return actual;
+        }
+
+        Entrada nueva = construir(vista, gen, genVentas);
+        // Si otro hilo armó una más nueva mientras tanto, se conserva esa
+        return vistas.merge(vista, nueva, (a, b) ->
+                a.generacion > b.generacion
+                || (a.generacion == b.generacion && a.generacionVentas > b.generacionVentas) ? a : b);
+    }
+
+    public void onCambio(@Observes(during = TransactionPhase.AFTER_SUCCESS) Cambio cambio) {
+        if (cambio == Cambio.CATALOGO) {
+            generacion.incrementAndGet();
+        } else {
+            generacionVentas.incrementAndGet();
+        }
+    }
+
+    private boolean vigente(Vista vista, Entrada e, long gen, long genVentas) {
+        if (e.generacion != gen) {
+            return false;
+        }
+        if (!vista.ordenPorVentas || e.generacionVentas == genVentas) {
+            return true;
+        }
+        if (vista == Vista.GRUPOS_VENTAS) {
+            return false;
+        }
+        return System.currentTimeMillis() - e.creada < REFRESCO_VENTAS_MS;
+    }
+
+    private Entrada construir(Vista vista, long gen, long genVentas) {
+        Object data;
+
+        switch (vista) {
+            case PRODUCTOS:
+            case PRODUCTOS_MENU_RAPIDO: {
+                data = em.createNamedQuery(
+                        vista == Vista.PRODUCTOS ? "Producto.findActivos" : "Producto.findMenuRapido",
+                        Producto.class).getResultList();
+                break;
+            }
+            case GRUPOS:
+            case GRUPOS_MENU_RAPIDO: {
+                data = em.createNamedQuery(
+                        vista == Vista.GRUPOS ? "GrupoProducto.findActivos" : "GrupoProducto.findMenuRapido",
+                        GrupoProducto.class).getResultList();
+                break;
+            }
+            default: {
+                data = ranking.grupos();
+                break;
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", vista.mensaje);
+        response.put("data", data);
+        byte[] json = jsonb.toJson(response).getBytes(StandardCharsets.UTF_8);
+
+        LOG.log(Level.FINE, "Vista de catálogo {0} rearmada ({1} bytes)",
+                new Object[]{vista, json.length});
+        // El ETag sale del cuerpo: total_ventas cambia sin subir la versión de la fila
+        return new Entrada(json, etag(json), gen, genVentas);
+    }
+
+    private static String etag(byte[] cuerpo) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(cuerpo);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
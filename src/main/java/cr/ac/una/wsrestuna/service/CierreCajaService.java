@@ -1,9 +1,12 @@
 package cr.ac.una.wsrestuna.service;
 
 import cr.ac.una.wsrestuna.model.CierreCaja;
-import cr.ac.una.wsrestuna.model.Factura;
+import cr.ac.una.wsrestuna.util.Pagina;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
@@ -24,6 +27,12 @@ public class CierreCajaService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    @EJB
+    private CajaAbiertaCacheService cajaCache;
+
+    @Inject
+    private Event<ReporteCacheService.Cambio> cambiosReportes;
+
     public CierreCaja abrirCaja(Long usuarioId) {
         try {
             Optional<CierreCaja> cajaAbierta = findAbiertoByUsuario(usuarioId);
@@ -38,9 +47,11 @@ public class CierreCajaService {
             cierre.setEstado("ABIERTO");
             cierre.setEfectivoSistema(BigDecimal.ZERO);
             cierre.setTarjetaSistema(BigDecimal.ZERO);
+            cierre.setCantidadFacturas(0L);
 
             em.persist(cierre);
             em.flush();
+            cajaCache.put(usuarioId, cierre.getId());
             
             LOG.log(Level.INFO, "Caja abierta para usuario: {0}", usuarioId);
             return cierre;
@@ -62,9 +73,7 @@ public class CierreCajaService {
                 throw new RuntimeException("La caja ya está cerrada");
             }
 
-            calcularTotalesSistema(cierreId);
-            cierre = em.find(CierreCaja.class, cierreId);
-
+            // Los totales del sistema ya están al día (ver registrarFactura)
             cierre.setEfectivoDeclarado(efectivoDeclarado);
             cierre.setTarjetaDeclarado(tarjetaDeclarado);
             cierre.calcularDiferencias();
@@ -73,6 +82,8 @@ public class CierreCajaService {
 
             em.merge(cierre);
             em.flush();
+            cajaCache.remove(cierre.getUsuario().getId(), cierreId);
+            cambiosReportes.fire(new ReporteCacheService.Cambio(cierre.getFechaApertura(), cierreId));
 
             LOG.log(Level.INFO, "Caja cerrada: {0}", cierreId);
             return cierre;
@@ -82,31 +93,93 @@ public class CierreCajaService {
         }
     }
 
-    public void calcularTotalesSistema(Long cierreId) {
-        try {
-            TypedQuery<Factura> query = em.createNamedQuery("Factura.findByCierre", Factura.class);
-            query.setParameter("cierreId", cierreId);
-            List<Factura> facturas = query.getResultList();
+    /**
+     * Suma a los totales del sistema de una caja abierta una factura nueva
+     * (signo=1) o anulada (signo=-1). Es un UPDATE relativo, dentro de la
+     * transacción de la factura, así que no hay que releer las facturas al
+     * cerrar ni para mostrar los totales en vivo. Sube la versión para que un
+     * cierre concurrente falle en vez de calcular diferencias con totales
+     * viejos. Las cajas cerradas no se tocan.
+     *
+     * Si la caja ya no está abierta (se cerró desde otro nodo después de
+     * resolverla) una factura nueva no puede quedar en ella: se olvida el id
+     * en caché y se lanza una excepción para que la transacción de la factura
+     * se revierta y el reintento use la caja vigente. Una anulación sobre una
+     * caja cerrada solo se registra en el log; /cierres/{id}/verificar la
+     * corrige.
+     */
+    public void registrarFactura(Long cierreId, BigDecimal efectivo, BigDecimal tarjeta, int signo) {
+        if (cierreId == null) {
+            return;
+        }
+        BigDecimal ef = efectivo != null ? efectivo : BigDecimal.ZERO;
+        BigDecimal tj = tarjeta != null ? tarjeta : BigDecimal.ZERO;
+        BigDecimal s = BigDecimal.valueOf(signo);
 
-            BigDecimal totalEfectivo = BigDecimal.ZERO;
-            BigDecimal totalTarjeta = BigDecimal.ZERO;
+        int filas = em.createQuery(
+                "UPDATE CierreCaja c SET c.efectivoSistema = c.efectivoSistema + :ef, "
+                + "c.tarjetaSistema = c.tarjetaSistema + :tj, "
+                + "c.cantidadFacturas = c.cantidadFacturas + :n, "
+                + "c.version = c.version + 1 "
+                + "WHERE c.id = :id AND c.estado = 'ABIERTO'")
+                .setParameter("ef", ef.multiply(s))
+                .setParameter("tj", tj.multiply(s))
+                .setParameter("n", (long) signo)
+                .setParameter("id", cierreId)
+                .executeUpdate();
+        if (filas == 1) {
+            return;
+        }
+        if (signo > 0) {
+            cajaCache.removeCierre(cierreId);
+            throw new IllegalStateException("La caja " + cierreId + " ya no está abierta, intente de nuevo");
+        }
+        LOG.log(Level.WARNING,
+                "Anulación sobre la caja {0}, que ya no está abierta: efectivo {1}, tarjeta {2} quedan sin descontar. "
+                + "Use /cierres/{0}/verificar para corregir los totales.",
+                new Object[]{cierreId, ef, tj});
+    }
 
-            for (Factura factura : facturas) {
-                if (factura.getMontoEfectivo() != null) {
-                    totalEfectivo = totalEfectivo.add(factura.getMontoEfectivo());
-                }
-                if (factura.getMontoTarjeta() != null) {
-                    totalTarjeta = totalTarjeta.add(factura.getMontoTarjeta());
-                }
-            }
+    /**
+     * Verificación: recalcula los totales desde las facturas activas de la
+     * caja y, si no coinciden con los acumulados, los corrige.
+     * Devuelve los totales recalculados.
+     */
+    public TotalesCaja calcularTotalesSistema(Long cierreId) {
+        try {
+            Object[] row = em.createQuery(
+                    "SELECT COALESCE(SUM(f.montoEfectivo),0), COALESCE(SUM(f.montoTarjeta),0), COUNT(f.id) "
+                    + "FROM Factura f WHERE f.cierreCaja.id = :cierreId AND f.estado = 'A'", Object[].class)
+                    .setParameter("cierreId", cierreId)
+                    .getSingleResult();
+            BigDecimal totalEfectivo = (BigDecimal) row[0];
+            BigDecimal totalTarjeta = (BigDecimal) row[1];
+            Long cantidad = (Long) row[2];
 
             CierreCaja cierre = em.find(CierreCaja.class, cierreId);
-            cierre.setEfectivoSistema(totalEfectivo);
-            cierre.setTarjetaSistema(totalTarjeta);
-            em.merge(cierre);
-            em.flush();
+            if (cierre == null) {
+                throw new RuntimeException("Cierre de caja no encontrado");
+            }
+            if (totalEfectivo.compareTo(cierre.getEfectivoSistema()) != 0
+                    || totalTarjeta.compareTo(cierre.getTarjetaSistema()) != 0
+                    || !cantidad.equals(cierre.getCantidadFacturas())) {
+                LOG.log(Level.WARNING,
+                        "Totales de caja {0} desajustados: efectivo {1} vs {2}, tarjeta {3} vs {4}, facturas {5} vs {6}. Corrigiendo.",
+                        new Object[]{cierreId, cierre.getEfectivoSistema(), totalEfectivo,
+                            cierre.getTarjetaSistema(), totalTarjeta, cierre.getCantidadFacturas(), cantidad});
+                cierre.setEfectivoSistema(totalEfectivo);
+                cierre.setTarjetaSistema(totalTarjeta);
+                cierre.setCantidadFacturas(cantidad);
+                if (cierre.isCerrado()) {
+                    cierre.calcularDiferencias();
+                }
+                em.merge(cierre);
+                em.flush();
+                cambiosReportes.fire(new ReporteCacheService.Cambio(cierre.getFechaApertura(), cierreId));
+            }
 
-            LOG.log(Level.INFO, "Totales calculados para cierre: {0}", cierreId);
+            LOG.log(Level.INFO, "Totales verificados para cierre: {0}", cierreId);
+            return new TotalesCaja(totalEfectivo, totalTarjeta, cantidad, cierreId);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al calcular totales", e);
             throw new RuntimeException("Error: " + e.getMessage());
@@ -133,6 +206,16 @@ public class CierreCajaService {
         }
     }
 
+    public Pagina<CierreCaja> findPagina(Long cursor, Integer limite) {
+        try {
+            TypedQuery<CierreCaja> query = em.createNamedQuery("CierreCaja.pagina", CierreCaja.class);
+            return Pagina.de(query, cursor, limite, CierreCaja::getId);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al listar cierres", e);
+            throw new RuntimeException("Error al listar cierres: " + e.getMessage());
+        }
+    }
+
     public List<CierreCaja> findByUsuario(Long usuarioId) {
         try {
             TypedQuery<CierreCaja> query = em.createNamedQuery("CierreCaja.findByUsuario", CierreCaja.class);
@@ -179,9 +262,38 @@ public class CierreCajaService {
         }
     }
 
+    /**
+     * Caja abierta del usuario, usando el id en caché cuando lo hay.
+     */
+    public Optional<CierreCaja> findCajaAbierta(Long usuarioId) {
+        Long cierreId = cajaCache.get(usuarioId);
+        if (cierreId != null) {
+            CierreCaja cierre = em.find(CierreCaja.class, cierreId);
+            if (cierre != null && cierre.isAbierto()) {
+                return Optional.of(cierre);
+            }
+            cajaCache.remove(usuarioId, cierreId);
+        }
+
+        Optional<CierreCaja> cajaAbierta = findAbiertoByUsuario(usuarioId);
+        cajaAbierta.ifPresent(c -> cajaCache.put(usuarioId, c.getId()));
+        return cajaAbierta;
+    }
+
+    /**
+     * Caja donde se registra una factura. Con el id en caché no consulta la
+     * BD: devuelve una referencia y {@link #registrarFactura} detecta, por el
+     * resultado del UPDATE condicional, si la caja se cerró mientras tanto.
+     */
     public CierreCaja getOrCreateCajaAbierta(Long usuarioId) {
         try {
+            Long cierreId = cajaCache.get(usuarioId);
+            if (cierreId != null) {
+                return em.getReference(CierreCaja.class, cierreId);
+            }
+
             Optional<CierreCaja> cajaAbierta = findAbiertoByUsuario(usuarioId);
+            cajaAbierta.ifPresent(c -> cajaCache.put(usuarioId, c.getId()));
             
             if (cajaAbierta.isPresent()) {
                 return cajaAbierta.get();
@@ -194,30 +306,22 @@ public class CierreCajaService {
         }
     }
     
+    /**
+     * Totales en vivo de la caja abierta: se leen de la propia caja, que se
+     * mantiene al día con cada factura.
+     */
     public TotalesCaja totalesCajaAbierta(Long usuarioId) {
-    try {
-        var opt = findAbiertoByUsuario(usuarioId);
-        if (opt.isEmpty()) return new TotalesCaja(BigDecimal.ZERO, BigDecimal.ZERO, 0L, null);
-
-        CierreCaja cc = opt.get();
-
-        Object[] row = (Object[]) em.createQuery(
-            "SELECT COALESCE(SUM(f.montoEfectivo),0), " +
-            "       COALESCE(SUM(f.montoTarjeta),0), " +
-            "       COUNT(f.id) " +
-            "FROM Factura f " +
-            "WHERE f.usuario.id = :uid " +
-            "  AND f.cierreCaja.id = :cid " +        // <-- clave del cambio
-            "  AND f.estado = 'A'")
-            .setParameter("uid", usuarioId)
-            .setParameter("cid", cc.getId())
-            .getSingleResult();
-
-        return new TotalesCaja((BigDecimal) row[0], (BigDecimal) row[1], (Long) row[2], cc.getId());
-    } catch (Exception e) {
-        return new TotalesCaja(BigDecimal.ZERO, BigDecimal.ZERO, 0L, null);
+        try {
+            Optional<CierreCaja> opt = findCajaAbierta(usuarioId);
+            if (opt.isEmpty()) return new TotalesCaja(BigDecimal.ZERO, BigDecimal.ZERO, 0L, null);
+
+            CierreCaja cc = opt.get();
+            return new TotalesCaja(cc.getEfectivoSistema(), cc.getTarjetaSistema(),
+                    cc.getCantidadFacturas(), cc.getId());
+        } catch (Exception e) {
+            return new TotalesCaja(BigDecimal.ZERO, BigDecimal.ZERO, 0L, null);
+        }
     }
-}
 
     public static class TotalesCaja {
         public final BigDecimal efectivo;
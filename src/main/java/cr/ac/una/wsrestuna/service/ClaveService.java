@@ -0,0 +1,269 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ApplicationException;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Hash y verificación de contraseñas BCrypt en un pool propio y acotado.
+ *
+ * Cada BCrypt cuesta cientos de ms de CPU; en el cambio de turno muchos
+ * logins juntos dejaban sin hilos a las órdenes. Aquí corren a lo sumo
+ * {@code restuna.bcrypt.hilos} a la vez (por defecto la mitad de los
+ * núcleos) con {@code restuna.bcrypt.cola} en espera (32). Un semáforo
+ * cuenta el trabajo admitido y solo se libera cuando el BCrypt termina de
+ * verdad (no se puede interrumpir); si no hay lugar se lanza {@link Saturado}
+ * y el REST contesta 429 de inmediato, sin encolar más CPU.
+ *
+ * Después de arrancar se mide BCrypt en este equipo, en el propio pool y
+ * tras calentar el JIT, y se elige el costo más alto que no pase de
+ * {@code restuna.bcrypt.objetivoMs} (250), entre {@link #COSTO_BASE} y
+ * {@link #COSTO_MAX}: la calibración solo puede subir el costo, nunca dejarlo
+ * por debajo del que se usaba (12) en un equipo lento o cargado. Mientras
+ * tanto se usa {@link #COSTO_BASE}. Con {@code restuna.bcrypt.costo} se fija
+ * a mano. Los hashes con un costo menor se rehacen en el siguiente login
+ * correcto; nunca se bajan.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ClaveService {
+
+    private static final Logger LOG = Logger.getLogger(ClaveService.class.getName());
+
+    /** Costo fijo anterior a la calibración; es el mínimo. */
+    static final int COSTO_BASE = 12;
+    static final int COSTO_MAX = 16;
+    /** Costo con el que se mide; barato, y se extrapola al resto. */
+    private static final int COSTO_MEDICION = 10;
+
+    private static final int HILOS = Integer.getInteger("restuna.bcrypt.hilos",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int COLA = Integer.getInteger("restuna.bcrypt.cola", 32);
+    private static final long OBJETIVO_MS = Long.getLong("restuna.bcrypt.objetivoMs", 250L);
+
+    /**
+     * No hay capacidad para otro BCrypt. Es de aplicación para que el
+     * contenedor no la envuelva y el REST la pueda traducir a 429; no marca
+     * rollback porque se lanza antes de escribir nada.
+     */
+    @ApplicationException
+    public static class Saturado extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Saturado(String message) {
+            super(message);
+        }
+    }
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor pool;
+    /** Lugares para trabajo admitido (en ejecución o en cola). */
+    private final Semaphore cupos = new Semaphore(HILOS + COLA);
+    private volatile int costo = COSTO_BASE;
+
+    private final LongAdder verificaciones = new LongAdder();
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder rehashes = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder esperaNs = new LongAdder();
+    private final LongAdder calculoNs = new LongAdder();
+    private final AtomicLong calculoMaxNs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        pool = new ThreadPoolExecutor(HILOS, HILOS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(COLA), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        Integer fijo = Integer.getInteger("restuna.bcrypt.costo");
+        if (fijo != null) {
+            costo = fijo;
+            LOG.log(Level.INFO, "Costo BCrypt fijado por configuración: {0}", fijo);
+        } else {
+            // En segundo plano: medir en frío, mientras cargan los demás beans, da un costo bajo
+            pool.execute(() -> costo = calibrar());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    /** Costo con el que se generan los hashes nuevos. */
+    public int getCosto() {
+        return costo;
+    }
+
+    /** Genera un hash con el costo calibrado. */
+    public String hash(String plain) {
+        if (plain == null || plain.isBlank()) {
+            throw new IllegalArgumentException("La contraseña es obligatoria.");
+        }
+        int c = costo;
+        String h = ejecutar(() -> BCrypt.hashpw(plain, BCrypt.gensalt(c)));
+        hashes.increment();
+        return h;
+    }
+
+    /** Verifica texto plano contra un hash BCrypt. */
+    public boolean verificar(String plain, String hash) {
+        if (plain == null || hash == null || hash.isBlank()) {
+            return false;
+        }
+        Boolean ok = ejecutar(() -> {
+            try {
+                return BCrypt.checkpw(plain, hash);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Hash inválido en BD", e);
+                return false;
+            }
+        });
+        verificaciones.increment();
+        return ok;
+    }
+
+    /** true si el hash se generó con un costo menor que el calibrado. */
+    public boolean requiereRehash(String hash) {
+        int c = costoDe(hash);
+        return c > 0 && c < costo;
+    }
+
+    /** Cuenta un hash rehecho por cambio de costo (para las métricas). */
+    public void registrarRehash() {
+        rehashes.increment();
+    }
+
+    /** Contadores del pool; los tiempos en ms. */
+    public Map<String, Object> metricas() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long hechas = verificaciones.sum() + hashes.sum();
+        m.put("costo", costo);
+        m.put("hilos", HILOS);
+        m.put("activos", pool.getActiveCount());
+        m.put("enCola", pool.getQueue().size());
+        m.put("capacidadCola", COLA);
+        m.put("verificaciones", verificaciones.sum());
+        m.put("hashes", hashes.sum());
+        m.put("rehashes", rehashes.sum());
+        m.put("rechazadas", rechazadas.sum());
+        m.put("admitidas", HILOS + COLA - cupos.availablePermits());
+        m.put("esperaPromedioMs", hechas == 0 ? 0.0 : esperaNs.sum() / 1e6 / hechas);
+        m.put("calculoPromedioMs", hechas == 0 ? 0.0 : calculoNs.sum() / 1e6 / hechas);
+        m.put("calculoMaxMs", calculoMaxNs.get() / 1e6);
+        return m;
+    }
+
+    private <T> T ejecutar(Callable<T> tarea) {
+        if (!cupos.tryAcquire()) {
+            rechazadas.increment();
+            throw new Saturado("Demasiadas autenticaciones en curso, intente de nuevo en un momento");
+        }
+        long encolada = System.nanoTime();
+        Future<T> f;
+        try {
+            f = pool.submit(() -> {
+                long inicio = System.nanoTime();
+                esperaNs.add(inicio - encolada);
+                try {
+                    return tarea.call();
+                } finally {
+                    long ns = System.nanoTime() - inicio;
+                    calculoNs.add(ns);
+                    calculoMaxNs.accumulateAndGet(ns, Math::max);
+                    cupos.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cupos.release();
+            rechazadas.increment();
+            throw new Saturado("Demasiadas autenticaciones en curso, intente de nuevo en un momento");
+        }
+        // Sin plazo ni cancelación: lo admitido está acotado y termina igual
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Verificación de contraseña interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new IllegalStateException("Error en BCrypt", causa);
+        }
+    }
+
+    /**
+     * Mide con {@link #COSTO_MEDICION} y extrapola: cada punto de costo
+     * duplica el trabajo. Primero calienta (hasta 10 corridas o 2 s) y después toma la
+     * más rápida de 5, la menos afectada por la carga del arranque.
+     */
+    private int calibrar() {
+        try {
+            String sal = BCrypt.gensalt(COSTO_MEDICION);
+            long limite = System.nanoTime() + 2_000_000_000L;
+            for (int i = 0; i < 10 && System.nanoTime() < limite; i++) {
+                BCrypt.hashpw("calibracion", sal);
+            }
+            long[] t = new long[5];
+            for (int i = 0; i < t.length; i++) {
+                long inicio = System.nanoTime();
+                BCrypt.hashpw("calibracion", sal);
+                t[i] = System.nanoTime() - inicio;
+            }
+            Arrays.sort(t);
+            double ms = t[0] / 1e6;
+
+            int c = COSTO_MEDICION;
+            while (c < COSTO_MAX && (c < COSTO_BASE || ms * 2 <= OBJETIVO_MS)) {
+                ms *= 2;
+                c++;
+            }
+            LOG.log(Level.INFO, "Costo BCrypt calibrado: {0} (~{1} ms, objetivo {2} ms)",
+                    new Object[]{c, Math.round(ms), OBJETIVO_MS});
+            return c;
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "No se pudo calibrar BCrypt, se usa costo " + COSTO_BASE, e);
+            return COSTO_BASE;
+        }
+    }
+
+    /** Costo de un hash $2a$/$2b$/$2y$, o -1 si no tiene ese formato. */
+    static int costoDe(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.Cliente;
+import cr.ac.una.wsrestuna.util.TextoBusqueda;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Índice en memoria para el autocompletado de clientes en caja.
+ *
+ * Nombre y correo se indexan normalizados con {@link TextoBusqueda}
+ * (n-gramas de 3 y prefijos de 1 y 2 letras por palabra); el teléfono, solo
+ * con sus dígitos, en un trie de sufijos para encontrar cualquier tramo del
+ * número. Las consultas con solo dígitos y separadores (al menos 3 dígitos)
+ * buscan por teléfono; el resto, por nombre y correo.
+ *
+ * Se carga en segundo plano al desplegar; mientras tanto {@link #buscar}
+ * devuelve vacío y el REST usa la consulta SQL. ClienteService dispara un
+ * {@link Cambio} al crear, actualizar o desactivar, y tras el commit se
+ * actualiza solo ese cliente. Los cambios que llegan durante la carga se
+ * aplican al terminar; un cambio con versión menor a la ya indexada se ignora.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ClienteBusquedaService {
+
+    private static final Logger LOG = Logger.getLogger(ClienteBusquedaService.class.getName());
+
+    public static final int LIMITE_DEFECTO = 10;
+    public static final int LIMITE_MAXIMO = 50;
+
+    /** Cliente creado, modificado o desactivado (estado distinto de A). */
+    public static class Cambio {
+        private final Cliente cliente;
+
+        public Cambio(Cliente cliente) {
+            this.cliente = cliente;
+        }
+
+        public Cliente getCliente() { return cliente; }
+    }
+
+    /** Cliente indexado: copia desacoplada del EntityManager más sus textos. */
+    private static final class Entrada {
+        final Cliente cliente;
+        final String texto;
+        final String nombre;
+        final String digitos;
+
+        Entrada(Cliente c) {
+            this.cliente = copia(c);
+            this.nombre = TextoBusqueda.normalizar(c.getNombre());
+            this.texto = nombre + " " + TextoBusqueda.normalizar(c.getCorreo());
+            this.digitos = soloDigitos(c.getTelefono());
+        }
+    }
+
+    /** Nodo del trie de dígitos; {@code ids} son los clientes con ese tramo en el teléfono. */
+    private static final class Nodo {
+        final Nodo[] hijos = new Nodo[10];
+        final Set<Long> ids = new HashSet<>();
+    }
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private ClienteService clienteService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entrada> clientes = new HashMap<>();
+    private final Map<String, Set<Long>> gramas = new HashMap<>();
+    private final Map<String, Set<Long>> prefijos = new HashMap<>();
+    private final Nodo telefonos = new Nodo();
+
+    private final AtomicBoolean cargando = new AtomicBoolean();
+    private volatile boolean listo = false;
+    /** Cambios recibidos mientras se carga; protegido por {@link #lock}. */
+    private final List<Cliente> pendientes = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        cargar();
+    }
+
+    /**
+     * Clientes activos que coinciden con {@code q}: primero los que empiezan
+     * con el texto buscado, luego por nombre. Vacío si el índice no está listo.
+     */
+    public Optional<List<Cliente>> buscar(String q, Integer limite) {
+        if (!listo) {
+            cargar();
+            return Optional.empty();
+        }
+        int max = (limite == null || limite <= 0) ? LIMITE_DEFECTO : Math.min(limite, LIMITE_MAXIMO);
+
+        String digitosConsulta = soloDigitos(q);
+        boolean esTelefono = digitosConsulta.length() >= 3 && q.trim().matches("[0-9+()\\-\\s.]+");
+        List<String> tokens = TextoBusqueda.palabras(TextoBusqueda.normalizar(q));
+        if (!esTelefono && tokens.isEmpty()) {
+            return Optional.of(List.of());
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Entrada> encontrados = new ArrayList<>();
+            if (esTelefono) {
+                Nodo n = telefonos;
+                for (int i = 0; i < digitosConsulta.length() && n != null; i++) {
+                    n = n.hijos[digitosConsulta.charAt(i) - '0'];
+                }
+                if (n != null) {
+                    n.ids.forEach(id -> encontrados.add(clientes.get(id)));
+                }
+            } else {
+                for (Long id : candidatos(tokens)) {
+                    Entrada e = clientes.get(id);
+                    if (calza(e.texto, tokens)) {
+                        encontrados.add(e);
+                    }
+                }
+            }
+
+            String primero = esTelefono ? "" : tokens.get(0);
+            Comparator<Entrada> orden = Comparator
+                    .comparingInt((Entrada e) -> esTelefono ? (e.digitos.startsWith(digitosConsulta) ? 0 : 1)
+                            : e.nombre.startsWith(primero) ? 0 : 1)
+                    .thenComparing(e -> e.nombre)
+                    .thenComparing(e -> e.cliente.getId());
+            return Optional.of(encontrados.stream()
+                    .sorted(orden)
+                    .limit(max)
+                    .map(e -> e.cliente)
+                    .toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void onCambio(@Observes(during = TransactionPhase.AFTER_SUCCESS) Cambio cambio) {
+        Cliente c = cambio.getCliente();
+        if (c == null || c.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!listo) {
+                pendientes.add(copia(c));
+                return;
+            }
+            aplicar(c);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Lanza la carga completa en segundo plano, si no hay una en curso. */
+    private void cargar() {
+        if (!cargando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    List<Cliente> activos = clienteService.findActivos();
+                    lock.writeLock().lock();
+                    try {
+                        limpiar();
+                        activos.forEach(this::aplicar);
+                        pendientes.forEach(this::aplicar);
+                        pendientes.clear();
+                        listo = true;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    LOG.log(Level.INFO, "Índice de clientes cargado: {0} clientes", activos.size());
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "No se pudo cargar el índice de clientes; se reintenta en la próxima búsqueda", e);
+                } finally {
+                    cargando.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            cargando.set(false);
+            LOG.log(Level.WARNING, "No se pudo programar la carga del índice de clientes", e);
+        }
+    }
+
+    /** Inserta, reemplaza o quita un cliente. Requiere el write lock. */
+    private void aplicar(Cliente c) {
+        Entrada anterior = clientes.get(c.getId());
+        if (anterior != null && anterior.cliente.getVersion() != null && c.getVersion() != null
+                && c.getVersion() < anterior.cliente.getVersion()) {
+            return;
+        }
+        if (anterior != null) {
+            quitar(anterior);
+        }
+        if ("A".equals(c.getEstado())) {
+            Entrada e = new Entrada(c);
+            clientes.put(c.getId(), e);
+            indexar(e);
+        }
+    }
+
+    private void indexar(Entrada e) {
+        Long id = e.cliente.getId();
+        for (String palabra : TextoBusqueda.palabras(e.texto)) {
+            for (String k : clavesPrefijo(palabra)) {
+                prefijos.computeIfAbsent(k, x -> new HashSet<>()).add(id);
+            }
+            for (String g : TextoBusqueda.ngramas(palabra)) {
+                gramas.computeIfAbsent(g, x -> new HashSet<>()).add(id);
+            }
+        }
+        for (int i = 0; i < e.digitos.length(); i++) {
+            Nodo n = telefonos;
+            for (int j = i; j < e.digitos.length(); j++) {
+                int d = e.digitos.charAt(j) - '0';
+                if (n.hijos[d] == null) {
+                    n.hijos[d] = new Nodo();
+                }
+                n = n.hijos[d];
+                n.ids.add(id);
+            }
+        }
+    }
+
+    private void quitar(Entrada e) {
+        Long id = e.cliente.getId();
+        clientes.remove(id);
+        for (String palabra : TextoBusqueda.palabras(e.texto)) {
+            for (String k : clavesPrefijo(palabra)) {
+                quitarDe(prefijos, k, id);
+            }
+            for (String g : TextoBusqueda.ngramas(palabra)) {
+                quitarDe(gramas, g, id);
+            }
+        }
+        for (int i = 0; i < e.digitos.length(); i++) {
+            quitarTramo(telefonos, e.digitos, i, id);
+        }
+    }
+
+    /** Quita {@code id} del camino digitos[i..] y poda los nodos que quedan vacíos. */
+    private static void quitarTramo(Nodo raiz, String digitos, int i, Long id) {
+        Nodo[] camino = new Nodo[digitos.length() - i + 1];
+        camino[0] = raiz;
+        int k = 0;
+        for (int j = i; j < digitos.length() && camino[k] != null; j++, k++) {
+            camino[k + 1] = camino[k].hijos[digitos.charAt(j) - '0'];
+            if (camino[k + 1] != null) {
+                camino[k + 1].ids.remove(id);
+            }
+        }
+        for (int j = k; j > 0; j--) {
+            Nodo n = camino[j];
+            if (n != null && n.ids.isEmpty()) {
+                camino[j - 1].hijos[digitos.charAt(i + j - 1) - '0'] = null;
+            }
+        }
+    }
+
+    private void limpiar() {
+        clientes.clear();
+        gramas.clear();
+        prefijos.clear();
+        java.util.Arrays.fill(telefonos.hijos, null);
+    }
+
+    /** Ids que tienen todos los n-gramas / prefijos de la consulta. Requiere el read lock. */
+    private Set<Long> candidatos(List<String> tokens) {
+        List<Set<Long>> conjuntos = new ArrayList<>();
+        for (String t : tokens) {
+            if (t.length() < TextoBusqueda.N) {
+                conjuntos.add(prefijos.getOrDefault(t, Set.of()));
+            } else {
+                for (String g : TextoBusqueda.ngramas(t)) {
+                    conjuntos.add(gramas.getOrDefault(g, Set.of()));
+                }
+            }
+        }
+        conjuntos.sort(Comparator.comparingInt(Set::size));
+        Set<Long> out = new HashSet<>();
+        for (Long id : conjuntos.get(0)) {
+            boolean enTodos = true;
+            for (int i = 1; i < conjuntos.size() && enTodos; i++) {
+                enTodos = conjuntos.get(i).contains(id);
+            }
+            if (enTodos) {
+                out.add(id);
+            }
+        }
+        return out;
+    }
+
+    private static boolean calza(String texto, List<String> tokens) {
+        for (String t : tokens) {
+            if (t.length() >= TextoBusqueda.N && !texto.contains(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> clavesPrefijo(String palabra) {
+        return palabra.length() >= 2 ? List.of(palabra.substring(0, 1), palabra.substring(0, 2))
+                : List.of(palabra);
+    }
+
+    private static void quitarDe(Map<String, Set<Long>> mapa, String clave, Long id) {
+        Set<Long> ids = mapa.get(clave);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            mapa.remove(clave);
+        }
+    }
+
+    private static String soloDigitos(String s) {
+        return s == null ? "" : s.replaceAll("\\D+", "");
+    }
+
+    private static Cliente copia(Cliente c) {
+        Cliente out = new Cliente();
+        out.setId(c.getId());
+        out.setNombre(c.getNombre());
+        out.setCorreo(c.getCorreo());
+        out.setTelefono(c.getTelefono());
+        out.setEstado(c.getEstado());
+        out.setFechaCreacion(c.getFechaCreacion());
+        out.setVersion(c.getVersion());
+        return out;
+    }
+}
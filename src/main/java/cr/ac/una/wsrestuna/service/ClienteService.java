@@ -1,8 +1,11 @@
 package cr.ac.una.wsrestuna.service;
 
 import cr.ac.una.wsrestuna.model.Cliente;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
@@ -21,10 +24,15 @@ public class ClienteService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    /** Mantiene al día el índice de ClienteBusquedaService (se aplica tras el commit). */
+    @Inject
+    private Event<ClienteBusquedaService.Cambio> cambios;
+
     public Cliente create(Cliente cliente) {
         try {
             em.persist(cliente);
             em.flush();
+            cambios.fire(new ClienteBusquedaService.Cambio(cliente));
             LOG.log(Level.INFO, "Cliente creado: {0}", cliente.getNombre());
             return cliente;
         } catch (Exception e) {
@@ -37,6 +45,7 @@ public class ClienteService {
         try {
             Cliente merged = em.merge(cliente);
             em.flush();
+            cambios.fire(new ClienteBusquedaService.Cambio(merged));
             LOG.log(Level.INFO, "Cliente actualizado: {0}", cliente.getNombre());
             return merged;
         } catch (Exception e) {
@@ -52,6 +61,7 @@ public class ClienteService {
                 cliente.setEstado("I");
                 em.merge(cliente);
                 em.flush();
+                cambios.fire(new ClienteBusquedaService.Cambio(cliente));
                 LOG.log(Level.INFO, "Cliente desactivado: {0}", id);
             }
         } catch (Exception e) {
@@ -90,6 +100,16 @@ public class ClienteService {
         }
     }
 
+    public Pagina<Cliente> findActivosPagina(Long cursor, Integer limite) {
+        try {
+            TypedQuery<Cliente> query = em.createNamedQuery("Cliente.paginaActivos", Cliente.class);
+            return Pagina.de(query, cursor, limite, Cliente::getId);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al listar clientes activos", e);
+            throw new RuntimeException("Error: " + e.getMessage());
+        }
+    }
+
     public Optional<Cliente> findByCorreo(String correo) {
         try {
             TypedQuery<Cliente> query = em.createNamedQuery("Cliente.findByCorreo", Cliente.class);
@@ -1,15 +1,19 @@
 package cr.ac.una.wsrestuna.service;
 
 import cr.ac.una.wsrestuna.model.*;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,11 +45,20 @@ public class FacturaService {
     @EJB
     private CierreCajaService cierreCajaService;
 
+    @Inject
+    private Event<VentasContadorService.Ventas> ventas;
+
+    @Inject
+    private Event<ReporteCacheService.Cambio> cambiosReportes;
+
+    @Inject
+    private Event<VentasHoraService.Movimiento> movimientos;
+
     @EJB
-    private ProductoService productoService;
+    private VentasHoraService ventasHora;
 
     @EJB
-    private ParametrosService parametrosService;
+    private ParametrosCacheService parametrosCache;
 
     /**
      * Crea una factura desde una orden existente
@@ -107,6 +120,8 @@ public class FacturaService {
 
         // 8. Persistir factura
         em.persist(factura);
+        cierreCajaService.registrarFactura(cajaAbierta.getId(),
+                factura.getMontoEfectivo(), factura.getMontoTarjeta(), 1);
 
         // 9. Marcar orden como FACTURADA
         ordenService.marcarComoFacturada(ordenId);
@@ -117,12 +132,7 @@ public class FacturaService {
         }
 
         // 11. Actualizar contadores de ventas por producto
-        for (DetalleFactura detalle : factura.getDetalles()) {
-            productoService.incrementarVentas(
-                    detalle.getProducto().getId(),
-                    detalle.getCantidad()
-            );
-        }
+        registrarVentas(factura, 1);
 
         em.flush();
         LOG.log(Level.INFO, "Factura creada: {0}", factura.getId());
@@ -170,14 +180,11 @@ public class FacturaService {
 
             // Persistir
             em.persist(factura);
+            cierreCajaService.registrarFactura(cajaAbierta.getId(),
+                    factura.getMontoEfectivo(), factura.getMontoTarjeta(), 1);
 
             // Incrementar contadores de ventas
-            for (DetalleFactura detalle : factura.getDetalles()) {
-                productoService.incrementarVentas(
-                    detalle.getProducto().getId(), 
-                    detalle.getCantidad()
-                );
-            }
+            registrarVentas(factura, 1);
 
             em.flush();
             LOG.log(Level.INFO, "Factura directa creada: {0}", factura.getId());
@@ -188,11 +195,26 @@ public class FacturaService {
         }
     }
 
+    /**
+     * Avisa a VentasContadorService y VentasHoraService las ventas de la
+     * factura (signo=1) o su anulación (signo=-1). VentasHoraService las
+     * escribe en esta misma transacción; el contador, después del commit.
+     */
+    private void registrarVentas(Factura factura, int signo) {
+        Map<Long, Long> cantidades = new HashMap<>();
+        for (DetalleFactura detalle : factura.getDetalles()) {
+            cantidades.merge(detalle.getProducto().getId(),
+                    (long) signo * detalle.getCantidad(), Long::sum);
+        }
+        ventas.fire(new VentasContadorService.Ventas(cantidades));
+        movimientos.fire(VentasHoraService.Movimiento.de(factura, signo));
+    }
+
     private void calcularTotales(Factura factura, boolean aplicaImpVenta,
             boolean aplicaImpServicio, BigDecimal descuentoPorcentaje) {
         try {
             // Obtener parámetros
-            Parametros params = parametrosService.getParametros()
+            Parametros params = parametrosCache.getParametros()
                     .orElseThrow(() -> new RuntimeException("Parámetros no configurados"));
 
             // 1. Calcular subtotal
@@ -329,14 +351,27 @@ public class FacturaService {
     }
 
     /**
-     * Obtiene facturas por rango de fechas
+     * Página de facturas, de la más reciente a la más antigua
+     */
+    public Pagina<Factura> findPagina(Long cursor, Integer limite) {
+        try {
+            TypedQuery<Factura> query = em.createNamedQuery("Factura.pagina", Factura.class);
+            return Pagina.de(query, cursor, limite, Factura::getId);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al listar facturas", e);
+            throw new RuntimeException("Error al listar facturas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene facturas por rango de fechas (paginado)
      */
-    public List<Factura> findByFecha(LocalDateTime inicio, LocalDateTime fin) {
+    public Pagina<Factura> findByFecha(LocalDateTime inicio, LocalDateTime fin, Long cursor, Integer limite) {
         try {
             TypedQuery<Factura> query = em.createNamedQuery("Factura.findByFecha", Factura.class);
             query.setParameter("fechaInicio", inicio);
             query.setParameter("fechaFin", fin);
-            return query.getResultList();
+            return Pagina.de(query, cursor, limite, Factura::getId);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al buscar facturas por fecha", e);
             throw new RuntimeException("Error al buscar facturas: " + e.getMessage());
@@ -358,13 +393,13 @@ public class FacturaService {
     }
 
     /**
-     * Obtiene facturas de un cliente
+     * Obtiene facturas de un cliente (paginado)
      */
-    public List<Factura> findByCliente(Long clienteId) {
+    public Pagina<Factura> findByCliente(Long clienteId, Long cursor, Integer limite) {
         try {
             TypedQuery<Factura> query = em.createNamedQuery("Factura.findByCliente", Factura.class);
             query.setParameter("clienteId", clienteId);
-            return query.getResultList();
+            return Pagina.de(query, cursor, limite, Factura::getId);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al buscar facturas por cliente", e);
             throw new RuntimeException("Error al buscar facturas: " + e.getMessage());
@@ -372,13 +407,13 @@ public class FacturaService {
     }
 
     /**
-     * Obtiene facturas de un usuario/cajero
+     * Obtiene facturas de un usuario/cajero (paginado)
      */
-    public List<Factura> findByUsuario(Long usuarioId) {
+    public Pagina<Factura> findByUsuario(Long usuarioId, Long cursor, Integer limite) {
         try {
             TypedQuery<Factura> query = em.createNamedQuery("Factura.findByUsuario", Factura.class);
             query.setParameter("usuarioId", usuarioId);
-            return query.getResultList();
+            return Pagina.de(query, cursor, limite, Factura::getId);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al buscar facturas por usuario", e);
             throw new RuntimeException("Error al buscar facturas: " + e.getMessage());
@@ -407,9 +442,19 @@ public class FacturaService {
         try {
             Factura factura = em.find(Factura.class, facturaId);
             if (factura != null) {
+                boolean estabaActiva = factura.isActiva();
                 factura.setEstado("C"); // Cancelada
                 em.merge(factura);
                 em.flush();
+                if (estabaActiva) {
+                    registrarVentas(factura, -1);
+                    if (factura.getCierreCaja() != null) {
+                        cierreCajaService.registrarFactura(factura.getCierreCaja().getId(),
+                                factura.getMontoEfectivo(), factura.getMontoTarjeta(), -1);
+                    }
+                    cambiosReportes.fire(new ReporteCacheService.Cambio(factura.getFechaHora(),
+                            factura.getCierreCaja() != null ? factura.getCierreCaja().getId() : null));
+                }
                 LOG.log(Level.INFO, "Factura anulada: {0}", facturaId);
             }
         } catch (Exception e) {
@@ -423,14 +468,7 @@ public class FacturaService {
      */
     public BigDecimal getTotalVentasPeriodo(LocalDateTime inicio, LocalDateTime fin) {
         try {
-            TypedQuery<BigDecimal> query = em.createQuery(
-                "SELECT COALESCE(SUM(f.total), 0) FROM Factura f " +
-                "WHERE f.fechaHora BETWEEN :inicio AND :fin AND f.estado = 'A'",
-                BigDecimal.class
-            );
-            query.setParameter("inicio", inicio);
-            query.setParameter("fin", fin);
-            return query.getSingleResult();
+            return ventasHora.totalVentas(inicio, fin);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al calcular total de ventas", e);
             return BigDecimal.ZERO;
@@ -442,18 +480,28 @@ public class FacturaService {
      */
     public List<Object[]> getProductosMasVendidos(LocalDateTime inicio, LocalDateTime fin, int limite) {
         try {
-            TypedQuery<Object[]> query = em.createQuery(
-                "SELECT d.producto, SUM(d.cantidad) as total " +
-                "FROM DetalleFactura d JOIN d.factura f " +
-                "WHERE f.fechaHora BETWEEN :inicio AND :fin AND f.estado = 'A' " +
-                "GROUP BY d.producto " +
-   "ORDER BY total DESC",
-                    Object[].class
-            );
-            query.setParameter("inicio", inicio);
-            query.setParameter("fin", fin);
-            query.setMaxResults(limite);
-            return query.getResultList();
+            List<Map.Entry<Long, Long>> top = ventasHora.cantidadesPorProducto(inicio, fin, null)
+                    .entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                    .limit(limite)
+                    .toList();
+            if (top.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Map<Long, Producto> productos = new HashMap<>();
+            em.createQuery("SELECT p FROM Producto p WHERE p.id IN :ids", Producto.class)
+                    .setParameter("ids", top.stream().map(Map.Entry::getKey).toList())
+                    .getResultList()
+                    .forEach(p -> productos.put(p.getId(), p));
+
+            List<Object[]> out = new ArrayList<>(top.size());
+            for (Map.Entry<Long, Long> e : top) {
+                Producto p = productos.get(e.getKey());
+                if (p != null) {
+                    out.add(new Object[]{p, e.getValue()});
+                }
+            }
+            return out;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al obtener productos más vendidos", e);
             throw new RuntimeException("Error: " + e.getMessage());
@@ -559,6 +607,8 @@ public class FacturaService {
 
             // 9. Persistir factura
             em.persist(factura);
+            cierreCajaService.registrarFactura(cajaAbierta.getId(),
+                    factura.getMontoEfectivo(), factura.getMontoTarjeta(), 1);
 
             // 10. Marcar TODAS las órdenes como FACTURADAS
             for (Orden orden : ordenes) {
@@ -571,12 +621,7 @@ public class FacturaService {
             System.out.println("🔓 Mesa #" + mesaId + " liberada");
 
             // 12. Actualizar contadores de ventas
-            for (DetalleFactura detalle : factura.getDetalles()) {
-                productoService.incrementarVentas(
-                        detalle.getProducto().getId(),
-                        detalle.getCantidad()
-                );
-            }
+            registrarVentas(factura, 1);
 
             em.flush();
 
@@ -4,6 +4,8 @@ import cr.ac.una.wsrestuna.model.GrupoProducto;
 import cr.ac.una.wsrestuna.model.Producto;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
@@ -24,10 +26,14 @@ public class GrupoProductoService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    @Inject
+    private Event<CatalogoService.Cambio> cambios;
+
     public GrupoProducto create(GrupoProducto grupo) {
         try {
             em.persist(grupo);
             em.flush();
+            cambios.fire(CatalogoService.Cambio.CATALOGO);
             LOG.log(Level.INFO, "Grupo de productos creado: {0}", grupo.getNombre());
             return grupo;
         } catch (Exception e) {
@@ -40,6 +46,7 @@ public class GrupoProductoService {
         try {
             GrupoProducto merged = em.merge(grupo);
             em.flush();
+            cambios.fire(CatalogoService.Cambio.CATALOGO);
             LOG.log(Level.INFO, "Grupo de productos actualizado: {0}", grupo.getNombre());
             return merged;
         } catch (Exception e) {
@@ -55,6 +62,7 @@ public class GrupoProductoService {
                 grupo.setEstado("I");
                 em.merge(grupo);
                 em.flush();
+                cambios.fire(CatalogoService.Cambio.CATALOGO);
                 LOG.log(Level.INFO, "Grupo desactivado: {0}", id);
             }
         } catch (Exception e) {
@@ -103,18 +111,6 @@ public class GrupoProductoService {
         }
     }
 
-    public void incrementarVentas(Long grupoId) {
-        try {
-            GrupoProducto grupo = em.find(GrupoProducto.class, grupoId);
-            if (grupo != null) {
-                grupo.incrementarVentas();
-                em.merge(grupo);
-                LOG.log(Level.FINE, "Ventas incrementadas para grupo: {0}", grupo.getNombre());
-            }
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Error al incrementar ventas del grupo", e);
-        }
-    }
     
     
     // ===================== NUEVO MÉTODO =====================
@@ -0,0 +1,168 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+
+/**
+ * Almacén local de imágenes direccionado por contenido.
+ *
+ * Cada imagen se guarda una sola vez en {@code restuna.imagenes.dir} con el
+ * SHA-256 de sus bytes como nombre; como el contenido de un hash no cambia,
+ * los archivos nunca se reescriben y se pueden servir con caché de un año.
+ * Las miniaturas se generan a pedido (PNG) y quedan junto al original.
+ *
+ * La BD sigue siendo la fuente: si el archivo falta (otro nodo, directorio
+ * limpiado) quien lo sirve lo vuelve a guardar a partir del LOB.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ImagenAlmacenService {
+
+    private static final Logger LOG = Logger.getLogger(ImagenAlmacenService.class.getName());
+
+    /** Anchos de miniatura permitidos; se usa el menor que alcance el pedido. */
+    static final int[] ANCHOS = {64, 128, 256, 512};
+
+    private Path directorio;
+
+    @PostConstruct
+    public void init() {
+        directorio = Paths.get(System.getProperty("restuna.imagenes.dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "restuna-imagenes").toString()));
+        try {
+            Files.createDirectories(directorio);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "No se pudo preparar el directorio de imágenes " + directorio, e);
+        }
+    }
+
+    /** SHA-256 en hexadecimal (64 caracteres). */
+    public static String hash(byte[] datos) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(datos));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Guarda la imagen si no existe y devuelve su hash.
+     */
+    public String guardar(byte[] datos) {
+        String h = hash(datos);
+        Path destino = original(h);
+        if (Files.exists(destino)) {
+            return h;
+        }
+        try {
+            Path tmp = Files.createTempFile(directorio, h, ".tmp");
+            try {
+                Files.write(tmp, datos);
+                Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            // Sin archivo se sirve desde la BD y se reintenta en la próxima lectura
+            LOG.log(Level.WARNING, "No se pudo guardar la imagen " + h, e);
+        }
+        return h;
+    }
+
+    /** Archivo original, si está en el almacén. */
+    public Optional<Path> archivo(String hash) {
+        if (!valido(hash)) {
+            return Optional.empty();
+        }
+        Path p = original(hash);
+        return Files.exists(p) ? Optional.of(p) : Optional.empty();
+    }
+
+    /**
+     * Miniatura PNG de a lo sumo {@code ancho} px (redondeado a {@link #ANCHOS});
+     * vacío si el original no está o no es una imagen que ImageIO pueda leer.
+     */
+    public Optional<Path> miniatura(String hash, int ancho) {
+        Optional<Path> orig = archivo(hash);
+        if (orig.isEmpty()) {
+            return Optional.empty();
+        }
+        int w = anchoPermitido(ancho);
+        Path destino = directorio.resolve(hash + "-w" + w + ".png");
+        if (Files.exists(destino)) {
+            return Optional.of(destino);
+        }
+        try {
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(orig.get())));
+            if (img == null) {
+                return Optional.empty();
+            }
+            if (img.getWidth() <= w) {
+                w = img.getWidth();
+            }
+            int h = Math.max(1, (int) Math.round(img.getHeight() * (w / (double) img.getWidth())));
+            BufferedImage mini = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = mini.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(img, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            Path tmp = Files.createTempFile(directorio, hash, ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    ImageIO.write(mini, "png", out);
+                }
+                Files.move(tmp, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return Optional.of(destino);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "No se pudo generar la miniatura de " + hash, e);
+            return Optional.empty();
+        }
+    }
+
+    public static int anchoPermitido(int ancho) {
+        for (int w : ANCHOS) {
+            if (ancho <= w) {
+                return w;
+            }
+        }
+        return ANCHOS[ANCHOS.length - 1];
+    }
+
+    private Path original(String hash) {
+        return directorio.resolve(hash);
+    }
+
+    /** El hash llega de la BD, pero se valida antes de usarlo como nombre de archivo. */
+    private static boolean valido(String hash) {
+        return hash != null && hash.matches("[0-9a-f]{64}");
+    }
+}
@@ -0,0 +1,180 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.service.OrdenEventosService.Evento;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Estado en memoria del plano del salón: por cada mesa, si está LIBRE u
+ * OCUPADA y qué órdenes abiertas tiene.
+ *
+ * Se reconstruye al arrancar con un solo query (mesas LEFT JOIN órdenes
+ * abiertas) y luego se mantiene con los eventos de OrdenService que llegan
+ * después del commit. Cada transición reemplaza la entrada con un
+ * compare-and-set sobre el mapa, sin bloqueos. Así GET /salones/{id}/mesas
+ * pinta el plano sin consultar cada mesa ni escribir en BD.
+ *
+ * El estado es local a cada nodo; {@link #reconstruir()} lo vuelve a leer de BD.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MesaEstadoService {
+
+    private static final Logger LOG = Logger.getLogger(MesaEstadoService.class.getName());
+
+    private static final EstadoMesa VACIA = new EstadoMesa(Set.of(), 0L);
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    private final ConcurrentHashMap<Long, EstadoMesa> mesas = new ConcurrentHashMap<>();
+
+    /**
+     * Entrada inmutable por mesa; se reemplaza completa en cada transición.
+     */
+    public static final class EstadoMesa {
+        private final Set<Long> ordenesAbiertas;
+        private final long version;
+
+        EstadoMesa(Set<Long> ordenesAbiertas, long version) {
+            this.ordenesAbiertas = ordenesAbiertas;
+            this.version = version;
+        }
+
+        public String getEstado() { return ordenesAbiertas.isEmpty() ? "LIBRE" : "OCUPADA"; }
+        public Set<Long> getOrdenesAbiertas() { return ordenesAbiertas; }
+        public long getVersion() { return version; }
+    }
+
+    @PostConstruct
+    public void reconstruir() {
+        try {
+            List<Object[]> filas = em.createQuery(
+                    "SELECT m.id, m.estado, o.id FROM Mesa m "
+                    + "LEFT JOIN Orden o ON o.mesa.id = m.id AND o.estado = 'ABIERTA'",
+                    Object[].class)
+                    .getResultList();
+
+            Map<Long, Set<Long>> ordenes = new HashMap<>();
+            Map<Long, String> estadosBd = new HashMap<>();
+            for (Object[] r : filas) {
+                Long mesaId = (Long) r[0];
+                estadosBd.put(mesaId, (String) r[1]);
+                Set<Long> set = ordenes.computeIfAbsent(mesaId, k -> new HashSet<>());
+                if (r[2] != null) {
+                    set.add((Long) r[2]);
+                }
+            }
+
+            mesas.clear();
+            int corregidas = 0;
+            for (Map.Entry<Long, Set<Long>> e : ordenes.entrySet()) {
+                EstadoMesa estado = new EstadoMesa(Set.copyOf(e.getValue()), 1L);
+                mesas.put(e.getKey(), estado);
+
+                // Mesas desincronizadas en BD se corrigen aquí, una sola vez
+                String bd = estadosBd.get(e.getKey());
+                if (!estado.getEstado().equals(bd)) {
+                    corregidas += em.createQuery(
+                            "UPDATE Mesa m SET m.estado = :nuevo, m.version = m.version + 1 "
+                            + "WHERE m.id = :id AND m.estado = :actual")
+                            .setParameter("nuevo", estado.getEstado())
+                            .setParameter("id", e.getKey())
+                            .setParameter("actual", bd)
+                            .executeUpdate();
+                }
+            }
+
+            LOG.log(Level.INFO, "Estado de mesas cargado: {0} mesas, {1} corregidas en BD",
+                    new Object[]{mesas.size(), corregidas});
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al cargar estado de mesas", e);
+        }
+    }
+
+    public EstadoMesa getEstado(Long mesaId) {
+        return mesaId == null ? VACIA : mesas.getOrDefault(mesaId, VACIA);
+    }
+
+    /**
+     * Aplica los cambios de órdenes confirmados en BD.
+     */
+    public void onEvento(@Observes(during = TransactionPhase.AFTER_SUCCESS) Evento evento) {
+        if (evento.getOrdenId() == null) {
+            return;
+        }
+        switch (evento.getTipo()) {
+            case ORDEN_CREADA:
+            case ORDEN_ACTUALIZADA:
+                // La orden pudo cambiar de mesa o de estado: se quita de donde
+                // estaba y se vuelve a ubicar si sigue abierta.
+                boolean abierta = "ABIERTA".equals(evento.getEstado()) && evento.getMesaId() != null;
+                quitarOrden(evento.getOrdenId(), abierta ? evento.getMesaId() : null);
+                if (abierta) {
+                    transicion(evento.getMesaId(), evento.getOrdenId(), true);
+                }
+                break;
+            case ORDEN_CANCELADA:
+            case ORDEN_FACTURADA:
+                quitarOrden(evento.getOrdenId(), null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void quitarOrden(Long ordenId, Long excepto) {
+        for (Map.Entry<Long, EstadoMesa> e : mesas.entrySet()) {
+            if (!e.getKey().equals(excepto) && e.getValue().ordenesAbiertas.contains(ordenId)) {
+                transicion(e.getKey(), ordenId, false);
+            }
+        }
+    }
+
+    /**
+     * Agrega o quita una orden de la mesa con compare-and-set.
+     */
+    private void transicion(Long mesaId, Long ordenId, boolean agregar) {
+        while (true) {
+            EstadoMesa actual = mesas.get(mesaId);
+            Set<Long> base = actual != null ? actual.ordenesAbiertas : Set.of();
+            if (base.contains(ordenId) == agregar) {
+                return;
+            }
+
+            Set<Long> nuevas = new HashSet<>(base);
+            if (agregar) {
+                nuevas.add(ordenId);
+            } else {
+                nuevas.remove(ordenId);
+            }
+            EstadoMesa nuevo = new EstadoMesa(Set.copyOf(nuevas),
+                    actual != null ? actual.version + 1 : 1L);
+
+            boolean ok = (actual == null)
+                    ? mesas.putIfAbsent(mesaId, nuevo) == null
+                    : mesas.replace(mesaId, actual, nuevo);
+            if (ok) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.util.Histograma;
+import cr.ac.una.wsrestuna.util.PerfilSql;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Path;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latencias y peticiones en curso por endpoint, para GET /api/metrics.
+ *
+ * Cada método de recurso tiene su {@link Endpoint} (método HTTP + plantilla
+ * de ruta, p. ej. {@code GET /ordenes/{id}}) con un {@link Histograma} por
+ * clase de estado (2xx, 4xx, ...), creado la primera vez que se usa. El
+ * filtro busca el endpoint por el {@link Method} en un ConcurrentHashMap y
+ * registra sin locks; la memoria queda fija una vez visto cada endpoint.
+ *
+ * También acumula las sentencias SQL de cada endpoint ({@link PerfilSql}) y
+ * avisa en el log cuando una petición pasa de {@code restuna.sql.presupuesto}
+ * sentencias (50) o repite la misma forma de SQL más de
+ * {@code restuna.sql.repeticiones} veces (10), el patrón típico de N+1.
+ *
+ * Es un bean CDI y no un EJB para que el filtro no pase por el proxy del
+ * contenedor en cada petición.
+ */
+@ApplicationScoped
+public class MetricasHttpService {
+
+    private static final Logger LOG = Logger.getLogger(MetricasHttpService.class.getName());
+
+    private static final int PRESUPUESTO_SQL = Integer.getInteger("restuna.sql.presupuesto", 50);
+    private static final int REPETICIONES_SQL = Integer.getInteger("restuna.sql.repeticiones", 10);
+
+    /** Endpoint de un método de recurso. */
+    public static final class Endpoint {
+        private final String metodo;
+        private final String ruta;
+        private final LongAdder enCurso = new LongAdder();
+        /** Índice = status / 100 (1..5); 0 para lo que esté fuera de rango. */
+        private final AtomicReferenceArray<Histograma> porClase = new AtomicReferenceArray<>(6);
+        private final LongAdder sentencias = new LongAdder();
+        private final LongAdder filas = new LongAdder();
+        private final LongAdder dbMicros = new LongAdder();
+        private final LongAdder excesos = new LongAdder();
+        private final LongAdder repeticiones = new LongAdder();
+
+        Endpoint(String metodo, String ruta) {
+            this.metodo = metodo;
+            this.ruta = ruta;
+        }
+
+        public String getMetodo() { return metodo; }
+        public String getRuta() { return ruta; }
+        public long getEnCurso() { return enCurso.sum(); }
+        public long getSentencias() { return sentencias.sum(); }
+        public long getFilas() { return filas.sum(); }
+        public long getDbMicros() { return dbMicros.sum(); }
+        /** Peticiones que pasaron el presupuesto de sentencias. */
+        public long getExcesos() { return excesos.sum(); }
+        /** Peticiones con una misma forma de SQL repetida más de lo permitido. */
+        public long getRepeticiones() { return repeticiones.sum(); }
+
+        /** Histograma de una clase de estado, o null si todavía no hubo respuestas de esa clase. */
+        public Histograma getHistograma(int clase) {
+            return porClase.get(clase);
+        }
+
+        public void iniciar() {
+            enCurso.increment();
+        }
+
+        public void terminar(int status, long micros) {
+            enCurso.decrement();
+            int clase = status >= 100 && status < 600 ? status / 100 : 0;
+            Histograma h = porClase.get(clase);
+            if (h == null) {
+                porClase.compareAndSet(clase, null, new Histograma());
+                h = porClase.get(clase);
+            }
+            h.registrar(micros);
+        }
+    }
+
+    private final ConcurrentHashMap<Method, Endpoint> porMetodo = new ConcurrentHashMap<>();
+
+    /** Endpoint del método de recurso; se arma una sola vez por método. */
+    public Endpoint endpoint(Class<?> recurso, Method metodo) {
+        Endpoint e = porMetodo.get(metodo);
+        return e != null ? e : porMetodo.computeIfAbsent(metodo, m -> crear(recurso, m));
+    }
+
+    /**
+     * Suma el perfil SQL de una petición al endpoint y avisa si se pasó del
+     * presupuesto o repitió una sentencia.
+     */
+    public void registrarSql(Endpoint e, PerfilSql p) {
+        if (p.getSentencias() == 0) {
+            return;
+        }
+        e.sentencias.add(p.getSentencias());
+        e.filas.add(p.getFilas());
+        e.dbMicros.add(p.getDbMicros());
+
+        if (p.getSentencias() > PRESUPUESTO_SQL) {
+            e.excesos.increment();
+            LOG.log(Level.WARNING, "{0} {1}: {2} sentencias SQL (presupuesto {3}), {4} ms en BD",
+                    new Object[]{e.metodo, e.ruta, p.getSentencias(), PRESUPUESTO_SQL, p.getDbMicros() / 1000});
+        }
+        Map.Entry<String, Integer> rep = p.masRepetida();
+        if (rep != null && rep.getValue() > REPETICIONES_SQL) {
+            e.repeticiones.increment();
+            String sql = rep.getKey().length() > 200 ? rep.getKey().substring(0, 200) + "..." : rep.getKey();
+            LOG.log(Level.WARNING, "{0} {1}: posible N+1, la misma sentencia se ejecutó {2} veces: {3}",
+                    new Object[]{e.metodo, e.ruta, rep.getValue(), sql});
+        }
+    }
+
+    /** Endpoints vistos, ordenados por ruta y método. */
+    public List<Endpoint> endpoints() {
+        List<Endpoint> out = new ArrayList<>(porMetodo.values());
+        out.sort(Comparator.comparing(Endpoint::getRuta).thenComparing(Endpoint::getMetodo));
+        return out;
+    }
+
+    private static Endpoint crear(Class<?> recurso, Method metodo) {
+        StringBuilder ruta = new StringBuilder();
+        Path pc = recurso.getAnnotation(Path.class);
+        if (pc != null) {
+            ruta.append('/').append(pc.value());
+        }
+        Path pm = metodo.getAnnotation(Path.class);
+        if (pm != null) {
+            ruta.append('/').append(pm.value());
+        }
+        // Sin barras repetidas ni expresiones de los parámetros: {id: \d+} -> {id}
+        String plantilla = ruta.toString()
+                .replaceAll("\\{\\s*(\\w+)\\s*:[^}]*}", "{$1}")
+                .replaceAll("/+", "/");
+        if (plantilla.length() > 1 && plantilla.endsWith("/")) {
+            plantilla = plantilla.substring(0, plantilla.length() - 1);
+        }
+        if (plantilla.isEmpty()) {
+            plantilla = "/";
+        }
+        return new Endpoint(verbo(metodo), plantilla);
+    }
+
+    private static String verbo(Method metodo) {
+        for (Annotation a : metodo.getAnnotations()) {
+            HttpMethod h = a.annotationType().getAnnotation(HttpMethod.class);
+            if (h != null) {
+                return h.value();
+            }
+        }
+        return "ANY";
+    }
+}
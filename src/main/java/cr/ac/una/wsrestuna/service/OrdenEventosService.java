@@ -0,0 +1,212 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Difunde por Server-Sent Events los cambios de órdenes a las pantallas de
+ * cocina y caja (GET /api/ordenes/stream), en lugar de que hagan polling a
+ * /ordenes/activas.
+ *
+ * OrdenService dispara un {@link Evento} por cada cambio; aquí se observa con
+ * AFTER_SUCCESS, así que solo se publica lo que realmente se confirmó en BD.
+ * Los últimos eventos quedan en un buffer circular para que un cliente que se
+ * reconecta con Last-Event-ID reciba lo que se perdió. El mismo buffer sirve
+ * de secuencia de cambios para la sincronización incremental de órdenes
+ * activas (ver {@link #ordenesCambiadasDesde(String)}).
+ */
+@ApplicationScoped
+public class OrdenEventosService {
+
+    private static final Logger LOG = Logger.getLogger(OrdenEventosService.class.getName());
+
+    /** Cantidad de eventos que se conservan para reenvío. */
+    private static final int CAPACIDAD = 512;
+
+    private final Evento[] buffer = new Evento[CAPACIDAD];
+    private long ultimoId = 0L;
+
+    /** Distingue tokens de sincronización emitidos antes de un reinicio. */
+    private final long epoca = System.currentTimeMillis();
+
+    private Sse sse;
+    private SseBroadcaster broadcaster;
+
+    public enum Tipo {
+        ORDEN_CREADA,
+        ORDEN_ACTUALIZADA,
+        DETALLE_AGREGADO,
+        CANTIDAD_CAMBIADA,
+        DETALLE_ELIMINADO,
+        ORDEN_CANCELADA,
+        ORDEN_FACTURADA,
+        /** El Last-Event-ID ya salió del buffer: el cliente debe recargar /ordenes/activas. */
+        RESINCRONIZAR
+    }
+
+    /**
+     * Evento de cambio de una orden. El id lo asigna este servicio al publicarlo.
+     */
+    public static class Evento {
+        private long id;
+        private Tipo tipo;
+        private Long ordenId;
+        private Long mesaId;
+        private String estado;
+        private Long detalleId;
+        private Long productoId;
+        private Integer cantidad;
+        private LocalDateTime fechaHora;
+
+        public Evento() {
+        }
+
+        public Evento(Tipo tipo, Long ordenId, Long mesaId, String estado) {
+            this.tipo = tipo;
+            this.ordenId = ordenId;
+            this.mesaId = mesaId;
+            this.estado = estado;
+            this.fechaHora = LocalDateTime.now();
+        }
+
+        public Evento(Tipo tipo, Long ordenId, Long detalleId, Long productoId, Integer cantidad) {
+            this(tipo, ordenId, null, null);
+            this.detalleId = detalleId;
+            this.productoId = productoId;
+            this.cantidad = cantidad;
+        }
+
+        public long getId() { return id; }
+        public Tipo getTipo() { return tipo; }
+        public Long getOrdenId() { return ordenId; }
+        public Long getMesaId() { return mesaId; }
+        public String getEstado() { return estado; }
+        public Long getDetalleId() { return detalleId; }
+        public Long getProductoId() { return productoId; }
+        public Integer getCantidad() { return cantidad; }
+        public LocalDateTime getFechaHora() { return fechaHora; }
+    }
+
+    /**
+     * Recibe los eventos de OrdenService una vez que la transacción hizo commit.
+     */
+    public void onEvento(@Observes(during = TransactionPhase.AFTER_SUCCESS) Evento evento) {
+        publicar(evento);
+    }
+
+    /**
+     * Registra un cliente SSE. Si trae Last-Event-ID se le reenvían primero los
+     * eventos posteriores que sigan en el buffer. Los ids SSE llevan la época
+     * ("epoca-id", igual que {@link #tokenActual()}): si el id es de otro
+     * arranque, va adelante de este o ya salió del buffer, se envía
+     * RESINCRONIZAR para que el cliente recargue /ordenes/activas.
+     */
+    public synchronized void suscribir(SseEventSink sink, Sse sse, String lastEventId) {
+        if (this.sse == null) {
+            this.sse = sse;
+            this.broadcaster = sse.newBroadcaster();
+            this.broadcaster.onError((s, e) ->
+                    LOG.log(Level.FINE, "Cliente SSE desconectado: {0}", e.getMessage()));
+        }
+
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            long desde = desde(lastEventId.trim());
+            if (desde < 0) {
+                Evento resync = new Evento(Tipo.RESINCRONIZAR, null, null, null);
+                resync.id = ultimoId;
+                sink.send(toSse(resync));
+            } else {
+                for (long id = desde + 1; id <= ultimoId; id++) {
+                    sink.send(toSse(buffer[(int) (id % CAPACIDAD)]));
+                }
+            }
+        }
+
+        broadcaster.register(sink);
+    }
+
+    /**
+     * Token de sincronización para GET /ordenes/activas?since=...
+     * Formato: "epoca-ultimoEventoId".
+     */
+    public synchronized String tokenActual() {
+        return epoca + "-" + ultimoId;
+    }
+
+    /**
+     * Ids de las órdenes que cambiaron después del token indicado.
+     * Devuelve null si el token no es de este arranque o ya salió del buffer;
+     * en ese caso el cliente debe recibir la lista completa.
+     */
+    public synchronized Set<Long> ordenesCambiadasDesde(String token) {
+        if (token == null) {
+            return null;
+        }
+        long desde = desde(token);
+        if (desde < 0) {
+            return null;
+        }
+
+        Set<Long> ids = new HashSet<>();
+        for (long id = desde + 1; id <= ultimoId; id++) {
+            Long ordenId = buffer[(int) (id % CAPACIDAD)].ordenId;
+            if (ordenId != null) {
+                ids.add(ordenId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Último id ya visto según un token "epoca-id", o -1 si el token no es de
+     * este arranque, no tiene ese formato, va adelante de {@link #ultimoId} o
+     * los eventos siguientes ya salieron del buffer.
+     */
+    private long desde(String token) {
+        long desde;
+        try {
+            int guion = token.indexOf('-');
+            if (guion < 0 || Long.parseLong(token.substring(0, guion)) != epoca) {
+                return -1;
+            }
+            desde = Long.parseLong(token.substring(guion + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (desde < 0 || desde > ultimoId || desde + 1 < Math.max(1L, ultimoId - CAPACIDAD + 1)) {
+            return -1;
+        }
+        return desde;
+    }
+
+    private synchronized void publicar(Evento evento) {
+        evento.id = ++ultimoId;
+        buffer[(int) (evento.id % CAPACIDAD)] = evento;
+
+        if (broadcaster != null) {
+            broadcaster.broadcast(toSse(evento));
+        }
+        LOG.log(Level.FINE, "Evento {0} publicado: {1} orden {2}",
+                new Object[]{evento.id, evento.tipo, evento.ordenId});
+    }
+
+    private OutboundSseEvent toSse(Evento evento) {
+        return sse.newEventBuilder()
+                .id(epoca + "-" + evento.id)
+                .name(evento.tipo.name())
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(Evento.class, evento)
+                .build();
+    }
+}
@@ -5,16 +5,29 @@ import cr.ac.una.wsrestuna.model.Mesa;
 import cr.ac.una.wsrestuna.model.Orden;
 import cr.ac.una.wsrestuna.model.Producto;
 import cr.ac.una.wsrestuna.model.Usuario;
+import cr.ac.una.wsrestuna.service.OrdenEventosService.Evento;
+import cr.ac.una.wsrestuna.service.OrdenEventosService.Tipo;
+import cr.ac.una.wsrestuna.util.Pagina;
 import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +52,10 @@ public class OrdenService {
     @EJB
     private ProductoService productoService;
 
+    // Se publican por SSE solo después del commit (ver OrdenEventosService)
+    @Inject
+    private Event<Evento> eventos;
+
     /**
      * Crea una nueva orden Si tiene mesa asociada, la marca como ocupada
      */
@@ -92,20 +109,23 @@ public class OrdenService {
                 // Procesar detalles normalmente
                 LOG.log(Level.INFO, "Procesando {0} detalles", orden.getDetalles().size());
 
+                // Todos los productos referenciados en un solo query
+                Set<Long> productoIds = new HashSet<>();
                 for (DetalleOrden detalle : orden.getDetalles()) {
-                    detalle.setOrden(orden);
-
                     if (detalle.getProducto() == null) {
-                        Long productoId = detalle.getProductoId();
-                        if (productoId == null) {
+                        if (detalle.getProductoId() == null) {
                             throw new IllegalArgumentException("Detalle sin producto");
                         }
+                        productoIds.add(detalle.getProductoId());
+                    }
+                }
+                Map<Long, Producto> productos = cargarProductos(productoIds);
 
-                        Producto producto = em.find(Producto.class, productoId);
-                        if (producto == null) {
-                            throw new IllegalArgumentException("Producto no encontrado: " + productoId);
-                        }
-                        detalle.setProducto(producto);
+                for (DetalleOrden detalle : orden.getDetalles()) {
+                    detalle.setOrden(orden);
+
+                    if (detalle.getProducto() == null) {
+                        detalle.setProducto(productos.get(detalle.getProductoId()));
                     }
 
                     if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
@@ -133,6 +153,7 @@ public class OrdenService {
                 }
             }
 
+            eventos.fire(eventoOrden(Tipo.ORDEN_CREADA, orden));
             LOG.log(Level.INFO, "✅ Orden creada: ID {0}", orden.getId());
             return orden;
 
@@ -181,59 +202,15 @@ public class OrdenService {
             }
 
             // ⭐ CRÍTICO: Manejar los detalles correctamente
+            // Se aplica solo la diferencia contra las líneas actuales (INSERT/UPDATE/DELETE
+            // de lo que cambió) en lugar de borrar y re-insertar todo.
             if (orden.getDetalles() != null && !orden.getDetalles().isEmpty()) {
                 LOG.log(Level.INFO, "Actualizando {0} detalles", orden.getDetalles().size());
-
-                // Eliminar detalles antiguos
-                if (ordenExistente.getDetalles() != null) {
-                    List<DetalleOrden> detallesAEliminar = new ArrayList<>(ordenExistente.getDetalles());
-                    for (DetalleOrden detalleViejo : detallesAEliminar) {
-                        ordenExistente.getDetalles().remove(detalleViejo);
-                        em.remove(detalleViejo);
-                    }
-                    em.flush(); // Forzar eliminación antes de insertar nuevos
-                }
-
-                // Agregar nuevos detalles
-                int detalleNum = 0;
-                for (DetalleOrden detalleNuevo : orden.getDetalles()) {
-                    detalleNum++;
-                    LOG.log(Level.INFO, "Procesando detalle #{0}", detalleNum);
-
-                    // Cargar producto si solo viene el ID
-                    if (detalleNuevo.getProducto() == null) {
-                        Long productoId = detalleNuevo.getProductoId();
-                        if (productoId == null) {
-                            throw new IllegalArgumentException("Detalle sin producto");
-                        }
-
-                        Producto producto = em.find(Producto.class, productoId);
-                        if (producto == null) {
-                            throw new IllegalArgumentException("Producto no encontrado: " + productoId);
-                        }
-
-                        detalleNuevo.setProducto(producto);
-                    }
-
-                    // Asegurar precio y subtotal
-                    if (detalleNuevo.getPrecioUnitario() == null) {
-                        detalleNuevo.setPrecioUnitario(detalleNuevo.getProducto().getPrecio());
-                    }
-                    detalleNuevo.calcularSubtotal();
-
-                    // Establecer relación bidireccional
-                    detalleNuevo.setOrden(ordenExistente);
-                    detalleNuevo.setId(null); // Asegurar que es un nuevo detalle
-
-                    // Persistir el nuevo detalle
-                    em.persist(detalleNuevo);
-
-                    LOG.log(Level.INFO, "✅ Detalle añadido: {0} x{1}",
-                            new Object[]{detalleNuevo.getProducto().getNombre(), detalleNuevo.getCantidad()});
-                }
+                aplicarDetalles(ordenExistente, orden.getDetalles());
             }
 
             em.flush();
+            eventos.fire(eventoOrden(Tipo.ORDEN_ACTUALIZADA, ordenExistente));
             LOG.log(Level.INFO, "✅ Orden actualizada exitosamente: {0}", orden.getId());
             LOG.log(Level.INFO, "====== FIN ACTUALIZACIÓN ORDEN ======");
 
@@ -248,6 +225,150 @@ public class OrdenService {
         }
     }
 
+    /**
+     * Lleva las líneas de la orden al estado indicado por la lista entrante.
+     *
+     * Cada detalle entrante se empareja primero por id y luego por producto con
+     * una línea existente: si la cantidad o el precio cambiaron se actualiza, si
+     * no hay pareja se inserta, y las líneas existentes que quedan sin pareja se
+     * eliminan. Las filas sin cambios no generan ningún statement.
+     */
+    private void aplicarDetalles(Orden ordenExistente, List<DetalleOrden> entrantes) {
+        if (ordenExistente.getDetalles() == null) {
+            ordenExistente.setDetalles(new ArrayList<>());
+        }
+        List<DetalleOrden> actuales = ordenExistente.getDetalles();
+
+        Map<Long, DetalleOrden> porId = new HashMap<>();
+        Map<Long, DetalleOrden> porProducto = new HashMap<>();
+        for (DetalleOrden d : actuales) {
+            porId.put(d.getId(), d);
+            porProducto.putIfAbsent(d.getProducto().getId(), d);
+        }
+
+        // Productos de las líneas que habrá que insertar, en un solo query
+        Set<Long> productoIds = new HashSet<>();
+        for (DetalleOrden entrante : entrantes) {
+            if (entrante.getProducto() == null && entrante.getProductoId() != null
+                    && !porProducto.containsKey(entrante.getProductoId())) {
+                productoIds.add(entrante.getProductoId());
+            }
+        }
+        Map<Long, Producto> productos = cargarProductos(productoIds);
+
+        int insertados = 0, actualizados = 0, eliminados = 0;
+        // Por identidad: los detalles nuevos aún no tienen id y equals() los vería iguales
+        Set<DetalleOrden> conservados = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (DetalleOrden entrante : entrantes) {
+            Long productoId = entrante.getProducto() != null
+                    ? entrante.getProducto().getId()
+                    : entrante.getProductoId();
+            if (productoId == null) {
+                throw new IllegalArgumentException("Detalle sin producto");
+            }
+            if (entrante.getCantidad() == null || entrante.getCantidad() <= 0) {
+                throw new IllegalArgumentException("Cantidad inválida");
+            }
+
+            DetalleOrden existente = entrante.getId() != null ? porId.get(entrante.getId()) : null;
+            if (existente == null || !productoId.equals(existente.getProducto().getId())) {
+                existente = porProducto.get(productoId);
+            }
+
+            if (existente != null && !conservados.contains(existente)) {
+                // UPDATE solo si algo cambió
+                BigDecimal precio = entrante.getPrecioUnitario() != null
+                        ? entrante.getPrecioUnitario()
+                        : existente.getPrecioUnitario();
+                if (!existente.getCantidad().equals(entrante.getCantidad())
+                        || existente.getPrecioUnitario().compareTo(precio) != 0) {
+                    existente.setCantidad(entrante.getCantidad());
+                    existente.setPrecioUnitario(precio);
+                    existente.calcularSubtotal();
+                    actualizados++;
+                }
+                conservados.add(existente);
+                continue;
+            }
+
+            // INSERT de la línea nueva
+            if (entrante.getProducto() == null) {
+                Producto producto = productos.get(productoId);
+                if (producto == null) {
+                    // Producto repetido en la lista: ya estaba en una línea existente
+                    producto = porProducto.get(productoId).getProducto();
+                }
+                entrante.setProducto(producto);
+            }
+            if (entrante.getPrecioUnitario() == null) {
+                entrante.setPrecioUnitario(entrante.getProducto().getPrecio());
+            }
+            entrante.calcularSubtotal();
+            entrante.setId(null);
+            entrante.setVersion(null);
+            entrante.setOrden(ordenExistente);
+            em.persist(entrante);
+            actuales.add(entrante);
+            conservados.add(entrante);
+            insertados++;
+        }
+
+        // DELETE de las líneas que ya no vienen
+        for (DetalleOrden d : new ArrayList<>(actuales)) {
+            if (!conservados.contains(d)) {
+                actuales.remove(d);
+                em.remove(d);
+                eliminados++;
+            }
+        }
+
+        LOG.log(Level.INFO, "Detalles de orden {0}: {1} insertados, {2} actualizados, {3} eliminados",
+                new Object[]{ordenExistente.getId(), insertados, actualizados, eliminados});
+    }
+
+    /**
+     * Carga de una vez todos los productos indicados (WHERE p.id IN :ids).
+     * Si alguno no existe o está inactivo se reportan todos juntos en un
+     * único error de validación.
+     */
+    private Map<Long, Producto> cargarProductos(Collection<Long> ids) {
+        Map<Long, Producto> productos = new HashMap<>(Math.max(16, ids.size() * 2));
+        if (ids.isEmpty()) {
+            return productos;
+        }
+
+        for (Producto p : em.createQuery(
+                "SELECT p FROM Producto p WHERE p.id IN :ids", Producto.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            productos.put(p.getId(), p);
+        }
+
+        List<Long> noEncontrados = new ArrayList<>();
+        List<Long> inactivos = new ArrayList<>();
+        for (Long id : ids) {
+            Producto p = productos.get(id);
+            if (p == null) {
+                noEncontrados.add(id);
+            } else if (!p.isActivo()) {
+                inactivos.add(id);
+            }
+        }
+        if (!noEncontrados.isEmpty() || !inactivos.isEmpty()) {
+            StringBuilder msg = new StringBuilder();
+            if (!noEncontrados.isEmpty()) {
+                msg.append("Productos no encontrados: ").append(noEncontrados);
+            }
+            if (!inactivos.isEmpty()) {
+                if (msg.length() > 0) msg.append("; ");
+                msg.append("Productos inactivos: ").append(inactivos);
+            }
+            throw new IllegalArgumentException(msg.toString());
+        }
+        return productos;
+    }
+
     /**
      * Busca una orden por ID
      */
@@ -274,6 +395,19 @@ public class OrdenService {
         }
     }
 
+    /**
+     * Página de órdenes, de la más reciente a la más antigua
+     */
+    public Pagina<Orden> findPagina(Long cursor, Integer limite) {
+        try {
+            TypedQuery<Orden> query = em.createNamedQuery("Orden.pagina", Orden.class);
+            return Pagina.de(query, cursor, limite, Orden::getId);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al listar órdenes", e);
+            throw new RuntimeException("Error al listar órdenes: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtiene solo órdenes abiertas
      */
@@ -287,6 +421,23 @@ public class OrdenService {
         }
     }
 
+    /**
+     * Carga en un solo query las órdenes indicadas (para la sincronización incremental)
+     */
+    public List<Orden> findByIds(Collection<Long> ids) {
+        try {
+            if (ids == null || ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+            return em.createQuery("SELECT o FROM Orden o WHERE o.id IN :ids", Orden.class)
+                    .setParameter("ids", ids)
+                    .getResultList();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al buscar órdenes por id", e);
+            throw new RuntimeException("Error al buscar órdenes: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtiene la orden abierta de una mesa específica
      */
@@ -340,14 +491,15 @@ public class OrdenService {
             Orden orden = em.find(Orden.class, ordenId);
             if (orden != null) {
                 orden.setEstado("CANCELADA");
-                
-                // Liberar mesa si existe
+                em.merge(orden);
+                em.flush();
+
+                // Liberar mesa si existe (después del flush, para que la orden ya no cuente como abierta)
                 if (orden.getMesa() != null) {
                     salonService.liberarMesa(orden.getMesa().getId());
                 }
-                
-                em.merge(orden);
-                em.flush();
+
+                eventos.fire(eventoOrden(Tipo.ORDEN_CANCELADA, orden));
                 LOG.log(Level.INFO, "Orden cancelada: {0}", ordenId);
             }
         } catch (Exception e) {
@@ -398,6 +550,7 @@ public DetalleOrden agregarDetalle(Long ordenId, Long productoId, Integer cantid
 
             em.merge(detalle);
             em.flush();
+            eventos.fire(new Evento(Tipo.CANTIDAD_CAMBIADA, ordenId, detalle.getId(), productoId, detalle.getCantidad()));
 
             LOG.log(Level.INFO,
                     "Cantidad actualizada en detalle existente (orden {0}, prod {1}) -> cant {2}",
@@ -414,6 +567,7 @@ public DetalleOrden agregarDetalle(Long ordenId, Long productoId, Integer cantid
 
             em.persist(detalle);
             em.flush();
+            eventos.fire(new Evento(Tipo.DETALLE_AGREGADO, ordenId, detalle.getId(), productoId, cantidad));
 
             LOG.log(Level.INFO,
                     "Detalle agregado a orden {0}: {1} x{2}",
@@ -428,6 +582,87 @@ public DetalleOrden agregarDetalle(Long ordenId, Long productoId, Integer cantid
     }
 }
 
+    /**
+     * Agrega varios productos a la orden en una sola transacción.
+     *
+     * Misma lógica que agregarDetalle (suma sobre la línea existente del
+     * producto o crea una nueva), pero carga todos los productos con un solo
+     * IN, consulta las líneas existentes una vez y hace un único flush.
+     *
+     * @param cantidades productoId -> cantidad a sumar (en orden de llegada)
+     */
+    public List<DetalleOrden> agregarDetalles(Long ordenId, Map<Long, Integer> cantidades) {
+        try {
+            if (cantidades == null || cantidades.isEmpty()) {
+                throw new IllegalArgumentException("No se indicaron productos");
+            }
+
+            Orden orden = em.find(Orden.class, ordenId);
+            if (orden == null) {
+                throw new IllegalArgumentException("Orden no encontrada: " + ordenId);
+            }
+
+            for (Map.Entry<Long, Integer> e : cantidades.entrySet()) {
+                if (e.getValue() == null || e.getValue() <= 0) {
+                    throw new IllegalArgumentException("Cantidad inválida para producto " + e.getKey());
+                }
+            }
+
+            // 1. Todos los productos en un solo query
+            Map<Long, Producto> productos = cargarProductos(cantidades.keySet());
+
+            // 2. Líneas ya existentes de esos productos en la orden
+            Map<Long, DetalleOrden> existentes = new HashMap<>();
+            for (DetalleOrden d : em.createQuery(
+                    "SELECT d FROM DetalleOrden d "
+                    + "WHERE d.orden.id = :ordenId AND d.producto.id IN :ids", DetalleOrden.class)
+                    .setParameter("ordenId", ordenId)
+                    .setParameter("ids", cantidades.keySet())
+                    .getResultList()) {
+                existentes.putIfAbsent(d.getProducto().getId(), d);
+            }
+
+            // 3. Sumar o crear
+            List<DetalleOrden> resultado = new ArrayList<>(cantidades.size());
+            List<Tipo> tipos = new ArrayList<>(cantidades.size());
+            for (Map.Entry<Long, Integer> e : cantidades.entrySet()) {
+                Producto producto = productos.get(e.getKey());
+                DetalleOrden detalle = existentes.get(e.getKey());
+
+                if (detalle != null) {
+                    detalle.setCantidad(detalle.getCantidad() + e.getValue());
+                    tipos.add(Tipo.CANTIDAD_CAMBIADA);
+                } else {
+                    detalle = new DetalleOrden();
+                    detalle.setOrden(orden);
+                    detalle.setProducto(producto);
+                    detalle.setCantidad(e.getValue());
+                    em.persist(detalle);
+                    tipos.add(Tipo.DETALLE_AGREGADO);
+                }
+                detalle.setPrecioUnitario(producto.getPrecio());
+                detalle.calcularSubtotal();
+                resultado.add(detalle);
+            }
+
+            em.flush();
+            for (int i = 0; i < resultado.size(); i++) {
+                DetalleOrden d = resultado.get(i);
+                eventos.fire(new Evento(tipos.get(i), ordenId, d.getId(), d.getProducto().getId(), d.getCantidad()));
+            }
+
+            LOG.log(Level.INFO, "Detalles agregados en lote a orden {0}: {1} productos",
+                    new Object[]{ordenId, resultado.size()});
+            return resultado;
+
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Error al agregar detalles: " + e.getMessage(), e);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al agregar detalles en lote", e);
+            throw new RuntimeException("Error al agregar detalles: " + e.getMessage());
+        }
+    }
+
 
 /**
  * Actualiza la cantidad exacta de un detalle existente dentro de una orden.
@@ -463,6 +698,8 @@ public DetalleOrden actualizarCantidadDetalle(Long ordenId, Long detalleId, Inte
         // 5. Guardar cambios
         DetalleOrden merged = em.merge(detalle);
         em.flush();
+        eventos.fire(new Evento(Tipo.CANTIDAD_CAMBIADA, ordenId, detalleId,
+                merged.getProducto() != null ? merged.getProducto().getId() : null, nuevaCantidad));
 
         LOG.log(Level.INFO,
                 "Detalle actualizado (orden {0}, detalle {1}) nueva cantidad {2}",
@@ -484,6 +721,9 @@ public DetalleOrden actualizarCantidadDetalle(Long ordenId, Long detalleId, Inte
             detalle.calcularSubtotal();
             DetalleOrden merged = em.merge(detalle);
             em.flush();
+            eventos.fire(new Evento(Tipo.CANTIDAD_CAMBIADA,
+                    merged.getOrden() != null ? merged.getOrden().getId() : null, merged.getId(),
+                    merged.getProducto() != null ? merged.getProducto().getId() : null, merged.getCantidad()));
             LOG.log(Level.INFO, "Detalle actualizado: {0}", detalle.getId());
             return merged;
         } catch (Exception e) {
@@ -499,8 +739,11 @@ public DetalleOrden actualizarCantidadDetalle(Long ordenId, Long detalleId, Inte
         try {
             DetalleOrden detalle = em.find(DetalleOrden.class, detalleId);
             if (detalle != null) {
+                Long ordenId = detalle.getOrden() != null ? detalle.getOrden().getId() : null;
+                Long productoId = detalle.getProducto() != null ? detalle.getProducto().getId() : null;
                 em.remove(detalle);
                 em.flush();
+                eventos.fire(new Evento(Tipo.DETALLE_ELIMINADO, ordenId, detalleId, productoId, 0));
                 LOG.log(Level.INFO, "Detalle eliminado: {0}", detalleId);
             }
         } catch (Exception e) {
@@ -533,6 +776,7 @@ public DetalleOrden actualizarCantidadDetalle(Long ordenId, Long detalleId, Inte
                 orden.setEstado("FACTURADA");
                 em.merge(orden);
                 em.flush();
+                eventos.fire(eventoOrden(Tipo.ORDEN_FACTURADA, orden));
 
                 // ⭐ LIBERAR MESA
                 if (orden.getMesa() != null && orden.getMesa().getId() != null) {
@@ -553,6 +797,11 @@ public DetalleOrden actualizarCantidadDetalle(Long ordenId, Long detalleId, Inte
         }
     }
     
+    private static Evento eventoOrden(Tipo tipo, Orden orden) {
+        Long mesaId = orden.getMesa() != null ? orden.getMesa().getId() : null;
+        return new Evento(tipo, orden.getId(), mesaId, orden.getEstado());
+    }
+
     /**
      * Verifica si una mesa tiene una orden activa (ABIERTA)
      *
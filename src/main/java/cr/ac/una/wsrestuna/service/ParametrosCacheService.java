@@ -0,0 +1,121 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.Parametros;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caché de los parámetros del sistema para el cálculo de facturas.
+ *
+ * Guarda una copia desacoplada de Parametros que nunca se modifica; cada
+ * lectura devuelve otra copia. ParametrosService avisa al confirmar
+ * create/update y la copia se reemplaza de una vez. Para ver cambios hechos
+ * desde otro nodo, como mucho cada {@code restuna.parametros.refrescoSeg}
+ * segundos (30 por defecto) un solo hilo compara la columna version con la
+ * de la copia; solo si cambió vuelve a leer el registro.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ParametrosCacheService {
+
+    private static final Logger LOG = Logger.getLogger(ParametrosCacheService.class.getName());
+
+    private static final long REFRESCO_MS =
+            Long.getLong("restuna.parametros.refrescoSeg", 30L) * 1000L;
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @EJB
+    private ParametrosService parametrosService;
+
+    private volatile Parametros actual;
+    private final AtomicLong proximoChequeo = new AtomicLong();
+
+    /**
+     * Parámetros vigentes. Devuelve una copia: modificarla no afecta el caché.
+     */
+    public Optional<Parametros> getParametros() {
+        Parametros p = actual;
+        if (p == null) {
+            p = cargar();
+        } else {
+            long ahora = System.currentTimeMillis();
+            long siguiente = proximoChequeo.get();
+            if (ahora >= siguiente && proximoChequeo.compareAndSet(siguiente, ahora + REFRESCO_MS)) {
+                p = verificarVersion(p);
+            }
+        }
+        return Optional.ofNullable(p).map(ParametrosCacheService::copiar);
+    }
+
+    /**
+     * Recibe los parámetros recién creados o actualizados, después del commit.
+     */
+    public void onCambio(@Observes(during = TransactionPhase.AFTER_SUCCESS) Parametros parametros) {
+        reemplazar(copiar(parametros));
+        LOG.log(Level.FINE, "Caché de parámetros reemplazado (version {0})", parametros.getVersion());
+    }
+
+    private Parametros cargar() {
+        Optional<Parametros> leidos = parametrosService.getParametros();
+        if (leidos.isEmpty()) {
+            return null;
+        }
+        Parametros p = copiar(leidos.get());
+        reemplazar(p);
+        return p;
+    }
+
+    private Parametros verificarVersion(Parametros p) {
+        try {
+            List<Long> versiones = em.createQuery(
+                    "SELECT p.version FROM Parametros p WHERE p.id = :id", Long.class)
+                    .setParameter("id", p.getId())
+                    .getResultList();
+            if (versiones.isEmpty() || !versiones.get(0).equals(p.getVersion())) {
+                LOG.log(Level.INFO, "Parámetros modificados en BD, recargando");
+                Parametros nuevos = cargar();
+                return nuevos != null ? nuevos : p;
+            }
+        } catch (Exception e) {
+            // Se sigue con la copia en memoria; se reintenta en el próximo intervalo
+            LOG.log(Level.WARNING, "No se pudo verificar la versión de parámetros", e);
+        }
+        return p;
+    }
+
+    private void reemplazar(Parametros p) {
+        actual = p;
+        proximoChequeo.set(System.currentTimeMillis() + REFRESCO_MS);
+    }
+
+    private static Parametros copiar(Parametros origen) {
+        Parametros p = new Parametros(origen.getId());
+        p.setIdioma(origen.getIdioma());
+        p.setPorcImpuestoVenta(origen.getPorcImpuestoVenta());
+        p.setPorcImpuestoServicio(origen.getPorcImpuestoServicio());
+        p.setPorcDescuentoMaximo(origen.getPorcDescuentoMaximo());
+        p.setNombreRestaurante(origen.getNombreRestaurante());
+        p.setTelefono1(origen.getTelefono1());
+        p.setTelefono2(origen.getTelefono2());
+        p.setDireccion(origen.getDireccion());
+        p.setCorreoSistema(origen.getCorreoSistema());
+        p.setClaveCorreoSistema(origen.getClaveCorreoSistema());
+        p.setVersion(origen.getVersion());
+        return p;
+    }
+}
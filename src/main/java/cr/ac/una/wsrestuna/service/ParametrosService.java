@@ -3,6 +3,8 @@ package cr.ac.una.wsrestuna.service;
 import cr.ac.una.wsrestuna.model.Parametros;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
@@ -25,6 +27,10 @@ public class ParametrosService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    /** Avisa a ParametrosCacheService cuando se crean o actualizan los parámetros. */
+    @Inject
+    private Event<Parametros> cambios;
+
     /**
      * Obtiene los parámetros globales del sistema.
      * Si no existen, los crea con valores por defecto y los devuelve.
@@ -45,6 +51,7 @@ public class ParametrosService {
             Parametros creados = crearParametrosPorDefecto();
             em.persist(creados);
             em.flush();
+            cambios.fire(creados);
 
             LOG.log(Level.INFO, "Parámetros iniciales creados automáticamente con id={0}", creados.getId());
             return Optional.of(creados);
@@ -100,6 +107,7 @@ public class ParametrosService {
 
             em.persist(parametros);
             em.flush();
+            cambios.fire(parametros);
             LOG.log(Level.INFO, "Parámetros creados exitosamente");
             return parametros;
         } catch (Exception e) {
@@ -115,6 +123,7 @@ public class ParametrosService {
         try {
             Parametros merged = em.merge(parametros);
             em.flush();
+            cambios.fire(merged);
             LOG.log(Level.INFO, "Parámetros actualizados exitosamente");
             return merged;
         } catch (Exception e) {
@@ -140,6 +149,7 @@ public class ParametrosService {
 
             em.persist(p);
             em.flush();
+            cambios.fire(p);
 
             LOG.log(Level.INFO, "Parámetros inicializados manualmente como {0}", nombreRestaurante);
             return p;
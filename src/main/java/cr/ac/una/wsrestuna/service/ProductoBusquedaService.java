@@ -0,0 +1,343 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.Producto;
+import cr.ac.una.wsrestuna.util.TextoBusqueda;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Índice en memoria para la búsqueda de productos del POS (typeahead).
+ *
+ * Indexa nombre y nombreCorto de los productos activos, normalizados con
+ * {@link TextoBusqueda}: cada palabra de la consulta debe aparecer dentro de
+ * alguna palabra del producto (n-gramas de 3) o, si tiene 1 o 2 letras, ser
+ * el inicio de una. Los resultados salen ordenados por totalVentas.
+ *
+ * Las búsquedas no van a la base de datos. El índice se arma con una
+ * proyección de columnas (sin entidades administradas) y solo se rearma ante
+ * un cambio de catálogo, en el executor y sin frenar las búsquedas, que
+ * siguen con el anterior. Las ventas no lo rearman: cada escritura de
+ * VentasContadorService ({@link VentasContadorService.Escritas}) se suma al
+ * contador del producto, igual que en RankingVentasService, y la carga se
+ * hace dentro de {@link VentasContadorService#sinEscrituras} para que
+ * ninguna escritura se pierda ni se cuente dos veces. Cada búsqueda devuelve
+ * copias nuevas con las ventas del momento.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ProductoBusquedaService {
+
+    private static final Logger LOG = Logger.getLogger(ProductoBusquedaService.class.getName());
+
+    public static final int LIMITE_DEFECTO = 20;
+    public static final int LIMITE_MAXIMO = 100;
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private VentasContadorService ventasContador;
+
+    /** Índice del catálogo; se reemplaza completo. Solo las ventas cambian en sitio. */
+    private static final class Indice {
+        /** Productos activos (proyección), ordenados por nombre normalizado. */
+        final Producto[] productos;
+        /** Texto normalizado de cada producto (misma posición). */
+        final String[] textos;
+        /** Ventas de cada producto; las suma {@link #onEscritas}. */
+        final AtomicLongArray ventas;
+        /** id de producto -> posición. */
+        final Map<Long, Integer> posiciones;
+        /** n-grama -> posiciones ordenadas. */
+        final Map<String, int[]> gramas;
+        /** Primeras 1 y 2 letras de cada palabra -> posiciones ordenadas. */
+        final Map<String, int[]> prefijos;
+        final long generacion;
+
+        Indice(Producto[] productos, String[] textos, AtomicLongArray ventas, Map<Long, Integer> posiciones,
+               Map<String, int[]> gramas, Map<String, int[]> prefijos, long generacion) {
+            this.productos = productos;
+            this.textos = textos;
+            this.ventas = ventas;
+            this.posiciones = posiciones;
+            this.gramas = gramas;
+            this.prefijos = prefijos;
+            this.generacion = generacion;
+        }
+    }
+
+    private volatile Indice indice;
+    private final ReentrantLock primeraCarga = new ReentrantLock();
+    private final AtomicBoolean rearmando = new AtomicBoolean();
+    private final AtomicLong generacion = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        try {
+            cargar();
+        } catch (RuntimeException e) {
+            // Sin base de datos al desplegar: se arma en la primera búsqueda
+            LOG.log(Level.WARNING, "No se pudo precargar el índice de productos", e);
+        }
+    }
+
+    /**
+     * Productos activos que coinciden con {@code q}, de más a menos vendido.
+     * Lista vacía si la consulta no tiene letras ni dígitos.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<Producto> buscar(String q, Integer limite) {
+        int max = (limite == null || limite <= 0) ? LIMITE_DEFECTO : Math.min(limite, LIMITE_MAXIMO);
+        List<String> tokens = TextoBusqueda.palabras(TextoBusqueda.normalizar(q));
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        Indice idx = vigente();
+        int[] candidatos = null;
+        for (String t : tokens) {
+            int[] posiciones = posiciones(idx, t);
+            candidatos = (candidatos == null) ? posiciones : TextoBusqueda.interseccion(candidatos, posiciones);
+            if (candidatos.length == 0) {
+                return List.of();
+            }
+        }
+
+        List<Integer> calzan = new ArrayList<>();
+        for (int pos : candidatos) {
+            if (calza(idx.textos[pos], tokens)) {
+                calzan.add(pos);
+            }
+        }
+        // Más vendido primero; a igual venta, por nombre (orden de las posiciones)
+        calzan.sort((a, b) -> {
+            int c = Long.compare(idx.ventas.get(b), idx.ventas.get(a));
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+
+        List<Producto> out = new ArrayList<>(Math.min(max, calzan.size()));
+        for (int i = 0; i < calzan.size() && out.size() < max; i++) {
+            int pos = calzan.get(i);
+            out.add(copia(idx.productos[pos], idx.ventas.get(pos)));
+        }
+        return out;
+    }
+
+    public void onCambio(@Observes(during = TransactionPhase.AFTER_SUCCESS) CatalogoService.Cambio cambio) {
+        if (cambio == CatalogoService.Cambio.CATALOGO) {
+            generacion.incrementAndGet();
+            rearmar();
+        }
+    }
+
+    /**
+     * Llega dentro del commit de VentasContadorService.flush(), con su lock tomado.
+     */
+    public void onEscritas(@Observes(during = TransactionPhase.AFTER_SUCCESS) VentasContadorService.Escritas escritas) {
+        Indice idx = indice;
+        if (idx == null) {
+            return;
+        }
+        escritas.getProductos().forEach((productoId, delta) -> {
+            Integer pos = idx.posiciones.get(productoId);
+            if (pos != null) {
+                idx.ventas.addAndGet(pos, delta);
+            }
+        });
+    }
+
+    /**
+     * El índice actual. Si quedó viejo por un cambio de catálogo se pide el
+     * rearmado y se sigue usando este; solo sin índice (la precarga falló)
+     * se arma en el hilo de la búsqueda.
+     */
+    private Indice vigente() {
+        Indice actual = indice;
+        if (actual != null) {
+            if (actual.generacion != generacion.get()) {
+                rearmar();
+            }
+            return actual;
+        }
+        primeraCarga.lock();
+        try {
+            if (indice == null) {
+                cargar();
+            }
+            return indice;
+        } finally {
+            primeraCarga.unlock();
+        }
+    }
+
+    /** Rearma el índice en el executor, si no hay un rearmado en curso. */
+    private void rearmar() {
+        if (!rearmando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    cargar();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "No se pudo rearmar el índice de productos; se reintenta en la próxima búsqueda", e);
+                } finally {
+                    rearmando.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rearmando.set(false);
+            LOG.log(Level.WARNING, "No se pudo programar el rearmado del índice de productos", e);
+        }
+    }
+
+    /** Lee el catálogo y publica el índice sin que entre una escritura de ventas en medio. */
+    private void cargar() {
+        long gen = generacion.get();
+        ventasContador.sinEscrituras(() -> {
+            indice = construir(gen);
+            return null;
+        });
+    }
+
+    private Indice construir(long gen) {
+        // Proyección y no entidades: los resultados se comparten entre hilos y no
+        // deben quedar ligados a un EntityManager (p. ej. el grupo LAZY)
+        List<Object[]> filas = em.createQuery(
+                "SELECT p.id, p.grupo.id, p.nombre, p.nombreCorto, p.precio, p.menuRapido, "
+                        + "p.totalVentas, p.estado, p.version FROM Producto p WHERE p.estado = 'A'",
+                Object[].class).getResultList();
+
+        // El nombre normalizado se calcula una vez por producto y fija el orden de las posiciones
+        List<Object[]> ordenados = new ArrayList<>(filas.size());
+        for (Object[] f : filas) {
+            ordenados.add(new Object[]{TextoBusqueda.normalizar((String) f[2]), producto(f)});
+        }
+        ordenados.sort((a, b) -> ((String) a[0]).compareTo((String) b[0]));
+
+        Producto[] productos = new Producto[ordenados.size()];
+        String[] textos = new String[productos.length];
+        AtomicLongArray ventas = new AtomicLongArray(productos.length);
+        Map<Long, Integer> posiciones = new HashMap<>(productos.length * 2);
+        Map<String, List<Integer>> gramas = new HashMap<>();
+        Map<String, List<Integer>> prefijos = new HashMap<>();
+        for (int i = 0; i < productos.length; i++) {
+            Producto p = (Producto) ordenados.get(i)[1];
+            productos[i] = p;
+            ventas.set(i, p.getTotalVentas() == null ? 0L : p.getTotalVentas());
+            posiciones.put(p.getId(), i);
+            textos[i] = ordenados.get(i)[0] + " " + TextoBusqueda.normalizar(p.getNombreCorto() == null ? "" : p.getNombreCorto());
+            for (String palabra : TextoBusqueda.palabras(textos[i])) {
+                agregar(prefijos, palabra.substring(0, 1), i);
+                if (palabra.length() >= 2) {
+                    agregar(prefijos, palabra.substring(0, 2), i);
+                }
+                for (String g : TextoBusqueda.ngramas(palabra)) {
+                    agregar(gramas, g, i);
+                }
+            }
+        }
+
+        LOG.log(Level.FINE, "Índice de productos armado: {0} productos, {1} n-gramas",
+                new Object[]{productos.length, gramas.size()});
+        return new Indice(productos, textos, ventas, posiciones, compactar(gramas), compactar(prefijos), gen);
+    }
+
+    private static Producto producto(Object[] f) {
+        Producto p = new Producto();
+        p.setId((Long) f[0]);
+        p.setGrupoId((Long) f[1]);
+        p.setNombre((String) f[2]);
+        p.setNombreCorto((String) f[3]);
+        p.setPrecio((BigDecimal) f[4]);
+        p.setMenuRapido((String) f[5]);
+        p.setTotalVentas((Long) f[6]);
+        p.setEstado((String) f[7]);
+        p.setVersion((Long) f[8]);
+        return p;
+    }
+
+    /** Copia para la respuesta, con las ventas del momento; el índice no se expone. */
+    private static Producto copia(Producto p, long ventas) {
+        Producto out = new Producto();
+        out.setId(p.getId());
+        out.setGrupoId(p.getGrupoId());
+        out.setNombre(p.getNombre());
+        out.setNombreCorto(p.getNombreCorto());
+        out.setPrecio(p.getPrecio());
+        out.setMenuRapido(p.getMenuRapido());
+        out.setTotalVentas(ventas);
+        out.setEstado(p.getEstado());
+        out.setVersion(p.getVersion());
+        return out;
+    }
+
+    /** Posiciones candidatas para una palabra de la consulta (puede incluir falsos positivos). */
+    private static int[] posiciones(Indice idx, String token) {
+        if (token.length() < TextoBusqueda.N) {
+            return idx.prefijos.getOrDefault(token, new int[0]);
+        }
+        int[] out = null;
+        for (String g : TextoBusqueda.ngramas(token)) {
+            int[] p = idx.gramas.get(g);
+            if (p == null) {
+                return new int[0];
+            }
+            out = (out == null) ? p : TextoBusqueda.interseccion(out, p);
+        }
+        return out;
+    }
+
+    /** Descarta los candidatos que tienen los n-gramas pero no la palabra completa. */
+    private static boolean calza(String texto, List<String> tokens) {
+        for (String t : tokens) {
+            if (t.length() >= TextoBusqueda.N && !texto.contains(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void agregar(Map<String, List<Integer>> mapa, String clave, int pos) {
+        List<Integer> lista = mapa.computeIfAbsent(clave, k -> new ArrayList<>());
+        // Una palabra repetida no debe duplicar la posición
+        if (lista.isEmpty() || lista.get(lista.size() - 1) != pos) {
+            lista.add(pos);
+        }
+    }
+
+    private static Map<String, int[]> compactar(Map<String, List<Integer>> mapa) {
+        Map<String, int[]> out = new HashMap<>(mapa.size() * 2);
+        mapa.forEach((k, v) -> out.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+        return out;
+    }
+}
@@ -3,6 +3,8 @@ package cr.ac.una.wsrestuna.service;
 import cr.ac.una.wsrestuna.model.Producto;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
@@ -20,10 +22,14 @@ public class ProductoService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    @Inject
+    private Event<CatalogoService.Cambio> cambios;
+
     public Producto create(Producto producto) {
         try {
             em.persist(producto);
             em.flush();
+            cambios.fire(CatalogoService.Cambio.CATALOGO);
             LOG.log(Level.INFO, "Producto creado: {0}", producto.getNombre());
             return producto;
         } catch (Exception e) {
@@ -36,6 +42,7 @@ public class ProductoService {
         try {
             Producto merged = em.merge(producto);
             em.flush();
+            cambios.fire(CatalogoService.Cambio.CATALOGO);
             LOG.log(Level.INFO, "Producto actualizado: {0}", producto.getNombre());
             return merged;
         } catch (Exception e) {
@@ -51,6 +58,7 @@ public class ProductoService {
                 producto.setEstado("I");
                 em.merge(producto);
                 em.flush();
+                cambios.fire(CatalogoService.Cambio.CATALOGO);
                 LOG.log(Level.INFO, "Producto desactivado: {0}", id);
             }
         } catch (Exception e) {
@@ -145,17 +153,4 @@ public class ProductoService {
             throw new RuntimeException("Error al buscar productos: " + e.getMessage());
         }
     }
-
-    public void incrementarVentas(Long productoId, Integer cantidad) {
-        try {
-            Producto producto = em.find(Producto.class, productoId);
-            if (producto != null) {
-                producto.incrementarVentas();
-                em.merge(producto);
-                LOG.log(Level.FINE, "Ventas incrementadas: {0}", producto.getNombre());
-            }
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Error al incrementar ventas", e);
-        }
-    }
 }
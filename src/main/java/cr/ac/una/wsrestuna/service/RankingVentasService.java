@@ -0,0 +1,200 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ranking de grupos y productos por ventas (GET /grupos/ventas) mantenido en memoria.
+ *
+ * Se carga una vez con {@link GrupoProductoService#obtenerGruposConProductosOrdenadosPorVentas()}
+ * y después cada escritura de VentasContadorService ({@link VentasContadorService.Escritas})
+ * mueve solo los productos que cambiaron: se suman las ventas y el producto se
+ * corre hacia arriba o abajo en el arreglo de su grupo hasta quedar en orden,
+ * igual que el grupo en la lista de grupos. El costo depende de cuántas
+ * posiciones sube o baja, no del tamaño del catálogo.
+ *
+ * La carga se hace dentro de {@link VentasContadorService#sinEscrituras}, así
+ * que ninguna escritura queda contada dos veces ni se pierde. Un cambio de
+ * catálogo obliga a recargar en la siguiente lectura.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RankingVentasService {
+
+    private static final Logger LOG = Logger.getLogger(RankingVentasService.class.getName());
+
+    @EJB
+    private GrupoProductoService grupoService;
+
+    @EJB
+    private VentasContadorService ventasContador;
+
+    private static final class Item {
+        final Long id;
+        final String nombre;
+        final BigDecimal precio;
+        final Grupo grupo;
+        long ventas;
+        int pos;
+
+        Item(Long id, String nombre, BigDecimal precio, long ventas, Grupo grupo) {
+            this.id = id;
+            this.nombre = nombre;
+            this.precio = precio;
+            this.ventas = ventas;
+            this.grupo = grupo;
+        }
+    }
+
+    private static final class Grupo {
+        final Long id;
+        final String nombre;
+        final List<Item> items = new ArrayList<>();
+        long total;
+        int pos;
+
+        Grupo(Long id, String nombre) {
+            this.id = id;
+            this.nombre = nombre;
+        }
+    }
+
+    /** Protegidos por el monitor de esta instancia. */
+    private List<Grupo> grupos = new ArrayList<>();
+    private Map<Long, Item> items = new HashMap<>();
+
+    private volatile boolean cargado = false;
+    private final AtomicLong version = new AtomicLong();
+
+    /** Aumenta con cada recarga o movimiento; sirve para saber si el JSON quedó viejo. */
+    public long getVersion() {
+        if (!cargado) {
+            cargar();
+        }
+        return version.get();
+    }
+
+    /**
+     * Copia del ranking con la misma forma que devolvía GrupoProductoService.
+     */
+    public List<GrupoProductoService.GrupoVM> grupos() {
+        if (!cargado) {
+            cargar();
+        }
+        synchronized (this) {
+            List<GrupoProductoService.GrupoVM> out = new ArrayList<>(grupos.size());
+            for (Grupo g : grupos) {
+                GrupoProductoService.GrupoVM vm = new GrupoProductoService.GrupoVM(g.id, g.nombre);
+                vm.totalVentasGrupo = g.total;
+                for (Item i : g.items) {
+                    vm.productos.add(new GrupoProductoService.ProductoVM(i.id, i.nombre, i.precio, i.ventas));
+                }
+                out.add(vm);
+            }
+            return out;
+        }
+    }
+
+    public void onCatalogo(@Observes(during = TransactionPhase.AFTER_SUCCESS) CatalogoService.Cambio cambio) {
+        if (cambio == CatalogoService.Cambio.CATALOGO) {
+            cargado = false;
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Llega dentro del commit de VentasContadorService.flush(), con su lock tomado.
+     */
+    public void onEscritas(@Observes(during = TransactionPhase.AFTER_SUCCESS) VentasContadorService.Escritas escritas) {
+        synchronized (this) {
+            if (!cargado) {
+                return;
+            }
+            boolean cambio = false;
+            for (Map.Entry<Long, Long> e : escritas.getProductos().entrySet()) {
+                Item item = items.get(e.getKey());
+                if (item == null) {
+                    continue; // inactivo o sin grupo activo: no aparece en el ranking
+                }
+                item.ventas += e.getValue();
+                item.grupo.total += e.getValue();
+                reubicar(item.grupo.items, item.pos, i -> i.ventas, (i, p) -> i.pos = p);
+                reubicar(grupos, item.grupo.pos, g -> g.total, (g, p) -> g.pos = p);
+                cambio = true;
+            }
+            if (cambio) {
+                version.incrementAndGet();
+            }
+        }
+    }
+
+    private void cargar() {
+        // Mismo orden de locks que flush(): primero el de VentasContadorService, luego este
+        ventasContador.sinEscrituras(() -> {
+            List<GrupoProductoService.GrupoVM> leidos = grupoService.obtenerGruposConProductosOrdenadosPorVentas();
+            synchronized (this) {
+                List<Grupo> nuevos = new ArrayList<>(leidos.size());
+                Map<Long, Item> porId = new HashMap<>();
+                for (GrupoProductoService.GrupoVM vm : leidos) {
+                    Grupo g = new Grupo(vm.id, vm.nombre);
+                    g.total = vm.totalVentasGrupo;
+                    g.pos = nuevos.size();
+                    for (GrupoProductoService.ProductoVM p : vm.productos) {
+                        Item i = new Item(p.id, p.nombre, p.precio, p.totalVentas, g);
+                        i.pos = g.items.size();
+                        g.items.add(i);
+                        porId.put(i.id, i);
+                    }
+                    nuevos.add(g);
+                }
+                grupos = nuevos;
+                items = porId;
+                cargado = true;
+                version.incrementAndGet();
+                LOG.log(Level.FINE, "Ranking de ventas cargado: {0} grupos, {1} productos",
+                        new Object[]{nuevos.size(), porId.size()});
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Mueve el elemento en {@code pos} hasta que la lista vuelva a quedar de
+     * mayor a menor; actualiza la posición guardada de los que se corren.
+     */
+    private static <T> void reubicar(List<T> lista, int pos,
+                                     java.util.function.ToLongFunction<T> valor,
+                                     java.util.function.ObjIntConsumer<T> posicion) {
+        T x = lista.get(pos);
+        long v = valor.applyAsLong(x);
+        int i = pos;
+        while (i > 0 && valor.applyAsLong(lista.get(i - 1)) < v) {
+            lista.set(i, lista.get(i - 1));
+            posicion.accept(lista.get(i), i);
+            i--;
+        }
+        while (i < lista.size() - 1 && valor.applyAsLong(lista.get(i + 1)) > v) {
+            lista.set(i, lista.get(i + 1));
+            posicion.accept(lista.get(i), i);
+            i++;
+        }
+        lista.set(i, x);
+        posicion.accept(x, i);
+    }
+}
@@ -0,0 +1,432 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Caché en disco de reportes (JSON y PDF) sobre períodos que ya no cambian.
+ *
+ * Solo se guarda un reporte si su período está cerrado: días anteriores a hoy,
+ * o un CierreCaja en estado CERRADO. Un período cerrado cambia únicamente si se
+ * anula una factura de esas fechas o si CierreCajaService modifica una caja;
+ * ambos disparan un {@link Cambio} y aquí, después del commit, se borran las
+ * entradas cuyo rango incluye esa fecha o que son de esa caja. Los cambios de
+ * catálogo borran los reportes de productos (llevan nombres y grupos).
+ *
+ * Los archivos se sirven con {@link #copiar} (FileChannel.transferTo). Como la
+ * invalidación es local, cada entrada vence a las {@code restuna.reportes.cacheHoras}
+ * horas (24 por defecto) para acotar lo que puede quedar viejo en otro nodo.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ReporteCacheService {
+
+    private static final Logger LOG = Logger.getLogger(ReporteCacheService.class.getName());
+
+    private static final long TTL_MS = Long.getLong("restuna.reportes.cacheHoras", 24L) * 3_600_000L;
+    static final int MAX_ENTRADAS = 500;
+    /** Sufijo de los archivos en construcción y de los que no se guardan. */
+    private static final String SUELTO = ".tmp";
+
+    /**
+     * Una factura anulada o una caja modificada. {@code fecha} es el día de la
+     * factura o de apertura de la caja; {@code cierreId} puede ser null.
+     */
+    public static class Cambio {
+        private final LocalDate fecha;
+        private final Long cierreId;
+
+        public Cambio(LocalDateTime fecha, Long cierreId) {
+            this.fecha = fecha != null ? fecha.toLocalDate() : null;
+            this.cierreId = cierreId;
+        }
+
+        public LocalDate getFecha() { return fecha; }
+        public Long getCierreId() { return cierreId; }
+    }
+
+    /**
+     * Rango de días que cubre un reporte y si ya no puede cambiar.
+     */
+    public static final class Periodo {
+        private final LocalDate desde;
+        private final LocalDate hasta;
+        private final Long cierreId;
+        private final boolean cerrado;
+
+        private Periodo(LocalDate desde, LocalDate hasta, Long cierreId, boolean cerrado) {
+            this.desde = desde;
+            this.hasta = hasta;
+            this.cierreId = cierreId;
+            this.cerrado = cerrado;
+        }
+
+        /**
+         * Rango de fechas con los mismos valores por defecto que ReportesService
+         * (desde el primero del mes hasta hoy). Cerrado si termina antes de hoy.
+         */
+        public static Periodo dias(LocalDate desde, LocalDate hasta) {
+            LocalDate hoy = LocalDate.now();
+            LocalDate d = desde != null ? desde : hoy.withDayOfMonth(1);
+            LocalDate h = hasta != null ? hasta : hoy;
+            return new Periodo(d, h, null, h.isBefore(hoy));
+        }
+
+        /**
+         * Un día completo (reporte de cierres por fecha).
+         */
+        public static Periodo dia(LocalDate fecha) {
+            LocalDate f = fecha != null ? fecha : LocalDate.now();
+            return dias(f, f);
+        }
+
+        /**
+         * Las fechas de una caja; cerrado solo si la caja está CERRADA.
+         */
+        public static Periodo cierre(Long cierreId, LocalDateTime apertura, LocalDateTime cierre, String estado) {
+            boolean cerrada = "CERRADO".equals(estado) && apertura != null && cierre != null;
+            return new Periodo(apertura != null ? apertura.toLocalDate() : null,
+                    cierre != null ? cierre.toLocalDate() : null, cierreId, cerrada);
+        }
+
+        public boolean isCerrado() { return cerrado; }
+
+        boolean incluye(Cambio c) {
+            if (cierreId != null && cierreId.equals(c.cierreId)) {
+                return true;
+            }
+            return c.fecha != null && desde != null && hasta != null
+                    && !c.fecha.isBefore(desde) && !c.fecha.isAfter(hasta);
+        }
+
+        @Override
+        public String toString() {
+            return desde + ".." + hasta + (cierreId != null ? "#" + cierreId : "");
+        }
+    }
+
+    /**
+     * Escribe el contenido del reporte. Devuelve false si, viendo los datos,
+     * no conviene guardarlo (por ejemplo, incluye una caja todavía abierta);
+     * lo escrito se envía igual una vez.
+     */
+    @FunctionalInterface
+    public interface Generador {
+        boolean escribir(OutputStream out) throws Exception;
+    }
+
+    private static final class Entrada {
+        final String clave;
+        final String reporte;
+        final Periodo periodo;
+        final Path archivo;
+        final long expira;
+
+        Entrada(String clave, String reporte, Periodo periodo, Path archivo) {
+            this.clave = clave;
+            this.reporte = reporte;
+            this.periodo = periodo;
+            this.archivo = archivo;
+            this.expira = System.currentTimeMillis() + TTL_MS;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    /** Sube con cada invalidación; un reporte armado mientras cambió no se guarda. */
+    private final AtomicLong generacion = new AtomicLong();
+
+    private Path directorio;
+    private Jsonb jsonb;
+
+    @PostConstruct
+    public void init() {
+        jsonb = JsonbBuilder.create();
+        directorio = Paths.get(System.getProperty("restuna.reportes.cacheDir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "restuna-reportes-cache").toString()));
+        try {
+            Files.createDirectories(directorio);
+            // El índice vive en memoria: lo que quedó de una ejecución anterior no se puede validar
+            try (Stream<Path> viejos = Files.list(directorio)) {
+                viejos.forEach(this::borrar);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "No se pudo preparar el directorio de caché de reportes " + directorio, e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            jsonb.close();
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Error al cerrar Jsonb", e);
+        }
+    }
+
+    /**
+     * Archivo con el reporte, ya sea del caché o recién generado. Si el
+     * generador dice que no se guarde (o hubo un cambio mientras se armaba) se
+     * devuelve igual, como archivo suelto que {@link #copiar} borra después de
+     * enviarlo, para no consultar dos veces. Vacío si el período no está
+     * cerrado, si no se puede escribir en el directorio o si una invalidación
+     * borró el archivo recién guardado; en ese caso el llamador arma el
+     * reporte como siempre. Un error del generador se propaga.
+     *
+     * @param reporte nombre del reporte con su formato, p. ej. "facturas.pdf"
+     * @param params  parámetros que no forman parte del período
+     */
+    public Optional<Path> obtener(String reporte, Map<String, ?> params, Periodo periodo, Generador generador) {
+        if (periodo == null || !periodo.isCerrado()) {
+            return Optional.empty();
+        }
+        String clave = clave(reporte, params, periodo);
+        Entrada e = entradas.get(clave);
+        if (e != null && e.expira > System.currentTimeMillis() && Files.exists(e.archivo)) {
+            return Optional.of(e.archivo);
+        }
+
+        long gen = generacion.get();
+        Path archivo = directorio.resolve(hash(clave) + extension(reporte));
+        Path temporal = directorio.resolve(archivo.getFileName() + "." + UUID.randomUUID() + SUELTO);
+        OutputStream salida;
+        try {
+            salida = new BufferedOutputStream(Files.newOutputStream(temporal));
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "No se pudo escribir en el caché de reportes " + directorio, ex);
+            return Optional.empty();
+        }
+
+        boolean guardar;
+        try (OutputStream out = salida) {
+            guardar = generador.escribir(out);
+        } catch (Exception ex) {
+            borrar(temporal);
+            if (ex instanceof RuntimeException) {
+                throw (RuntimeException) ex;
+            }
+            throw new RuntimeException("Error al generar el reporte " + reporte + ": " + ex.getMessage(), ex);
+        }
+        if (!guardar || generacion.get() != gen) {
+            return Optional.of(temporal);
+        }
+        try {
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "No se pudo guardar en caché el reporte " + clave, ex);
+            return Optional.of(temporal);
+        }
+
+        Entrada nueva = new Entrada(clave, reporte, periodo, archivo);
+        entradas.put(clave, nueva);
+        // Una invalidación entre la revisión de arriba y el put no encontró la
+        // entrada: se saca y el archivo vuelve a ser suelto. Si ya la sacó ella,
+        // también borró el archivo y el llamador arma el reporte como siempre.
+        if (generacion.get() != gen) {
+            if (!entradas.remove(clave, nueva)) {
+                return Optional.empty();
+            }
+            try {
+                Files.move(archivo, temporal, StandardCopyOption.ATOMIC_MOVE);
+                return Optional.of(temporal);
+            } catch (IOException ex) {
+                borrar(archivo);
+                return Optional.empty();
+            }
+        }
+        if (entradas.size() > MAX_ENTRADAS) {
+            purgar();
+        }
+        return Optional.of(archivo);
+    }
+
+    /**
+     * Parámetros de la clave a partir de pares nombre, valor (acepta nulos).
+     */
+    public static Map<String, Object> params(Object... nombreValor) {
+        Map<String, Object> m = new TreeMap<>();
+        for (int i = 0; i + 1 < nombreValor.length; i += 2) {
+            m.put(String.valueOf(nombreValor[i]), nombreValor[i + 1]);
+        }
+        return m;
+    }
+
+    /**
+     * Si un listado de cierres se puede guardar: no vacío (ReportesService
+     * devuelve vacío ante un error) y sin cajas abiertas, que todavía cambian.
+     */
+    public static boolean cierresCerrados(List<Map<String, Object>> cierres) {
+        return !cierres.isEmpty() && cierres.stream().allMatch(r -> "CERRADO".equals(r.get("estado")));
+    }
+
+    /**
+     * Serializa con JSON-B, igual que la respuesta normal del endpoint.
+     */
+    public void escribirJson(Object respuesta, OutputStream out) {
+        jsonb.toJson(respuesta, out);
+    }
+
+    /**
+     * Copia el archivo a la respuesta con transferTo, sin pasar por el heap.
+     * Los archivos sueltos de {@link #obtener} se borran al terminar.
+     */
+    public static void copiar(Path archivo, OutputStream out) throws IOException {
+        try (FileChannel in = FileChannel.open(archivo)) {
+            WritableByteChannel destino = Channels.newChannel(out);
+            long pos = 0;
+            long tam = in.size();
+            while (pos < tam) {
+                pos += in.transferTo(pos, tam - pos, destino);
+            }
+        } finally {
+            if (archivo.getFileName().toString().endsWith(SUELTO)) {
+                try {
+                    Files.deleteIfExists(archivo);
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "No se pudo borrar " + archivo, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Borra los reportes afectados por una anulación o un cambio de caja.
+     */
+    public void onCambio(@Observes(during = TransactionPhase.AFTER_SUCCESS) Cambio cambio) {
+        generacion.incrementAndGet();
+        int borradas = invalidar(e -> e.periodo.incluye(cambio));
+        if (borradas > 0) {
+            LOG.log(Level.INFO, "Caché de reportes: {0} entradas invalidadas (fecha {1}, cierre {2})",
+                    new Object[]{borradas, cambio.getFecha(), cambio.getCierreId()});
+        }
+    }
+
+    /**
+     * Los reportes de productos muestran nombres y grupos del catálogo.
+     */
+    public void onCatalogo(@Observes(during = TransactionPhase.AFTER_SUCCESS) CatalogoService.Cambio cambio) {
+        if (cambio == CatalogoService.Cambio.CATALOGO) {
+            generacion.incrementAndGet();
+            invalidar(e -> e.reporte.startsWith("productosTop"));
+        }
+    }
+
+    @Schedule(hour = "*", minute = "17", persistent = false)
+    public void purgar() {
+        long ahora = System.currentTimeMillis();
+        invalidar(e -> e.expira <= ahora);
+        // Sueltos que nadie llegó a enviar (p. ej. el cliente cortó antes)
+        try (Stream<Path> sueltos = Files.list(directorio)) {
+            sueltos.filter(p -> p.toString().endsWith(SUELTO))
+                    .filter(p -> modificado(p) < ahora - 3_600_000L)
+                    .forEach(this::borrar);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "No se pudo revisar el directorio de caché de reportes", e);
+        }
+        if (entradas.size() > MAX_ENTRADAS) {
+            // Se descartan las más próximas a vencer, que son las más viejas
+            entradas.values().stream()
+                    .sorted(Comparator.comparingLong(e -> e.expira))
+                    .limit(entradas.size() - MAX_ENTRADAS)
+                    .toList()
+                    .forEach(e -> {
+                        if (entradas.remove(e.clave, e)) {
+                            borrar(e.archivo);
+                        }
+                    });
+        }
+    }
+
+    private int invalidar(Predicate<Entrada> condicion) {
+        int[] borradas = {0};
+        entradas.entrySet().removeIf(en -> {
+            if (!condicion.test(en.getValue())) {
+                return false;
+            }
+            borrar(en.getValue().archivo);
+            borradas[0]++;
+            return true;
+        });
+        return borradas[0];
+    }
+
+    private static String clave(String reporte, Map<String, ?> params, Periodo periodo) {
+        Map<String, String> normalizados = new TreeMap<>();
+        if (params != null) {
+            params.forEach((k, v) -> {
+                if (v != null && !v.toString().isBlank()) {
+                    normalizados.put(k, v.toString().trim().toUpperCase());
+                }
+            });
+        }
+        return reporte + "|" + periodo + "|" + normalizados;
+    }
+
+    private static String extension(String reporte) {
+        int i = reporte.lastIndexOf('.');
+        return i >= 0 ? reporte.substring(i) : "";
+    }
+
+    private static String hash(String clave) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(clave.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long modificado(Path archivo) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE; // Ya no está
+        }
+    }
+
+    private void borrar(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "No se pudo borrar " + archivo, e);
+        }
+    }
+}
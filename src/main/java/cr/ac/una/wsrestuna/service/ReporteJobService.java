@@ -0,0 +1,324 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Generación asíncrona de reportes PDF (POST /api/reportes/jobs).
+ *
+ * El pedido devuelve un id de inmediato y el PDF se arma en el
+ * ManagedExecutorService del servidor, con a lo sumo {@link #MAX_PARALELO}
+ * trabajos a la vez; el resto espera en una cola acotada. El resultado queda
+ * en disco ({@code restuna.reportes.dir}) durante {@code restuna.reportes.ttlMin}
+ * minutos. Dos pedidos iguales (mismo tipo y parámetros) mientras el primero
+ * todavía no termina reciben el mismo trabajo.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ReporteJobService {
+
+    private static final Logger LOG = Logger.getLogger(ReporteJobService.class.getName());
+
+    static final int MAX_PARALELO = 2;
+    static final int MAX_EN_COLA = 50;
+
+    private static final long TTL_MS = Long.getLong("restuna.reportes.ttlMin", 30L) * 60_000L;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private ReportesPdfService pdfService;
+
+    private Path directorio;
+
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> jobPorClave = new ConcurrentHashMap<>();
+    private final Deque<Job> cola = new ArrayDeque<>();
+    private int enEjecucion = 0;
+
+    public enum Tipo {
+        FACTURAS_PDF,
+        PRODUCTOS_TOP_PDF,
+        CIERRES_PDF,
+        CIERRE_PDF
+    }
+
+    public enum Estado {
+        PENDIENTE,
+        EN_PROCESO,
+        LISTO,
+        ERROR
+    }
+
+    /**
+     * Estado de un trabajo; es lo que devuelve GET /reportes/jobs/{id}.
+     */
+    public static class Job {
+        private final String id;
+        private final Tipo tipo;
+        private final Map<String, String> parametros;
+        private final String clave;
+        private final LocalDateTime creado = LocalDateTime.now();
+        private volatile Estado estado = Estado.PENDIENTE;
+        private volatile int progreso = 0;
+        private volatile String error;
+        private volatile LocalDateTime terminado;
+        private volatile long expira = Long.MAX_VALUE;
+        private volatile Path archivo;
+
+        Job(Tipo tipo, Map<String, String> parametros, String clave) {
+            this.id = UUID.randomUUID().toString();
+            this.tipo = tipo;
+            this.parametros = parametros;
+            this.clave = clave;
+        }
+
+        public String getId() { return id; }
+        public Tipo getTipo() { return tipo; }
+        public Map<String, String> getParametros() { return parametros; }
+        public Estado getEstado() { return estado; }
+        public int getProgreso() { return progreso; }
+        public String getError() { return error; }
+        public LocalDateTime getCreado() { return creado; }
+        public LocalDateTime getTerminado() { return terminado; }
+        public String getNombreArchivo() { return tipo.name().toLowerCase() + "-" + id + ".pdf"; }
+        Path getArchivo() { return archivo; }
+    }
+
+    @PostConstruct
+    public void init() {
+        directorio = Paths.get(System.getProperty("restuna.reportes.dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "restuna-reportes").toString()));
+        try {
+            Files.createDirectories(directorio);
+            // Los resultados de una ejecución anterior ya no tienen trabajo asociado
+            try (Stream<Path> viejos = Files.list(directorio)) {
+                viejos.filter(p -> p.toString().endsWith(".pdf")).forEach(this::borrar);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "No se pudo preparar el directorio de reportes " + directorio, e);
+        }
+    }
+
+    /**
+     * Registra un trabajo, o devuelve el que ya existe con el mismo tipo y parámetros.
+     *
+     * @throws IllegalStateException si la cola está llena
+     */
+    public Job enviar(Tipo tipo, Map<String, String> parametros) {
+        Map<String, String> params = new TreeMap<>();
+        if (parametros != null) {
+            parametros.forEach((k, v) -> {
+                if (v != null && !v.isBlank()) {
+                    params.put(k, v.trim());
+                }
+            });
+        }
+        validar(tipo, params);
+        String clave = tipo + params.toString();
+
+        synchronized (this) {
+            String existente = jobPorClave.get(clave);
+            if (existente != null) {
+                Job job = jobs.get(existente);
+                // Solo se comparte un trabajo en curso; uno ya LISTO puede no
+                // tener lo facturado después (p. ej. un rango que incluye hoy)
+                if (job != null && (job.estado == Estado.PENDIENTE || job.estado == Estado.EN_PROCESO)) {
+                    return job;
+                }
+            }
+
+            if (enEjecucion >= MAX_PARALELO && cola.size() >= MAX_EN_COLA) {
+                throw new IllegalStateException("Hay demasiados reportes en proceso, intente más tarde");
+            }
+
+            Job job = new Job(tipo, params, clave);
+            jobs.put(job.id, job);
+            jobPorClave.put(clave, job.id);
+
+            if (enEjecucion < MAX_PARALELO) {
+                enEjecucion++;
+                ejecutar(job);
+            } else {
+                cola.addLast(job);
+            }
+            return job;
+        }
+    }
+
+    public Optional<Job> find(String id) {
+        return Optional.ofNullable(id == null ? null : jobs.get(id));
+    }
+
+    /**
+     * Archivo del resultado, si el trabajo terminó y no ha expirado. Se
+     * devuelve la ruta y no los bytes para que el REST lo envíe por partes
+     * (ver {@link ReporteCacheService#copiar}) sin cargar el PDF en memoria.
+     */
+    public Optional<Path> resultado(String id) {
+        Job job = id == null ? null : jobs.get(id);
+        if (job == null || job.estado != Estado.LISTO || job.archivo == null || !Files.exists(job.archivo)) {
+            return Optional.empty();
+        }
+        return Optional.of(job.archivo);
+    }
+
+    /**
+     * Elimina los trabajos y archivos vencidos.
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void purgar() {
+        long ahora = System.currentTimeMillis();
+        jobs.values().removeIf(job -> {
+            if (job.expira > ahora) {
+                return false;
+            }
+            jobPorClave.remove(job.clave, job.id);
+            if (job.archivo != null) {
+                borrar(job.archivo);
+            }
+            return true;
+        });
+    }
+
+    private void ejecutar(Job job) {
+        try {
+            executor.execute(() -> {
+                try {
+                    procesar(job);
+                } finally {
+                    siguiente();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // El lugar que se reservó para este trabajo pasa al siguiente (o se libera)
+            LOG.log(Level.SEVERE, "El executor rechazó el reporte " + job.id, e);
+            job.error = "El servidor no pudo iniciar el reporte, intente de nuevo";
+            job.estado = Estado.ERROR;
+            job.terminado = LocalDateTime.now();
+            job.expira = System.currentTimeMillis() + TTL_MS;
+            siguiente();
+        }
+    }
+
+    private synchronized void siguiente() {
+        Job proximo = cola.pollFirst();
+        if (proximo != null) {
+            ejecutar(proximo);
+        } else {
+            enEjecucion--;
+        }
+    }
+
+    private void procesar(Job job) {
+        job.estado = Estado.EN_PROCESO;
+        job.progreso = 10;
+        try {
+            Path archivo = directorio.resolve(job.id + ".pdf");
+            if (job.tipo == Tipo.FACTURAS_PDF) {
+                // El listado de facturas puede ser muy grande: se escribe directo al archivo
+                Map<String, String> p = job.parametros;
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(archivo))) {
+                    pdfService.facturasPdf(fecha(p, "fechaInicio"), fecha(p, "fechaFin"),
+                            p.get("usuario"), p.get("estado"), out);
+                }
+            } else {
+                byte[] pdf = generar(job.tipo, job.parametros);
+                job.progreso = 90;
+                Files.write(archivo, pdf);
+            }
+            job.archivo = archivo;
+            job.progreso = 100;
+            job.estado = Estado.LISTO;
+            LOG.log(Level.INFO, "Reporte {0} ({1}) listo: {2} bytes",
+                    new Object[]{job.id, job.tipo, Files.size(archivo)});
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error generando reporte " + job.id, e);
+            job.error = e.getMessage();
+            job.estado = Estado.ERROR;
+            borrar(directorio.resolve(job.id + ".pdf"));
+        } finally {
+            job.terminado = LocalDateTime.now();
+            job.expira = System.currentTimeMillis() + TTL_MS;
+        }
+    }
+
+    private byte[] generar(Tipo tipo, Map<String, String> p) {
+        switch (tipo) {
+            case PRODUCTOS_TOP_PDF:
+                return pdfService.productosTopPdf(fecha(p, "fechaInicio"), fecha(p, "fechaFin"),
+                        p.get("grupo"), p.containsKey("top") ? Integer.valueOf(p.get("top")) : 10);
+            case CIERRES_PDF:
+                return pdfService.cierreCajaPdf(fecha(p, "fecha"), p.get("usuario"));
+            case CIERRE_PDF:
+                if (!p.containsKey("id")) {
+                    throw new IllegalArgumentException("Falta el parámetro id");
+                }
+                return pdfService.cierreByIdPdf(Long.valueOf(p.get("id")));
+            default:
+                throw new IllegalArgumentException("Tipo de reporte no soportado: " + tipo);
+        }
+    }
+
+    /**
+     * Revisa los parámetros antes de encolar, para responder 400 y no un trabajo en ERROR.
+     */
+    private static void validar(Tipo tipo, Map<String, String> p) {
+        try {
+            fecha(p, "fechaInicio");
+            fecha(p, "fechaFin");
+            fecha(p, "fecha");
+            if (p.containsKey("top")) {
+                Integer.parseInt(p.get("top"));
+            }
+            if (tipo == Tipo.CIERRE_PDF) {
+                Long.parseLong(p.getOrDefault("id", ""));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Parámetros inválidos para " + tipo + ": " + e.getMessage());
+        }
+    }
+
+    private static LocalDate fecha(Map<String, String> p, String nombre) {
+        String v = p.get(nombre);
+        return v == null ? null : LocalDate.parse(v);
+    }
+
+    private void borrar(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "No se pudo borrar " + archivo, e);
+        }
+    }
+}
@@ -1,18 +1,25 @@
 // src/main/java/cr/ac/una/wsrestuna/service/ReportesPdfService.java
 package cr.ac.una.wsrestuna.service;
 
+import cr.ac.una.wsrestuna.service.ReporteCacheService.Periodo;
 import cr.ac.una.wsrestuna.util.JasperUtil;
+import cr.ac.una.wsrestuna.util.LotesDataSource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
 
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
-import net.sf.jasperreports.engine.JasperCompileManager;
 import net.sf.jasperreports.engine.JasperExportManager;
 import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
@@ -25,6 +32,12 @@ public class ReportesPdfService {
     @Inject
     ReportesService reportesService;
 
+    @EJB
+    ReporteCacheService reporteCache;
+
+    @EJB
+    CierreCajaService cierreCajaService;
+
     private static final DateTimeFormatter DF = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     /** Cast seguro para adaptar List<Map<String,Object>> a Collection<Map<String,?>> */
@@ -33,22 +46,79 @@ public class ReportesPdfService {
         return (Collection) in;
     }
 
+    // ================== PDFs DESDE CACHÉ ==================
+    // Para períodos cerrados (ver ReporteCacheService); vacío = generar como siempre.
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Optional<Path> facturasPdfCache(LocalDate desde, LocalDate hasta, String usuario, String estado) {
+        return reporteCache.obtener("facturas.pdf", ReporteCacheService.params("usuario", usuario, "estado", estado),
+                Periodo.dias(desde, hasta), out -> {
+                    facturasPdf(desde, hasta, usuario, estado, out);
+                    return true;
+                });
+    }
+
+    public Optional<Path> productosTopPdfCache(LocalDate desde, LocalDate hasta, String grupo, Integer top) {
+        return reporteCache.obtener("productosTop.pdf", ReporteCacheService.params("grupo", grupo, "top", top),
+                Periodo.dias(desde, hasta), out -> {
+                    List<Map<String,Object>> data = reportesService.productosTop(desde, hasta, grupo, top);
+                    out.write(productosTopPdf(desde, hasta, data));
+                    // Vacío también es lo que devuelve ReportesService ante un error
+                    return !data.isEmpty();
+                });
+    }
+
+    public Optional<Path> cierreCajaPdfCache(LocalDate fecha, String usuario) {
+        return reporteCache.obtener("cierres.pdf", ReporteCacheService.params("usuario", usuario),
+                Periodo.dia(fecha), out -> {
+                    List<Map<String,Object>> data = reportesService.cierres(fecha, usuario);
+                    out.write(cierreCajaPdf(fecha, usuario, data));
+                    return ReporteCacheService.cierresCerrados(data);
+                });
+    }
+
+    public Optional<Path> cierreByIdPdfCache(Long id) {
+        return cierreCajaService.findById(id)
+                .flatMap(c -> reporteCache.obtener("cierre.pdf", ReporteCacheService.params("id", id),
+                        Periodo.cierre(id, c.getFechaApertura(), c.getFechaCierre(), c.getEstado()), out -> {
+                            out.write(cierreByIdPdf(id));
+                            return true;
+                        }));
+    }
+
     // ================== PDFs LISTADOS ==================
 
     public byte[] facturasPdf(LocalDate desde, LocalDate hasta, String usuario, String estado) {
         List<Map<String,Object>> data = reportesService.facturas(desde, hasta, usuario, estado);
+        return JasperUtil.renderPdfFromMaps("/reports/facturas.jrxml", wild(data), facturasParams(desde, hasta));
+    }
 
+    /**
+     * Igual que {@link #facturasPdf(LocalDate, LocalDate, String, String)} pero
+     * escribiendo en {@code out}: lee las facturas por lotes y no arma el PDF en
+     * memoria. Sin transacción propia para que cada lote use la suya y no se
+     * retenga una conexión mientras se escribe la respuesta.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void facturasPdf(LocalDate desde, LocalDate hasta, String usuario, String estado, OutputStream out) {
+        LotesDataSource ds = new LotesDataSource((ultima, tamano) ->
+                reportesService.facturasLote(desde, hasta, usuario, estado, ultima, tamano));
+        JasperUtil.streamPdf("/reports/facturas.jrxml", ds, facturasParams(desde, hasta), out);
+    }
+
+    private static Map<String,Object> facturasParams(LocalDate desde, LocalDate hasta) {
         Map<String,Object> params = new HashMap<>();
         params.put("P_TITULO", "Listado de Facturas");
         params.put("P_RANGO",
                 (desde==null? "" : desde.format(DF)) + "  →  " + (hasta==null? "" : hasta.format(DF)));
-
-        return JasperUtil.renderPdfFromMaps("/reports/facturas.jrxml", wild(data), params);
+        return params;
     }
 
     public byte[] productosTopPdf(LocalDate desde, LocalDate hasta, String grupo, Integer top) {
-        List<Map<String,Object>> data = reportesService.productosTop(desde, hasta, grupo, top);
+        return productosTopPdf(desde, hasta, reportesService.productosTop(desde, hasta, grupo, top));
+    }
 
+    private byte[] productosTopPdf(LocalDate desde, LocalDate hasta, List<Map<String,Object>> data) {
         Map<String,Object> params = new HashMap<>();
         params.put("P_TITULO", "Productos más vendidos");
         params.put("P_RANGO",
@@ -58,8 +128,10 @@ public class ReportesPdfService {
     }
 
     public byte[] cierreCajaPdf(LocalDate fecha, String usuario) {
-        List<Map<String,Object>> data = reportesService.cierres(fecha, usuario);
+        return cierreCajaPdf(fecha, usuario, reportesService.cierres(fecha, usuario));
+    }
 
+    private byte[] cierreCajaPdf(LocalDate fecha, String usuario, List<Map<String,Object>> data) {
         Map<String,Object> params = new HashMap<>();
         params.put("P_TITULO", "Cierre de Caja");
         params.put("P_FECHA",  fecha==null? "" : fecha.format(DF));
@@ -68,13 +140,69 @@ public class ReportesPdfService {
         return JasperUtil.renderPdfFromMaps("/reports/cierres.jrxml", wild(data), params);
     }
 
-    private static java.io.InputStream openReport(String... candidates) {
-    for (String c : candidates) {
-        var is = ReportesPdfService.class.getResourceAsStream(c);
-        if (is != null) return is;
+    // ================== PDFs ANALÍTICA ==================
+
+    public Optional<Path> ventasPeriodoPdfCache(LocalDate desde, LocalDate hasta) {
+        return listadoPdfCache("ventasPeriodo.pdf", ReporteCacheService.params(), desde, hasta,
+                () -> ventasPeriodoPdf(desde, hasta));
+    }
+
+    public byte[] ventasPeriodoPdf(LocalDate desde, LocalDate hasta) {
+        return listadoPdf("/reports/ventas_periodo.jrxml", "Ventas por período", desde, hasta,
+                reportesService.ventasPeriodo(desde, hasta));
+    }
+
+    public Optional<Path> ventasSaloneroPdfCache(LocalDate desde, LocalDate hasta) {
+        return listadoPdfCache("ventasSalonero.pdf", ReporteCacheService.params(), desde, hasta,
+                () -> ventasSaloneroPdf(desde, hasta));
+    }
+
+    public byte[] ventasSaloneroPdf(LocalDate desde, LocalDate hasta) {
+        return listadoPdf("/reports/ventas_salonero.jrxml", "Ventas por salonero", desde, hasta,
+                reportesService.ventasSalonero(desde, hasta));
+    }
+
+    public Optional<Path> clientesTopPdfCache(LocalDate desde, LocalDate hasta, Integer top) {
+        return listadoPdfCache("clientesTop.pdf", ReporteCacheService.params("top", top), desde, hasta,
+                () -> clientesTopPdf(desde, hasta, top));
+    }
+
+    public byte[] clientesTopPdf(LocalDate desde, LocalDate hasta, Integer top) {
+        return listadoPdf("/reports/clientes_top.jrxml", "Clientes principales", desde, hasta,
+                reportesService.clientesTop(desde, hasta, top));
+    }
+
+    public Optional<Path> descuentosPdfCache(LocalDate desde, LocalDate hasta, String usuario) {
+        return listadoPdfCache("descuentos.pdf", ReporteCacheService.params("usuario", usuario), desde, hasta,
+                () -> descuentosPdf(desde, hasta, usuario));
+    }
+
+    public byte[] descuentosPdf(LocalDate desde, LocalDate hasta, String usuario) {
+        return listadoPdf("/reports/descuentos.jrxml", "Descuentos aplicados", desde, hasta,
+                reportesService.descuentos(desde, hasta, usuario));
+    }
+
+    private byte[] listadoPdf(String plantilla, String titulo, LocalDate desde, LocalDate hasta,
+                              List<Map<String,Object>> data) {
+        Map<String,Object> params = new HashMap<>();
+        params.put("P_TITULO", titulo);
+        params.put("P_RANGO",
+                (desde==null? "" : desde.format(DF)) + "  →  " + (hasta==null? "" : hasta.format(DF)));
+        return JasperUtil.renderPdfFromMaps(plantilla, wild(data), params);
+    }
+
+    /**
+     * Los listados de analítica se guardan siempre que el período esté cerrado:
+     * salen de tablas agregadas, así que un PDF vacío es un resultado real y no
+     * un error tragado.
+     */
+    private Optional<Path> listadoPdfCache(String reporte, Map<String, ?> params, LocalDate desde, LocalDate hasta,
+                                           java.util.function.Supplier<byte[]> pdf) {
+        return reporteCache.obtener(reporte, params, Periodo.dias(desde, hasta), out -> {
+            out.write(pdf.get());
+            return true;
+        });
     }
-    throw new IllegalStateException("Plantilla no encontrada. Probé: " + java.util.Arrays.toString(candidates));
-}
 
 public byte[] cierreByIdPdf(Long id) {
     var data = reportesService.cierreById(id);
@@ -97,12 +225,12 @@ public byte[] cierreByIdPdf(Long id) {
     params.put(net.sf.jasperreports.engine.JRParameter.REPORT_LOCALE, new java.util.Locale("es","CR"));
     params.put("DS_MOV", new net.sf.jasperreports.engine.data.JRMapCollectionDataSource((java.util.Collection) movimientos));
 
-    try (var is = openReport(
+    try {
+        var jr = JasperUtil.plantilla(
             "/reports/CierreCajaDetalle.jrxml",   // 👈 tu carpeta real
             "/Reports/CierreCajaDetalle.jrxml",   // fallbacks por si hay cambios de mayúsculas
             "/reportes/CierreCajaDetalle.jrxml"
-    )) {
-        var jr = net.sf.jasperreports.engine.JasperCompileManager.compileReport(is);
+        );
         var jp = net.sf.jasperreports.engine.JasperFillManager.fillReport(jr, params, new net.sf.jasperreports.engine.JREmptyDataSource(1));
         return net.sf.jasperreports.engine.JasperExportManager.exportReportToPdf(jp);
     } catch (Exception e) {
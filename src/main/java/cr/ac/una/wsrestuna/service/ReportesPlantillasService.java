@@ -0,0 +1,28 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.util.JasperUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+/**
+ * Compila las plantillas Jasper al desplegar, para que el primer PDF no
+ * pague la compilación. JasperUtil las guarda compiladas.
+ */
+@Singleton
+@Startup
+public class ReportesPlantillasService {
+
+    @PostConstruct
+    public void precompilar() {
+        JasperUtil.precompilar(
+                "/reports/facturas.jrxml",
+                "/reports/productos_top.jrxml",
+                "/reports/cierres.jrxml",
+                "/reports/CierreCajaDetalle.jrxml",
+                "/reports/ventas_periodo.jrxml",
+                "/reports/ventas_salonero.jrxml",
+                "/reports/clientes_top.jrxml",
+                "/reports/descuentos.jrxml");
+    }
+}
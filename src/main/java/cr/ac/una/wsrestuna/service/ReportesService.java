@@ -5,6 +5,7 @@ import cr.ac.una.wsrestuna.model.CierreCaja;
 import cr.ac.una.wsrestuna.model.DetalleFactura;
 import cr.ac.una.wsrestuna.model.Factura;
 import cr.ac.una.wsrestuna.model.Producto;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.persistence.EntityManager;
@@ -35,6 +36,9 @@ private static BigDecimal nz(BigDecimal v) { return (v == null) ? BigDecimal.ZER
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    @EJB
+    private VentasHoraService ventasHora;
+
     // ==============================
     // FACTURAS
     // ==============================
@@ -47,39 +51,14 @@ private static BigDecimal nz(BigDecimal v) { return (v == null) ? BigDecimal.ZER
                                               String usuario,
                                               String estado) {
         try {
-            LocalDateTime ini = (desde == null)
-                    ? LocalDate.now().withDayOfMonth(1).atStartOfDay()
-                    : desde.atStartOfDay();
-            LocalDateTime fin = (hasta == null)
-                    ? LocalDateTime.of(LocalDate.now(), LocalTime.MAX)
-                    : hasta.atTime(LocalTime.MAX);
-
             StringBuilder jpql = new StringBuilder(
                     "SELECT f FROM Factura f " +
                     "LEFT JOIN FETCH f.usuario u " +
                     "LEFT JOIN FETCH f.cliente c " +
-                    "LEFT JOIN FETCH f.orden o " +
-                    "WHERE f.fechaHora BETWEEN :ini AND :fin "
+                    "LEFT JOIN FETCH f.orden o "
             );
-
             Map<String, Object> params = new HashMap<>();
-            params.put("ini", ini);
-            params.put("fin", fin);
-
-            if (estado != null && !estado.isBlank()) {
-                jpql.append("AND f.estado = :estado ");
-                params.put("estado", estado.trim().toUpperCase());
-            }
-
-            if (usuario != null && !usuario.isBlank()) {
-                if (usuario.matches("\\d+")) {
-                    jpql.append("AND u.id = :usuarioId ");
-                    params.put("usuarioId", Long.valueOf(usuario));
-                } else {
-                    jpql.append("AND UPPER(u.usuario) = :usuarioLogin ");
-                    params.put("usuarioLogin", usuario.trim().toUpperCase());
-                }
-            }
+            filtroFacturas(jpql, params, desde, hasta, usuario, estado);
 
             jpql.append("ORDER BY f.fechaHora DESC");
 
@@ -111,6 +90,99 @@ private static BigDecimal nz(BigDecimal v) { return (v == null) ? BigDecimal.ZER
         }
     }
 
+    /**
+     * Un lote del mismo listado de {@link #facturas}, en orden fechaHora DESC, id DESC.
+     *
+     * Pensado para el PDF en streaming: se lee por keyset a partir de la
+     * última fila del lote anterior ({@code ultima} null para el primero), con
+     * una proyección escalar para no cargar entidades en el contexto. Cada
+     * llamada es su propia transacción, así no se retiene una conexión durante
+     * todo el llenado del reporte. Además de las claves de {@link #facturas},
+     * cada fila trae {@code fechaHora} (LocalDateTime) para pedir el siguiente lote.
+     */
+    public List<Map<String, Object>> facturasLote(LocalDate desde,
+                                                  LocalDate hasta,
+                                                  String usuario,
+                                                  String estado,
+                                                  Map<String, Object> ultima,
+                                                  int tamano) {
+        StringBuilder jpql = new StringBuilder(
+                "SELECT f.id, f.fechaHora, f.estado, f.subtotal, f.impuestoVenta, f.impuestoServicio, " +
+                "f.descuento, f.total, u.usuario, c.nombre, o.id " +
+                "FROM Factura f " +
+                "LEFT JOIN f.usuario u " +
+                "LEFT JOIN f.cliente c " +
+                "LEFT JOIN f.orden o "
+        );
+        Map<String, Object> params = new HashMap<>();
+        filtroFacturas(jpql, params, desde, hasta, usuario, estado);
+
+        if (ultima != null) {
+            jpql.append("AND (f.fechaHora < :ultimaFecha OR (f.fechaHora = :ultimaFecha AND f.id < :ultimoId)) ");
+            params.put("ultimaFecha", ultima.get("fechaHora"));
+            params.put("ultimoId", ultima.get("id"));
+        }
+
+        jpql.append("ORDER BY f.fechaHora DESC, f.id DESC");
+
+        TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class);
+        params.forEach(q::setParameter);
+        q.setMaxResults(tamano);
+
+        List<Object[]> filas = q.getResultList();
+        List<Map<String, Object>> out = new ArrayList<>(filas.size());
+        for (Object[] r : filas) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", r[0]);
+            row.put("fechaHora", r[1]);
+            row.put("fecha", r[1] != null ? r[1].toString() : null);
+            row.put("estado", r[2]);
+            row.put("subtotal", nz((BigDecimal) r[3]));
+            row.put("impuestoVenta", nz((BigDecimal) r[4]));
+            row.put("impuestoServicio", nz((BigDecimal) r[5]));
+            row.put("descuento", nz((BigDecimal) r[6]));
+            row.put("total", nz((BigDecimal) r[7]));
+            row.put("usuario", r[8]);
+            row.put("cliente", r[9]);
+            row.put("ordenId", r[10]);
+            out.add(row);
+        }
+        return out;
+    }
+
+    /**
+     * WHERE común de los listados de facturas; espera los alias f y u.
+     */
+    private static void filtroFacturas(StringBuilder jpql, Map<String, Object> params,
+                                       LocalDate desde, LocalDate hasta,
+                                       String usuario, String estado) {
+        LocalDateTime ini = (desde == null)
+                ? LocalDate.now().withDayOfMonth(1).atStartOfDay()
+                : desde.atStartOfDay();
+        LocalDateTime fin = (hasta == null)
+                ? LocalDateTime.of(LocalDate.now(), LocalTime.MAX)
+                : hasta.atTime(LocalTime.MAX);
+
+        jpql.append("WHERE f.fechaHora BETWEEN :ini AND :fin ");
+        params.put("ini", ini);
+        params.put("fin", fin);
+
+        if (estado != null && !estado.isBlank()) {
+            jpql.append("AND f.estado = :estado ");
+            params.put("estado", estado.trim().toUpperCase());
+        }
+
+        if (usuario != null && !usuario.isBlank()) {
+            if (usuario.matches("\\d+")) {
+                jpql.append("AND u.id = :usuarioId ");
+                params.put("usuarioId", Long.valueOf(usuario));
+            } else {
+                jpql.append("AND UPPER(u.usuario) = :usuarioLogin ");
+                params.put("usuarioLogin", usuario.trim().toUpperCase());
+            }
+        }
+    }
+
     // ==============================
     // CIERRES DE CAJA
     // ==============================
@@ -193,48 +265,37 @@ private static BigDecimal nz(BigDecimal v) { return (v == null) ? BigDecimal.ZER
                     ? LocalDateTime.of(LocalDate.now(), LocalTime.MAX)
                     : hasta.atTime(LocalTime.MAX);
             int limite = (top == null || top <= 0) ? 10 : top;
-
-            StringBuilder jpql = new StringBuilder(
-                    "SELECT p, COALESCE(SUM(d.cantidad),0) AS totalCant " +
-                    "FROM DetalleFactura d " +
-                    "JOIN d.factura f " +
-                    "JOIN d.producto p " +
-                    "LEFT JOIN p.grupo g " +
-                    "WHERE f.fechaHora BETWEEN :ini AND :fin " +
-                    "AND f.estado = 'A' "
-            );
-            Map<String, Object> params = new HashMap<>();
-            params.put("ini", ini);
-            params.put("fin", fin);
-
-            if (grupo != null && !grupo.isBlank()) {
-                if (grupo.matches("\\d+")) {
-                    jpql.append("AND g.id = :grupoId ");
-                    params.put("grupoId", Long.valueOf(grupo));
-                }
+            Long grupoId = (grupo != null && grupo.matches("\\d+")) ? Long.valueOf(grupo) : null;
+
+            // Cantidades desde el agregado por hora (ver VentasHoraService)
+            List<Map.Entry<Long, Long>> topIds = ventasHora.cantidadesPorProducto(ini, fin, grupoId)
+                    .entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                    .limit(limite)
+                    .toList();
+            if (topIds.isEmpty()) {
+                return new ArrayList<>();
             }
 
-            jpql.append("GROUP BY p ");
-            jpql.append("ORDER BY totalCant DESC");
-
-            TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class);
-            params.forEach(q::setParameter);
-            q.setMaxResults(limite);
-
-            List<Object[]> filas = q.getResultList();
-            List<Map<String, Object>> out = new ArrayList<>(filas.size());
-
-            for (Object[] r : filas) {
-                Producto p = (Producto) r[0];
-                Number totalCant = (Number) r[1];
-
+            Map<Long, Producto> productos = new HashMap<>();
+            em.createQuery("SELECT p FROM Producto p LEFT JOIN FETCH p.grupo WHERE p.id IN :ids", Producto.class)
+                    .setParameter("ids", topIds.stream().map(Map.Entry::getKey).toList())
+                    .getResultList()
+                    .forEach(p -> productos.put(p.getId(), p));
+
+            List<Map<String, Object>> out = new ArrayList<>(topIds.size());
+            for (Map.Entry<Long, Long> e : topIds) {
+                Producto p = productos.get(e.getKey());
+                if (p == null) {
+                    continue;
+                }
                 Map<String, Object> row = new LinkedHashMap<>();
                 row.put("id", p.getId());
                 row.put("nombre", p.getNombre());
                 row.put("nombreCorto", p.getNombreCorto());
                 row.put("grupo", (p.getGrupo() != null) ? p.getGrupo().getNombre() : null);
                 row.put("precio", p.getPrecio() != null ? p.getPrecio() : BigDecimal.ZERO);
-                row.put("totalVentas", totalCant != null ? totalCant.longValue() : 0L);
+                row.put("totalVentas", e.getValue());
                 row.put("estado", p.getEstado());
                 out.add(row);
             }
@@ -246,6 +307,298 @@ private static BigDecimal nz(BigDecimal v) { return (v == null) ? BigDecimal.ZER
         }
     }
 
+    // ==============================
+    // ANALÍTICA (desde las tablas por día de VentasHoraService)
+    // ==============================
+    // Los días completos se leen de ventas_dia / ventas_dia_cliente; los días
+    // desde VentasHoraService.diaCorte() (hoy, normalmente) se leen de factura.
+
+    /**
+     * Claves por fila:
+     *  fecha, facturas, subtotal, impuestoVenta, impuestoServicio, descuento, total
+     */
+    public List<Map<String, Object>> ventasPeriodo(LocalDate desde, LocalDate hasta) {
+        LocalDate[] r = rango(desde, hasta);
+        Map<LocalDate, Suma> dias = new TreeMap<>();
+
+        LocalDate[] agregado = tramoAgregado(r);
+        if (agregado != null) {
+            for (Object[] f : em.createQuery(
+                    "SELECT v.dia, SUM(v.facturas), SUM(v.facturasDescuento), SUM(v.subtotal), SUM(v.impuestoVenta), "
+                    + "SUM(v.impuestoServicio), SUM(v.descuento), SUM(v.total) FROM VentaDia v "
+                    + "WHERE v.dia BETWEEN :d AND :h GROUP BY v.dia", Object[].class)
+                    .setParameter("d", agregado[0]).setParameter("h", agregado[1])
+                    .getResultList()) {
+                dias.computeIfAbsent((LocalDate) f[0], k -> new Suma()).sumar(f, 1);
+            }
+        }
+        for (Object[] f : facturasRecientes(r, null)) {
+            dias.computeIfAbsent(((LocalDateTime) f[0]).toLocalDate(), k -> new Suma()).sumarFactura(f);
+        }
+
+        List<Map<String, Object>> out = new ArrayList<>(dias.size());
+        dias.forEach((dia, s) -> {
+            if (s.facturas == 0) {
+                return;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("fecha", dia.toString());
+            row.put("facturas", s.facturas);
+            row.put("subtotal", s.subtotal);
+            row.put("impuestoVenta", s.impuestoVenta);
+            row.put("impuestoServicio", s.impuestoServicio);
+            row.put("descuento", s.descuento);
+            row.put("total", s.total);
+            out.add(row);
+        });
+        return out;
+    }
+
+    /**
+     * Claves por fila (mayor total primero):
+     *  saloneroId, salonero, facturas, total, promedio
+     */
+    public List<Map<String, Object>> ventasSalonero(LocalDate desde, LocalDate hasta) {
+        LocalDate[] r = rango(desde, hasta);
+        Map<Long, Suma> saloneros = new HashMap<>();
+
+        LocalDate[] agregado = tramoAgregado(r);
+        if (agregado != null) {
+            for (Object[] f : em.createQuery(
+                    "SELECT v.saloneroId, SUM(v.facturas), SUM(v.facturasDescuento), SUM(v.subtotal), SUM(v.impuestoVenta), "
+                    + "SUM(v.impuestoServicio), SUM(v.descuento), SUM(v.total) FROM VentaDia v "
+                    + "WHERE v.dia BETWEEN :d AND :h GROUP BY v.saloneroId", Object[].class)
+                    .setParameter("d", agregado[0]).setParameter("h", agregado[1])
+                    .getResultList()) {
+                saloneros.computeIfAbsent((Long) f[0], k -> new Suma()).sumar(f, 1);
+            }
+        }
+        for (Object[] f : facturasRecientes(r, null)) {
+            saloneros.computeIfAbsent(f[2] == null ? 0L : (Long) f[2], k -> new Suma()).sumarFactura(f);
+        }
+
+        Map<Long, String> nombres = nombres("SELECT u.id, u.nombre FROM Usuario u WHERE u.id IN :ids", saloneros.keySet());
+        List<Map<String, Object>> out = new ArrayList<>(saloneros.size());
+        saloneros.entrySet().stream()
+                .filter(e -> e.getValue().facturas != 0)
+                .sorted((a, b) -> b.getValue().total.compareTo(a.getValue().total))
+                .forEach(e -> {
+                    Suma s = e.getValue();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("saloneroId", e.getKey());
+                    row.put("salonero", nombres.getOrDefault(e.getKey(), "Sin salonero"));
+                    row.put("facturas", s.facturas);
+                    row.put("total", s.total);
+                    row.put("promedio", s.total.divide(BigDecimal.valueOf(s.facturas), 2, java.math.RoundingMode.HALF_UP));
+                    out.add(row);
+                });
+        return out;
+    }
+
+    /**
+     * Claves por fila (mayor total primero):
+     *  clienteId, cliente, correo, facturas, descuento, total
+     */
+    public List<Map<String, Object>> clientesTop(LocalDate desde, LocalDate hasta, Integer top) {
+        LocalDate[] r = rango(desde, hasta);
+        int limite = (top == null || top <= 0) ? 10 : top;
+        Map<Long, Suma> clientes = new HashMap<>();
+
+        LocalDate[] agregado = tramoAgregado(r);
+        if (agregado != null) {
+            for (Object[] f : em.createQuery(
+                    "SELECT v.clienteId, SUM(v.facturas), SUM(v.descuento), SUM(v.total) FROM VentaDiaCliente v "
+                    + "WHERE v.dia BETWEEN :d AND :h GROUP BY v.clienteId", Object[].class)
+                    .setParameter("d", agregado[0]).setParameter("h", agregado[1])
+                    .getResultList()) {
+                Suma s = clientes.computeIfAbsent((Long) f[0], k -> new Suma());
+                s.facturas += ((Number) f[1]).longValue();
+                s.descuento = s.descuento.add(nz((BigDecimal) f[2]));
+                s.total = s.total.add(nz((BigDecimal) f[3]));
+            }
+        }
+        for (Object[] f : facturasRecientes(r, null)) {
+            if (f[3] != null) {
+                clientes.computeIfAbsent((Long) f[3], k -> new Suma()).sumarFactura(f);
+            }
+        }
+
+        List<Map.Entry<Long, Suma>> mejores = clientes.entrySet().stream()
+                .filter(e -> e.getValue().facturas != 0)
+                .sorted((a, b) -> b.getValue().total.compareTo(a.getValue().total))
+                .limit(limite)
+                .toList();
+        Map<Long, Object[]> datos = new HashMap<>();
+        if (!mejores.isEmpty()) {
+            em.createQuery("SELECT c.id, c.nombre, c.correo FROM Cliente c WHERE c.id IN :ids", Object[].class)
+                    .setParameter("ids", mejores.stream().map(Map.Entry::getKey).toList())
+                    .getResultList()
+                    .forEach(c -> datos.put((Long) c[0], c));
+        }
+
+        List<Map<String, Object>> out = new ArrayList<>(mejores.size());
+        for (Map.Entry<Long, Suma> e : mejores) {
+            Object[] c = datos.get(e.getKey());
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("clienteId", e.getKey());
+            row.put("cliente", c != null ? c[1] : null);
+            row.put("correo", c != null ? c[2] : null);
+            row.put("facturas", e.getValue().facturas);
+            row.put("descuento", e.getValue().descuento);
+            row.put("total", e.getValue().total);
+            out.add(row);
+        }
+        return out;
+    }
+
+    /**
+     * Claves por fila (por día y cajero):
+     *  fecha, usuario, facturas, facturasConDescuento, subtotal, descuento, porcentaje
+     */
+    public List<Map<String, Object>> descuentos(LocalDate desde, LocalDate hasta, String usuario) {
+        LocalDate[] r = rango(desde, hasta);
+        Long usuarioId = null;
+        if (usuario != null && !usuario.isBlank()) {
+            usuarioId = usuario.matches("\\d+") ? Long.valueOf(usuario)
+                    : em.createQuery("SELECT u.id FROM Usuario u WHERE UPPER(u.usuario) = :login", Long.class)
+                            .setParameter("login", usuario.trim().toUpperCase())
+                            .getResultStream().findFirst().orElse(-1L);
+        }
+
+        // clave: dia|usuarioId, en orden de día
+        Map<String, Suma> filas = new TreeMap<>();
+        Map<String, Object[]> claves = new HashMap<>();
+
+        LocalDate[] agregado = tramoAgregado(r);
+        if (agregado != null) {
+            TypedQuery<Object[]> q = em.createQuery(
+                    "SELECT v.dia, v.usuarioId, SUM(v.facturas), SUM(v.facturasDescuento), SUM(v.subtotal), "
+                    + "SUM(v.impuestoVenta), SUM(v.impuestoServicio), SUM(v.descuento), SUM(v.total) FROM VentaDia v "
+                    + "WHERE v.dia BETWEEN :d AND :h " + (usuarioId != null ? "AND v.usuarioId = :u " : "")
+                    + "GROUP BY v.dia, v.usuarioId", Object[].class)
+                    .setParameter("d", agregado[0]).setParameter("h", agregado[1]);
+            if (usuarioId != null) {
+                q.setParameter("u", usuarioId);
+            }
+            for (Object[] f : q.getResultList()) {
+                String k = f[0] + "|" + f[1];
+                claves.putIfAbsent(k, new Object[]{f[0], f[1]});
+                filas.computeIfAbsent(k, x -> new Suma()).sumar(f, 2);
+            }
+        }
+        for (Object[] f : facturasRecientes(r, usuarioId)) {
+            LocalDate dia = ((LocalDateTime) f[0]).toLocalDate();
+            String k = dia + "|" + f[1];
+            claves.putIfAbsent(k, new Object[]{dia, f[1]});
+            filas.computeIfAbsent(k, x -> new Suma()).sumarFactura(f);
+        }
+
+        Map<Long, String> logins = nombres("SELECT u.id, u.usuario FROM Usuario u WHERE u.id IN :ids",
+                claves.values().stream().map(c -> (Long) c[1]).collect(java.util.stream.Collectors.toSet()));
+        List<Map<String, Object>> out = new ArrayList<>(filas.size());
+        filas.forEach((k, s) -> {
+            if (s.facturas == 0) {
+                return;
+            }
+            Object[] c = claves.get(k);
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("fecha", c[0].toString());
+            row.put("usuario", logins.get((Long) c[1]));
+            row.put("facturas", s.facturas);
+            row.put("facturasConDescuento", s.facturasDescuento);
+            row.put("subtotal", s.subtotal);
+            row.put("descuento", s.descuento);
+            row.put("porcentaje", s.subtotal.signum() == 0 ? BigDecimal.ZERO
+                    : s.descuento.multiply(BigDecimal.valueOf(100)).divide(s.subtotal, 2, java.math.RoundingMode.HALF_UP));
+            out.add(row);
+        });
+        return out;
+    }
+
+    /** Sumas de facturas: cantidad, con descuento, subtotal, impuestos, descuento y total. */
+    private static final class Suma {
+        long facturas;
+        long facturasDescuento;
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal impuestoVenta = BigDecimal.ZERO;
+        BigDecimal impuestoServicio = BigDecimal.ZERO;
+        BigDecimal descuento = BigDecimal.ZERO;
+        BigDecimal total = BigDecimal.ZERO;
+
+        /** Suma una fila agregada a partir de la columna {@code i} (facturas ... total). */
+        void sumar(Object[] f, int i) {
+            facturas += ((Number) f[i]).longValue();
+            facturasDescuento += ((Number) f[i + 1]).longValue();
+            subtotal = subtotal.add(nz((BigDecimal) f[i + 2]));
+            impuestoVenta = impuestoVenta.add(nz((BigDecimal) f[i + 3]));
+            impuestoServicio = impuestoServicio.add(nz((BigDecimal) f[i + 4]));
+            descuento = descuento.add(nz((BigDecimal) f[i + 5]));
+            total = total.add(nz((BigDecimal) f[i + 6]));
+        }
+
+        /** Suma una fila de facturasRecientes (una factura). */
+        void sumarFactura(Object[] f) {
+            BigDecimal desc = nz((BigDecimal) f[7]);
+            facturas++;
+            facturasDescuento += desc.signum() > 0 ? 1 : 0;
+            subtotal = subtotal.add(nz((BigDecimal) f[4]));
+            impuestoVenta = impuestoVenta.add(nz((BigDecimal) f[5]));
+            impuestoServicio = impuestoServicio.add(nz((BigDecimal) f[6]));
+            descuento = descuento.add(desc);
+            total = total.add(nz((BigDecimal) f[8]));
+        }
+    }
+
+    /** Rango con los mismos valores por defecto del resto de reportes. */
+    private static LocalDate[] rango(LocalDate desde, LocalDate hasta) {
+        LocalDate d = (desde == null) ? LocalDate.now().withDayOfMonth(1) : desde;
+        LocalDate h = (hasta == null) ? LocalDate.now() : hasta;
+        return new LocalDate[]{d, h};
+    }
+
+    /** Parte del rango que ya está completa en las tablas por día, o null. */
+    private LocalDate[] tramoAgregado(LocalDate[] r) {
+        LocalDate ultimo = ventasHora.diaCorte().minusDays(1);
+        LocalDate h = r[1].isAfter(ultimo) ? ultimo : r[1];
+        return r[0].isAfter(h) ? null : new LocalDate[]{r[0], h};
+    }
+
+    /**
+     * Facturas activas de los días del rango que aún no están en las tablas por día.
+     * Columnas: fechaHora, usuarioId, saloneroId, clienteId (null si no hay),
+     * subtotal, impuestoVenta, impuestoServicio, descuento, total.
+     */
+    private List<Object[]> facturasRecientes(LocalDate[] r, Long usuarioId) {
+        LocalDate corte = ventasHora.diaCorte();
+        LocalDate d = r[0].isBefore(corte) ? corte : r[0];
+        if (d.isAfter(r[1])) {
+            return List.of();
+        }
+        TypedQuery<Object[]> q = em.createQuery(
+                "SELECT f.fechaHora, u.id, os.id, c.id, f.subtotal, f.impuestoVenta, "
+                + "f.impuestoServicio, f.descuento, f.total FROM Factura f JOIN f.usuario u "
+                + "LEFT JOIN f.cliente c LEFT JOIN f.orden o LEFT JOIN o.usuario os "
+                + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin AND f.estado = 'A' "
+                + (usuarioId != null ? "AND u.id = :u" : ""), Object[].class)
+                .setParameter("ini", d.atStartOfDay())
+                .setParameter("fin", r[1].plusDays(1).atStartOfDay());
+        if (usuarioId != null) {
+            q.setParameter("u", usuarioId);
+        }
+        return q.getResultList();
+    }
+
+    private Map<Long, String> nombres(String jpql, Collection<Long> ids) {
+        Map<Long, String> out = new HashMap<>();
+        if (!ids.isEmpty()) {
+            em.createQuery(jpql, Object[].class)
+                    .setParameter("ids", ids)
+                    .getResultList()
+                    .forEach(r -> out.put((Long) r[0], (String) r[1]));
+        }
+        return out;
+    }
+
     // ==============================
     // Auxiliares
     // ==============================
@@ -2,13 +2,17 @@ package cr.ac.una.wsrestuna.service;
 
 import cr.ac.una.wsrestuna.model.Mesa;
 import cr.ac.una.wsrestuna.model.Salon;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,11 +25,27 @@ public class SalonService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
+    @EJB
+    private ImagenAlmacenService almacen;
+
+    /**
+     * Salones ya revisados que no tienen imagen, para no leer su LOB en cada
+     * listado mientras se completa imagen_hash de los registros anteriores.
+     */
+    private static final Set<Long> SIN_IMAGEN = ConcurrentHashMap.newKeySet();
+
+    /** Imagen lista para servir: archivo del almacén o, si no se pudo escribir, los bytes. */
+    public record ImagenRef(String hash, String tipo, Path archivo, byte[] datos) {}
+
     public Salon create(Salon salon) {
         try {
             if (salon.getImagenMesaBytes() != null && salon.getImagenMesaBytes().length > 0) {
                 LOG.log(Level.INFO, "✅ Imagen recibida: {0} bytes",
                         salon.getImagenMesaBytes().length);
+                salon.setImagenHash(almacen.guardar(salon.getImagenMesaBytes()));
+            } else {
+                salon.setImagenMesaBytes(null);
+                salon.setImagenHash(null);
             }
 
             em.persist(salon);
@@ -40,9 +60,24 @@ public class SalonService {
 
     public Salon update(Salon salon) {
         try {
+            Salon actual = em.find(Salon.class, salon.getId());
             if (salon.getImagenMesaBytes() != null && salon.getImagenMesaBytes().length > 0) {
                 LOG.log(Level.INFO, "✅ Imagen presente en UPDATE: {0} bytes",
                         salon.getImagenMesaBytes().length);
+                salon.setImagenHash(almacen.guardar(salon.getImagenMesaBytes()));
+            } else if (salon.isQuitarImagen() || actual == null) {
+                salon.setImagenMesaBytes(null);
+                salon.setImagenHash(null);
+            } else {
+                // El JSON ya no trae la imagen (se descarga por imagenUrl): sin
+                // imagenMesa = "" explícito se conserva la que hay
+                byte[] conservada = actual.getImagenMesaBytes();
+                salon.setImagenMesaBytes(conservada);
+                salon.setImagenHash(conservada == null || conservada.length == 0 ? null
+                        : actual.getImagenHash() != null ? actual.getImagenHash() : almacen.guardar(conservada));
+                if (salon.getTipoImagen() == null) {
+                    salon.setTipoImagen(actual.getTipoImagen());
+                }
             }
 
             Salon merged = em.merge(salon);
@@ -93,7 +128,7 @@ public class SalonService {
     public List<Salon> findActivos() {
         try {
             TypedQuery<Salon> query = em.createNamedQuery("Salon.findActivos", Salon.class);
-            return query.getResultList();
+            return completarHashes(query.getResultList());
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al listar salones activos", e);
             throw new RuntimeException("Error al listar salones activos: " + e.getMessage());
@@ -103,7 +138,7 @@ public class SalonService {
     public List<Salon> findSalones() {
         try {
             TypedQuery<Salon> query = em.createNamedQuery("Salon.findSalones", Salon.class);
-            return query.getResultList();
+            return completarHashes(query.getResultList());
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al listar salones tipo SALON", e);
             throw new RuntimeException("Error al listar salones: " + e.getMessage());
@@ -115,6 +150,7 @@ public class SalonService {
             Salon salon = em.find(Salon.class, salonId);
             if (salon != null) {
                 salon.setImagenMesaBytes(imagen);
+                salon.setImagenHash(imagen == null || imagen.length == 0 ? null : almacen.guardar(imagen));
                 salon.setTipoImagen(tipoImagen);
                 em.merge(salon);
                 em.flush();
@@ -126,6 +162,75 @@ public class SalonService {
         }
     }
 
+    /**
+     * Imagen del salón para GET /salones/{id}/imagen. Lee solo hash y tipo;
+     * el LOB se consulta únicamente si falta el archivo o el hash.
+     */
+    public Optional<ImagenRef> imagen(Long salonId) {
+        try {
+            Optional<Object[]> fila = em.createQuery(
+                    "SELECT s.imagenHash, s.tipoImagen FROM Salon s WHERE s.id = :id", Object[].class)
+                    .setParameter("id", salonId)
+                    .getResultStream().findFirst();
+            if (fila.isEmpty()) {
+                return Optional.empty();
+            }
+            String hash = (String) fila.get()[0];
+            String tipo = (String) fila.get()[1];
+            Optional<Path> archivo = almacen.archivo(hash);
+            if (archivo.isPresent()) {
+                return Optional.of(new ImagenRef(hash, tipo, archivo.get(), null));
+            }
+
+            byte[] datos = em.createQuery("SELECT s.imagenMesaBytes FROM Salon s WHERE s.id = :id", byte[].class)
+                    .setParameter("id", salonId)
+                    .getSingleResult();
+            if (datos == null || datos.length == 0) {
+                return Optional.empty();
+            }
+            String nuevo = almacen.guardar(datos);
+            if (!nuevo.equals(hash)) {
+                actualizarHash(salonId, nuevo);
+            }
+            return Optional.of(new ImagenRef(nuevo, tipo, almacen.archivo(nuevo).orElse(null), datos));
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error al obtener imagen del salón", e);
+            throw new RuntimeException("Error al obtener imagen: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Completa imagen_hash de salones guardados antes de que existiera la
+     * columna. Cada salón se revisa una vez por ejecución.
+     */
+    private List<Salon> completarHashes(List<Salon> salones) {
+        for (Salon s : salones) {
+            if (s.getImagenHash() != null || s.getId() == null || SIN_IMAGEN.contains(s.getId())) {
+                continue;
+            }
+            byte[] datos = s.getImagenMesaBytes();
+            if (datos == null || datos.length == 0) {
+                SIN_IMAGEN.add(s.getId());
+                continue;
+            }
+            String hash = almacen.guardar(datos);
+            actualizarHash(s.getId(), hash);
+            // Separado para que el cambio no suba version al confirmar
+            em.detach(s);
+            s.setImagenHash(hash);
+        }
+        return salones;
+    }
+
+    /** UPDATE directo: no toca version, para no invalidar lo que tengan los clientes. */
+    private void actualizarHash(Long salonId, String hash) {
+        em.createQuery("UPDATE Salon s SET s.imagenHash = :h WHERE s.id = :id")
+                .setParameter("h", hash)
+                .setParameter("id", salonId)
+                .executeUpdate();
+        SIN_IMAGEN.remove(salonId);
+    }
+
     // ==================== GESTIÓN DE MESAS ====================
 
     public Mesa createMesa(Mesa mesa) {
@@ -195,14 +300,19 @@ public class SalonService {
         }
     }
 
+    /**
+     * Marca la mesa como OCUPADA con un UPDATE condicional (solo si estaba
+     * LIBRE), sin cargar ni mergear la entidad.
+     */
     public void ocuparMesa(Long mesaId) {
         try {
-            Mesa mesa = em.find(Mesa.class, mesaId);
-            if (mesa != null) {
-                mesa.ocupar();
-                em.merge(mesa);
-                em.flush();
-                LOG.log(Level.INFO, "Mesa ocupada: {0}", mesa.getIdentificador());
+            int filas = em.createQuery(
+                    "UPDATE Mesa m SET m.estado = 'OCUPADA', m.version = m.version + 1 "
+                    + "WHERE m.id = :id AND m.estado = 'LIBRE'")
+                    .setParameter("id", mesaId)
+                    .executeUpdate();
+            if (filas > 0) {
+                LOG.log(Level.INFO, "Mesa ocupada: {0}", mesaId);
             }
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al ocupar mesa", e);
@@ -210,14 +320,20 @@ public class SalonService {
         }
     }
 
+    /**
+     * Marca la mesa como LIBRE con un UPDATE condicional: solo si estaba
+     * OCUPADA y ya no le queda ninguna orden ABIERTA.
+     */
     public void liberarMesa(Long mesaId) {
         try {
-            Mesa mesa = em.find(Mesa.class, mesaId);
-            if (mesa != null) {
-                mesa.liberar();
-                em.merge(mesa);
-                em.flush();
-                LOG.log(Level.INFO, "Mesa liberada: {0}", mesa.getIdentificador());
+            int filas = em.createQuery(
+                    "UPDATE Mesa m SET m.estado = 'LIBRE', m.version = m.version + 1 "
+                    + "WHERE m.id = :id AND m.estado = 'OCUPADA' "
+                    + "AND NOT EXISTS (SELECT o FROM Orden o WHERE o.mesa.id = :id AND o.estado = 'ABIERTA')")
+                    .setParameter("id", mesaId)
+                    .executeUpdate();
+            if (filas > 0) {
+                LOG.log(Level.INFO, "Mesa liberada: {0}", mesaId);
             }
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al liberar mesa", e);
@@ -0,0 +1,143 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.util.PerfilSql;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registra en la sesión de EclipseLink un SessionEventListener que cuenta
+ * cada sentencia (preExecuteCall/postExecuteCall) en el {@link PerfilSql}
+ * de la petición.
+ *
+ * EclipseLink lo pone Payara y no está entre las dependencias de compilación
+ * (solo jakartaee-api), así que el listener es un Proxy sobre la interfaz
+ * cargada en tiempo de ejecución y los datos del evento se leen por
+ * reflexión. Si la clase no está (otro proveedor JPA) se avisa y la
+ * aplicación sigue sin perfil.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SqlPerfilService {
+
+    private static final Logger LOG = Logger.getLogger(SqlPerfilService.class.getName());
+
+    private static final String LISTENER = "org.eclipse.persistence.sessions.SessionEventListener";
+    private static final String JPA_EM = "org.eclipse.persistence.jpa.JpaEntityManager";
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    private Object eventos;
+    private Object listener;
+    private Class<?> tipoListener;
+
+    /** getCall/getResult del evento y getSQLString de la llamada, por clase. */
+    private final Map<String, Method> metodos = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            Object delegado = em.getDelegate();
+            ClassLoader cl = delegado.getClass().getClassLoader();
+            Class<?> jpaEm = Class.forName(JPA_EM, true, cl);
+            Object sesion = jpaEm.getMethod("getServerSession").invoke(em.unwrap(jpaEm));
+            eventos = sesion.getClass().getMethod("getEventManager").invoke(sesion);
+            tipoListener = Class.forName(LISTENER, true, cl);
+            listener = Proxy.newProxyInstance(cl, new Class<?>[]{tipoListener}, manejador());
+            eventos.getClass().getMethod("addListener", tipoListener).invoke(eventos, listener);
+            LOG.info("Perfil de SQL por petición activo");
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            LOG.log(Level.WARNING, "No se pudo registrar el perfil de SQL; las métricas de SQL quedan en cero", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (eventos == null) {
+            return;
+        }
+        try {
+            eventos.getClass().getMethod("removeListener", tipoListener).invoke(eventos, listener);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.log(Level.FINE, "No se pudo quitar el listener de SQL", e);
+        }
+    }
+
+    private InvocationHandler manejador() {
+        return (proxy, metodo, args) -> {
+            switch (metodo.getName()) {
+                case "preExecuteCall":
+                    PerfilSql.antes();
+                    return null;
+                case "postExecuteCall":
+                    if (PerfilSql.activo()) {
+                        registrar(args[0]);
+                    }
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SqlPerfilService.listener";
+                default:
+                    return null; // Los demás eventos de sesión no interesan
+            }
+        };
+    }
+
+    private void registrar(Object evento) {
+        String sql = null;
+        long filas = 0;
+        try {
+            Object llamada = invocar(evento, "getCall");
+            Object resultado = invocar(evento, "getResult");
+            if (llamada != null) {
+                Object s = invocar(llamada, "getSQLString");
+                sql = s != null ? s.toString() : null;
+            }
+            if (resultado instanceof Collection) {
+                filas = ((Collection<?>) resultado).size();
+            } else if (resultado instanceof Number) {
+                filas = ((Number) resultado).longValue();
+            } else if (resultado instanceof Map) {
+                filas = 1; // Un registro (consulta de un solo resultado)
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.log(Level.FINEST, "Evento de SQL sin datos", e);
+        }
+        PerfilSql.despues(sql, filas);
+    }
+
+    private Object invocar(Object obj, String nombre) throws ReflectiveOperationException {
+        Class<?> c = obj.getClass();
+        String clave = c.getName() + '#' + nombre;
+        Method m = metodos.get(clave);
+        if (m == null) {
+            try {
+                m = c.getMethod(nombre);
+            } catch (NoSuchMethodException e) {
+                return null; // Llamadas que no son SQL (p. ej. EIS) no tienen getSQLString
+            }
+            metodos.put(clave, m);
+        }
+        return m.invoke(obj);
+    }
+}
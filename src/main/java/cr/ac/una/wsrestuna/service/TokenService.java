@@ -0,0 +1,331 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.TokenRevocado;
+import cr.ac.una.wsrestuna.model.Usuario;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tokens de sesión firmados con HMAC-SHA256.
+ *
+ * El login emite un token con id, usuario, rol y estado; cada petición lo
+ * valida en memoria (firma en tiempo constante y vencimiento) sin consultar
+ * Usuario, así que cualquier nodo lo acepta mientras compartan
+ * {@code restuna.token.secreto}. Los tokens duran {@code restuna.token.minutos}
+ * (60 por defecto) y se pueden renovar hasta {@code restuna.token.maxHoras}
+ * (12) después del login.
+ *
+ * Las revocaciones (logout, cambio de clave, rol o estado) se guardan en
+ * token_revocado y se aplican de inmediato en el nodo que las hizo; los demás
+ * las leen cada 30 segundos. Mientras {@code restuna.token.requerido} sea
+ * false el token es opcional.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class TokenService {
+
+    private static final Logger LOG = Logger.getLogger(TokenService.class.getName());
+
+    /** Propiedad del request donde el filtro deja la {@link Sesion}. */
+    public static final String PROPIEDAD_SESION = "restuna.sesion";
+
+    private static final long TTL_SEG = Long.getLong("restuna.token.minutos", 60L) * 60L;
+    private static final boolean REQUERIDO = Boolean.getBoolean("restuna.token.requerido");
+    private static final long MAX_SESION_SEG = Long.getLong("restuna.token.maxHoras", 12L) * 3600L;
+    /** v2: emitido en milisegundos. */
+    private static final String VERSION = "v2";
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @Inject
+    private Event<Revocacion> revocaciones;
+
+    /**
+     * Datos de un token válido. login y expira en segundos; emitido en
+     * milisegundos para compararlo con el corte de {@link #revocarUsuario}
+     * sin que un login en el mismo segundo quede revocado.
+     */
+    public record Sesion(Long usuarioId, String usuario, String rol, String estado,
+                         long login, long emitido, long expira, String jti) {
+    }
+
+    /** Token firmado y su vencimiento (epoch en segundos). */
+    public record Emitido(String token, long expira) {
+    }
+
+    /** Revocación confirmada; se aplica al deny-list local tras el commit. */
+    public static class Revocacion {
+        private final Long usuarioId;
+        private final String jti;
+        private final long antesDe;
+        private final long expira;
+
+        Revocacion(Long usuarioId, String jti, long antesDe, long expira) {
+            this.usuarioId = usuarioId;
+            this.jti = jti;
+            this.antesDe = antesDe;
+            this.expira = expira;
+        }
+    }
+
+    /** Deny-list inmutable: se reemplaza completa al refrescar. */
+    private static final class Revocados {
+        /** jti -> vencimiento (segundos). */
+        final Map<String, Long> jtis;
+        /** usuario -> corte (milisegundos): se rechaza lo emitido hasta ese instante. */
+        final Map<Long, Long> antesDe;
+
+        Revocados(Map<String, Long> jtis, Map<Long, Long> antesDe) {
+            this.jtis = jtis;
+            this.antesDe = antesDe;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private SecretKeySpec clave;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::nuevoMac);
+    private volatile Revocados revocados = new Revocados(Map.of(), Map.of());
+
+    @PostConstruct
+    public void init() {
+        String secreto = System.getProperty("restuna.token.secreto");
+        byte[] bytes;
+        if (secreto == null || secreto.isBlank()) {
+            bytes = new byte[32];
+            random.nextBytes(bytes);
+            LOG.warning("restuna.token.secreto no está definido: se usa una clave aleatoria "
+                    + "y los tokens solo valen en este nodo hasta reiniciar");
+        } else {
+            bytes = secreto.getBytes(StandardCharsets.UTF_8);
+        }
+        clave = new SecretKeySpec(bytes, "HmacSHA256");
+        refrescar();
+    }
+
+    /**
+     * Si es true, toda petición fuera del login necesita token. Por defecto
+     * false: los clientes que todavía no mandan Authorization siguen funcionando.
+     */
+    public boolean isRequerido() {
+        return REQUERIDO;
+    }
+
+    /** Token para un usuario recién autenticado. */
+    public Emitido emitir(Usuario u) {
+        long ms = System.currentTimeMillis();
+        long ahora = ms / 1000L;
+        return firmar(new Sesion(u.getId(), u.getUsuario(), u.getRol(), u.getEstado(),
+                ahora, ms, ahora + TTL_SEG, nuevoJti()));
+    }
+
+    /**
+     * Token nuevo con los mismos datos, si la sesión original no pasó de
+     * {@code restuna.token.maxHoras}. No consulta la BD: la revocación cubre
+     * los cambios de rol o estado.
+     */
+    public Optional<Emitido> renovar(Sesion s) {
+        long ms = System.currentTimeMillis();
+        long ahora = ms / 1000L;
+        if (ahora - s.login() > MAX_SESION_SEG) {
+            return Optional.empty();
+        }
+        return Optional.of(firmar(new Sesion(s.usuarioId(), s.usuario(), s.rol(), s.estado(),
+                s.login(), ms, Math.min(ahora + TTL_SEG, s.login() + MAX_SESION_SEG), nuevoJti())));
+    }
+
+    /**
+     * Valida firma, vencimiento, estado y revocaciones. Solo memoria.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Optional<Sesion> validar(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        int punto = token.indexOf('.');
+        if (punto <= 0 || punto == token.length() - 1) {
+            return Optional.empty();
+        }
+        byte[] datos = token.substring(0, punto).getBytes(StandardCharsets.US_ASCII);
+        byte[] firma;
+        try {
+            firma = Base64.getUrlDecoder().decode(token.substring(punto + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(firma, macs.get().doFinal(datos))) {
+            return Optional.empty();
+        }
+
+        Sesion s;
+        try {
+            String[] p = new String(Base64.getUrlDecoder().decode(datos), StandardCharsets.UTF_8).split("\\|", 9);
+            if (p.length != 9 || !VERSION.equals(p[0])) {
+                return Optional.empty();
+            }
+            s = new Sesion(Long.valueOf(p[1]), p[8], p[2], p[3],
+                    Long.parseLong(p[4]), Long.parseLong(p[5]), Long.parseLong(p[6]), p[7]);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+
+        if (s.expira() <= Instant.now().getEpochSecond() || !"A".equals(s.estado())) {
+            return Optional.empty();
+        }
+        Revocados r = revocados;
+        Long corte = r.antesDe.get(s.usuarioId());
+        if (r.jtis.containsKey(s.jti()) || (corte != null && s.emitido() <= corte)) {
+            return Optional.empty();
+        }
+        return Optional.of(s);
+    }
+
+    /** Logout: revoca solo este token. */
+    public void revocar(Sesion s) {
+        em.persist(new TokenRevocado(s.usuarioId(), s.jti(), null, fecha(s.expira())));
+        revocaciones.fire(new Revocacion(s.usuarioId(), s.jti(), 0L, s.expira()));
+    }
+
+    /**
+     * Revoca todos los tokens del usuario emitidos hasta ahora (cambio de
+     * clave, rol o estado). Se une a la transacción de quien llama.
+     */
+    public void revocarUsuario(Long usuarioId) {
+        long ms = System.currentTimeMillis();
+        long expira = ms / 1000L + Math.max(TTL_SEG, 1L);
+        em.persist(new TokenRevocado(usuarioId, null,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault()), fecha(expira)));
+        revocaciones.fire(new Revocacion(usuarioId, null, ms, expira));
+    }
+
+    public void onRevocacion(@Observes(during = TransactionPhase.AFTER_SUCCESS) Revocacion r) {
+        synchronized (this) {
+            Revocados actual = revocados;
+            Map<String, Long> jtis = new HashMap<>(actual.jtis);
+            Map<Long, Long> antesDe = new HashMap<>(actual.antesDe);
+            if (r.jti != null) {
+                jtis.put(r.jti, r.expira);
+            } else {
+                antesDe.merge(r.usuarioId, r.antesDe, Math::max);
+            }
+            revocados = new Revocados(jtis, antesDe);
+        }
+    }
+
+    /** Relee las revocaciones vigentes (las de otros nodos incluidas). */
+    @Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+    public void refrescar() {
+        try {
+            LocalDateTime ahora = LocalDateTime.now();
+            Map<String, Long> jtis = new HashMap<>();
+            Map<Long, Long> antesDe = new HashMap<>();
+            for (TokenRevocado t : em.createNamedQuery("TokenRevocado.findVigentes", TokenRevocado.class)
+                    .setParameter("ahora", ahora)
+                    .getResultList()) {
+                if (t.getJti() != null) {
+                    jtis.put(t.getJti(), segundos(t.getExpira()));
+                } else if (t.getAntesDe() != null) {
+                    antesDe.merge(t.getUsuarioId(), milisegundos(t.getAntesDe()), Math::max);
+                }
+            }
+            synchronized (this) {
+                // Lo revocado aquí y todavía no visible en la consulta se conserva
+                long ms = System.currentTimeMillis();
+                long seg = ms / 1000L;
+                revocados.jtis.forEach((k, v) -> {
+                    if (v > seg) {
+                        jtis.putIfAbsent(k, v);
+                    }
+                });
+                revocados.antesDe.forEach((k, v) -> {
+                    if (v + TTL_SEG * 1000L > ms) {
+                        antesDe.merge(k, v, Math::max);
+                    }
+                });
+                revocados = new Revocados(jtis, antesDe);
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "No se pudo refrescar la lista de tokens revocados", e);
+        }
+    }
+
+    @Schedule(hour = "*", minute = "17", persistent = false)
+    public void purgar() {
+        try {
+            int n = em.createNamedQuery("TokenRevocado.deleteVencidos")
+                    .setParameter("ahora", LocalDateTime.now())
+                    .executeUpdate();
+            LOG.log(Level.FINE, "Revocaciones vencidas borradas: {0}", n);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "No se pudieron purgar las revocaciones vencidas", e);
+        }
+    }
+
+    private Emitido firmar(Sesion s) {
+        String datos = String.join("|", VERSION, String.valueOf(s.usuarioId()), s.rol(), s.estado(),
+                String.valueOf(s.login()), String.valueOf(s.emitido()), String.valueOf(s.expira()),
+                s.jti(), s.usuario());
+        String cuerpo = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(datos.getBytes(StandardCharsets.UTF_8));
+        byte[] firma = macs.get().doFinal(cuerpo.getBytes(StandardCharsets.US_ASCII));
+        return new Emitido(cuerpo + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(firma), s.expira());
+    }
+
+    private String nuevoJti() {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        return HexFormat.of().formatHex(b);
+    }
+
+    private Mac nuevoMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(clave);
+            return mac;
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    }
+
+    private static LocalDateTime fecha(long epochSeg) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeg), ZoneId.systemDefault());
+    }
+
+    private static long segundos(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static long milisegundos(LocalDateTime fecha) {
+        return fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
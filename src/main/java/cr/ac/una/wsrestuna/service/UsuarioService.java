@@ -1,6 +1,7 @@
 package cr.ac.una.wsrestuna.service;
 
 import cr.ac.una.wsrestuna.model.Usuario;
+import jakarta.ejb.EJB;
 import jakarta.ejb.LocalBean;
 import jakarta.ejb.Stateless;
 import jakarta.persistence.EntityManager;
@@ -8,13 +9,11 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-// ⬇️ IMPORT del hasheo (jBCrypt)
-import org.mindrot.jbcrypt.BCrypt;
-
 /**
  * Servicio para gestión de usuarios
  */
@@ -27,23 +26,20 @@ public class UsuarioService {
     @PersistenceContext(unitName = "WsRestUNA")
     private EntityManager em;
 
-    /** Genera un hash BCrypt con factor de costo 12. */
+    @EJB
+    private TokenService tokenService;
+
+    @EJB
+    private ClaveService claveService;
+
+    /** Genera un hash BCrypt con el costo calibrado (ver {@link ClaveService}). */
     private String hashPassword(String plain) {
-        if (plain == null || plain.isBlank()) {
-            throw new IllegalArgumentException("La contraseña es obligatoria.");
-        }
-        return BCrypt.hashpw(plain, BCrypt.gensalt(12));
+        return claveService.hash(plain);
     }
 
     /** Verifica texto plano contra un hash BCrypt. */
     private boolean verifyPassword(String plain, String hash) {
-        if (plain == null || hash == null || hash.isBlank()) return false;
-        try {
-            return BCrypt.checkpw(plain, hash);
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, "Hash inválido en BD o error verificando contraseña", e);
-            return false;
-        }
+        return claveService.verificar(plain, hash);
     }
 
     /** Detecta si una cadena parece un hash BCrypt válido. */
@@ -71,6 +67,8 @@ public class UsuarioService {
             em.flush();
             LOG.log(Level.INFO, "Usuario creado: {0}", usuario.getUsuario());
             return usuario;
+        } catch (ClaveService.Saturado e) {
+            throw e;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al crear usuario", e);
             throw new RuntimeException("Error al crear usuario: " + e.getMessage());
@@ -82,13 +80,19 @@ public class UsuarioService {
      */
     public Usuario update(Usuario usuario) {
         try {
+            Usuario original = em.find(Usuario.class, usuario.getId());
+            // Los tokens llevan rol y estado: si cambian, o cambia la clave, se revocan
+            boolean revocar = original != null
+                    && (!Objects.equals(original.getRol(), usuario.getRol())
+                        || !Objects.equals(original.getEstado(), usuario.getEstado()));
+
             // Si no envían clave nueva, conservar el hash actual
             if (usuario.getClave() == null || usuario.getClave().isBlank()) {
-                Usuario original = em.find(Usuario.class, usuario.getId());
                 if (original != null) {
                     usuario.setClave(original.getClave());
                 }
             } else {
+                revocar = original != null;
                 // Si viene clave nueva en claro, hashearla
                 if (!isBcrypt(usuario.getClave())) {
                     usuario.setClave(hashPassword(usuario.getClave()));
@@ -97,8 +101,13 @@ public class UsuarioService {
 
             Usuario merged = em.merge(usuario);
             em.flush();
+            if (revocar) {
+                tokenService.revocarUsuario(merged.getId());
+            }
             LOG.log(Level.INFO, "Usuario actualizado: {0}", usuario.getUsuario());
             return merged;
+        } catch (ClaveService.Saturado e) {
+            throw e;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al actualizar usuario", e);
             throw new RuntimeException("Error al actualizar usuario: " + e.getMessage());
@@ -115,6 +124,7 @@ public class UsuarioService {
                 usuario.setEstado("I");
                 em.merge(usuario);
                 em.flush();
+                tokenService.revocarUsuario(id);
                 LOG.log(Level.INFO, "Usuario desactivado: {0}", id);
             }
         } catch (Exception e) {
@@ -163,6 +173,16 @@ public class UsuarioService {
                 Usuario u = usuarioOpt.get();
                 boolean ok = verifyPassword(clave, u.getClave());
                 if (ok && "A".equals(u.getEstado())) {
+                    // El hash tiene un costo menor que el calibrado: se aprovecha la clave en claro para rehacer el hash
+                    if (claveService.requiereRehash(u.getClave())) {
+                        try {
+                            u.setClave(hashPassword(clave));
+                            em.flush();
+                            claveService.registrarRehash();
+                        } catch (ClaveService.Saturado e) {
+                            LOG.log(Level.FINE, "Rehash pospuesto por carga: {0}", usuario);
+                        }
+                    }
                     LOG.log(Level.INFO, "Usuario autenticado: {0}", usuario);
                     return Optional.of(u);
                 }
@@ -170,6 +190,8 @@ public class UsuarioService {
 
             LOG.log(Level.WARNING, "Autenticación fallida para: {0}", usuario);
             return Optional.empty();
+        } catch (ClaveService.Saturado e) {
+            throw e;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error en autenticación", e);
             return Optional.empty();
@@ -244,11 +266,14 @@ public class UsuarioService {
                 usuario.setClave(hashPassword(claveNueva));
                 em.merge(usuario);
                 em.flush();
+                tokenService.revocarUsuario(usuarioId);
                 LOG.log(Level.INFO, "Contraseña cambiada: {0}", usuario.getUsuario());
                 return true;
             }
 
             return false;
+        } catch (ClaveService.Saturado e) {
+            throw e;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error al cambiar contraseña", e);
             return false;
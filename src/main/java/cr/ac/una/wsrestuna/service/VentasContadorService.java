@@ -0,0 +1,209 @@
+package cr.ac.una.wsrestuna.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionManagement;
+import jakarta.ejb.TransactionManagementType;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.UserTransaction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Contadores de ventas por producto y por grupo (columna total_ventas).
+ *
+ * Antes cada línea de factura hacía find + merge sobre el Producto y su
+ * GrupoProducto, y todas las cajas se peleaban las mismas filas versionadas.
+ * Ahora FacturaService dispara un {@link Ventas} con las cantidades y aquí,
+ * después del commit, solo se suman en un LongAdder por id. Cada 15 segundos
+ * (y al apagar) se escriben los acumulados con un UPDATE total_ventas =
+ * total_ventas + delta por fila, sin tocar version. Los grupos se derivan de
+ * los productos al momento de escribir.
+ *
+ * Lo acumulado se descuenta solo después de que el commit de la escritura
+ * tuvo éxito; si falla, queda para el próximo intento.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+public class VentasContadorService {
+
+    private static final Logger LOG = Logger.getLogger(VentasContadorService.class.getName());
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @Resource
+    private UserTransaction utx;
+
+    @Inject
+    private Event<CatalogoService.Cambio> cambios;
+
+    @Inject
+    private Event<Escritas> escritas;
+
+    private final ConcurrentHashMap<Long, LongAdder> productos = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, LongAdder> grupos = new ConcurrentHashMap<>();
+
+    /**
+     * Cantidades vendidas por producto en una transacción. Negativas al anular.
+     */
+    public static class Ventas {
+        private final Map<Long, Long> cantidades;
+
+        public Ventas(Map<Long, Long> cantidades) {
+            this.cantidades = Collections.unmodifiableMap(cantidades);
+        }
+
+        public Map<Long, Long> getCantidades() { return cantidades; }
+    }
+
+    /**
+     * Deltas de total_ventas por producto que se acaban de escribir; se
+     * dispara dentro de la transacción de {@link #flush()}.
+     */
+    public static class Escritas {
+        private final Map<Long, Long> productos;
+
+        public Escritas(Map<Long, Long> productos) {
+            this.productos = Collections.unmodifiableMap(productos);
+        }
+
+        public Map<Long, Long> getProductos() { return productos; }
+    }
+
+    /**
+     * Suma las ventas de una factura confirmada (o las resta si se anuló).
+     */
+    public void onVentas(@Observes(during = TransactionPhase.AFTER_SUCCESS) Ventas ventas) {
+        ventas.getCantidades().forEach(this::registrarProducto);
+    }
+
+    public void registrarProducto(Long productoId, long cantidad) {
+        if (productoId != null && cantidad != 0) {
+            productos.computeIfAbsent(productoId, k -> new LongAdder()).add(cantidad);
+        }
+    }
+
+    public void registrarGrupo(Long grupoId, long cantidad) {
+        if (grupoId != null && cantidad != 0) {
+            grupos.computeIfAbsent(grupoId, k -> new LongAdder()).add(cantidad);
+        }
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+    public void flushProgramado() {
+        flush();
+    }
+
+    @PreDestroy
+    public void alApagar() {
+        flush();
+    }
+
+    /**
+     * Escribe en BD lo acumulado desde la última escritura.
+     */
+    public synchronized void flush() {
+        Map<Long, Long> deltaProductos = pendientes(productos);
+        Map<Long, Long> deltaGrupos = pendientes(grupos);
+        if (deltaProductos.isEmpty() && deltaGrupos.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> totalGrupos = new HashMap<>(deltaGrupos);
+        try {
+            utx.begin();
+
+            if (!deltaProductos.isEmpty()) {
+                for (Object[] r : em.createQuery(
+                        "SELECT p.id, p.grupo.id FROM Producto p WHERE p.id IN :ids", Object[].class)
+                        .setParameter("ids", deltaProductos.keySet())
+                        .getResultList()) {
+                    if (r[1] != null) {
+                        totalGrupos.merge((Long) r[1], deltaProductos.get((Long) r[0]), Long::sum);
+                    }
+                }
+            }
+
+            for (Map.Entry<Long, Long> e : deltaProductos.entrySet()) {
+                em.createQuery("UPDATE Producto p SET p.totalVentas = p.totalVentas + :delta WHERE p.id = :id")
+                        .setParameter("delta", e.getValue())
+                        .setParameter("id", e.getKey())
+                        .executeUpdate();
+            }
+            for (Map.Entry<Long, Long> e : totalGrupos.entrySet()) {
+                if (e.getValue() != 0) {
+                    em.createQuery("UPDATE GrupoProducto g SET g.totalVentas = g.totalVentas + :delta WHERE g.id = :id")
+                            .setParameter("delta", e.getValue())
+                            .setParameter("id", e.getKey())
+                            .executeUpdate();
+                }
+            }
+
+            cambios.fire(CatalogoService.Cambio.VENTAS);
+            if (!deltaProductos.isEmpty()) {
+                escritas.fire(new Escritas(deltaProductos));
+            }
+            utx.commit();
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "No se pudieron escribir los contadores de ventas; se reintenta luego", e);
+            try {
+                utx.rollback();
+            } catch (Exception ex) {
+                LOG.log(Level.FINE, "Rollback de contadores de ventas", ex);
+            }
+            return;
+        }
+
+        descontar(productos, deltaProductos);
+        descontar(grupos, deltaGrupos);
+        LOG.log(Level.FINE, "Contadores de ventas escritos: {0} productos, {1} grupos",
+                new Object[]{deltaProductos.size(), totalGrupos.size()});
+    }
+
+    /**
+     * Ejecuta {@code lectura} sin que se confirme una escritura en medio: quien
+     * lee total_ventas y luego aplica {@link Escritas} no cuenta dos veces.
+     */
+    public synchronized <T> T sinEscrituras(Supplier<T> lectura) {
+        return lectura.get();
+    }
+
+    private static Map<Long, Long> pendientes(ConcurrentHashMap<Long, LongAdder> contadores) {
+        Map<Long, Long> delta = new HashMap<>();
+        contadores.forEach((id, adder) -> {
+            long v = adder.sum();
+            if (v != 0) {
+                delta.put(id, v);
+            }
+        });
+        return delta;
+    }
+
+    /**
+     * Resta lo ya escrito; lo que llegó entre medio queda para la próxima vez.
+     */
+    private static void descontar(ConcurrentHashMap<Long, LongAdder> contadores, Map<Long, Long> escrito) {
+        escrito.forEach((id, v) -> contadores.get(id).add(-v));
+    }
+}
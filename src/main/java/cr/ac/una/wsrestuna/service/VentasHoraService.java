@@ -0,0 +1,573 @@
+package cr.ac.una.wsrestuna.service;
+
+import cr.ac.una.wsrestuna.model.DetalleFactura;
+import cr.ac.una.wsrestuna.model.Factura;
+import cr.ac.una.wsrestuna.model.Orden;
+import cr.ac.una.wsrestuna.model.VentaDia;
+import cr.ac.una.wsrestuna.model.VentaDiaCliente;
+import cr.ac.una.wsrestuna.model.VentaHora;
+import cr.ac.una.wsrestuna.model.VentaHoraProducto;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.LocalBean;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ventas pre-agregadas por hora (tablas ventas_hora y ventas_hora_producto) y
+ * por día (ventas_dia y ventas_dia_cliente).
+ *
+ * Mantenimiento: FacturaService dispara un {@link Movimiento} al crear o anular
+ * una factura y aquí se aplica con UPDATE relativo (o INSERT si la fila aún no
+ * existe) dentro de la misma transacción: si la factura hace commit, el
+ * agregado también, y una caída no deja ventas sin contar. {@link #reconstruir}
+ * recalcula días completos desde las facturas (carga inicial o corrección).
+ *
+ * Consultas: para las horas completas anteriores a {@link #corte()} se lee el
+ * agregado; los bordes del rango y la hora en curso se leen de las facturas.
+ * El resultado es el mismo que consultar solo las facturas.
+ */
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class VentasHoraService {
+
+    private static final Logger LOG = Logger.getLogger(VentasHoraService.class.getName());
+
+    /** Valor de las dimensiones vacías (sin orden, sin mesa). */
+    static final Long NINGUNO = 0L;
+
+    @PersistenceContext(unitName = "WsRestUNA")
+    private EntityManager em;
+
+    @Resource
+    private SessionContext ctx;
+
+    @Inject
+    private Event<ReporteCacheService.Cambio> cambiosReportes;
+
+    /**
+     * Una factura creada (signo 1) o anulada (signo -1), con los montos ya con signo.
+     */
+    public static class Movimiento {
+        private final LocalDateTime hora;
+        private final Long usuarioId;
+        private final Long saloneroId;
+        private final Long salonId;
+        private final Long clienteId;
+        private final int facturas;
+        private final int facturasDescuento;
+        private final BigDecimal subtotal;
+        private final BigDecimal impuestoVenta;
+        private final BigDecimal impuestoServicio;
+        private final BigDecimal descuento;
+        private final BigDecimal total;
+        private final Map<Long, Cantidades> lineas;
+
+        private Movimiento(Factura f, int signo) {
+            BigDecimal s = BigDecimal.valueOf(signo);
+            Orden o = f.getOrden();
+            this.hora = hora(f.getFechaHora() != null ? f.getFechaHora() : LocalDateTime.now());
+            this.usuarioId = f.getUsuario() != null ? f.getUsuario().getId() : NINGUNO;
+            this.saloneroId = o != null && o.getUsuario() != null ? o.getUsuario().getId() : NINGUNO;
+            this.salonId = o != null && o.getMesa() != null && o.getMesa().getSalon() != null
+                    ? o.getMesa().getSalon().getId() : NINGUNO;
+            this.clienteId = f.getCliente() != null ? f.getCliente().getId() : NINGUNO;
+            this.facturas = signo;
+            this.facturasDescuento = nz(f.getDescuento()).signum() > 0 ? signo : 0;
+            this.subtotal = nz(f.getSubtotal()).multiply(s);
+            this.impuestoVenta = nz(f.getImpuestoVenta()).multiply(s);
+            this.impuestoServicio = nz(f.getImpuestoServicio()).multiply(s);
+            this.descuento = nz(f.getDescuento()).multiply(s);
+            this.total = nz(f.getTotal()).multiply(s);
+
+            Map<Long, Cantidades> l = new HashMap<>();
+            for (DetalleFactura d : f.getDetalles()) {
+                l.computeIfAbsent(d.getProducto().getId(), k -> new Cantidades())
+                        .sumar((long) signo * d.getCantidad(), nz(d.getSubtotal()).multiply(s));
+            }
+            this.lineas = Collections.unmodifiableMap(l);
+        }
+
+        public static Movimiento de(Factura factura, int signo) {
+            return new Movimiento(factura, signo);
+        }
+    }
+
+    /** Clave de ventas_hora. */
+    private record ClaveFactura(LocalDateTime hora, Long usuarioId, Long saloneroId, Long salonId) {}
+
+    /** Clave de ventas_hora_producto (sin grupo: se resuelve al escribir). */
+    private record ClaveProducto(LocalDateTime hora, Long productoId, Long usuarioId, Long salonId) {}
+
+    /** Clave de ventas_dia. */
+    private record ClaveDia(LocalDate dia, Long usuarioId, Long saloneroId) {}
+
+    /** Clave de ventas_dia_cliente. */
+    private record ClaveCliente(LocalDate dia, Long clienteId) {}
+
+    /** Acumulado de ventas_hora, ventas_dia y ventas_dia_cliente (cada tabla usa lo suyo). */
+    private static final class Montos {
+        long facturas;
+        long facturasDescuento;
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal impuestoVenta = BigDecimal.ZERO;
+        BigDecimal impuestoServicio = BigDecimal.ZERO;
+        BigDecimal descuento = BigDecimal.ZERO;
+        BigDecimal total = BigDecimal.ZERO;
+
+        void sumar(long n, long nd, BigDecimal sub, BigDecimal iv, BigDecimal is, BigDecimal desc, BigDecimal tot) {
+            facturas += n;
+            facturasDescuento += nd;
+            subtotal = subtotal.add(sub);
+            impuestoVenta = impuestoVenta.add(iv);
+            impuestoServicio = impuestoServicio.add(is);
+            descuento = descuento.add(desc);
+            total = total.add(tot);
+        }
+
+        void sumar(Montos o) {
+            sumar(o.facturas, o.facturasDescuento, o.subtotal, o.impuestoVenta, o.impuestoServicio, o.descuento, o.total);
+        }
+
+        void sumar(Movimiento m) {
+            sumar(m.facturas, m.facturasDescuento, m.subtotal, m.impuestoVenta, m.impuestoServicio, m.descuento, m.total);
+        }
+    }
+
+    /** Acumulado de ventas_hora_producto. */
+    private static final class Cantidades {
+        long cantidad;
+        BigDecimal subtotal = BigDecimal.ZERO;
+
+        void sumar(long c, BigDecimal s) {
+            cantidad += c;
+            subtotal = subtotal.add(s);
+        }
+    }
+
+    // ==============================
+    // MANTENIMIENTO
+    // ==============================
+
+    /**
+     * Aplica una factura a los agregados en la transacción que la crea o la
+     * anula. Las filas se actualizan siempre en el mismo orden (tabla y
+     * producto) para que dos facturas concurrentes no se bloqueen en cruz.
+     */
+    @TransactionAttribute(TransactionAttributeType.MANDATORY)
+    public void onMovimiento(@Observes Movimiento m) {
+        // Primero la factura: así su fila queda bloqueada antes que las del
+        // agregado, en el mismo orden que usa reconstruirRango
+        em.flush();
+        Montos montos = new Montos();
+        montos.sumar(m);
+        escribir(new ClaveFactura(m.hora, m.usuarioId, m.saloneroId, m.salonId), montos);
+
+        List<ClaveProducto> sinFila = new ArrayList<>();
+        for (Map.Entry<Long, Cantidades> l : new TreeMap<>(m.lineas).entrySet()) {
+            ClaveProducto k = new ClaveProducto(m.hora, l.getKey(), m.usuarioId, m.salonId);
+            if (!actualizar(k, l.getValue())) {
+                sinFila.add(k);
+            }
+        }
+        if (!sinFila.isEmpty()) {
+            Map<Long, Long> grupos = gruposDe(sinFila.stream().map(ClaveProducto::productoId).toList());
+            for (ClaveProducto k : sinFila) {
+                insertar(k, grupos.getOrDefault(k.productoId(), NINGUNO), m.lineas.get(k.productoId()));
+            }
+        }
+
+        escribir(new ClaveDia(m.hora.toLocalDate(), m.usuarioId, m.saloneroId), montos);
+        if (!NINGUNO.equals(m.clienteId)) {
+            escribir(new ClaveCliente(m.hora.toLocalDate(), m.clienteId), montos);
+        }
+    }
+
+    private void escribir(ClaveFactura k, Montos m) {
+        int filas = em.createQuery(
+                "UPDATE VentaHora v SET v.facturas = v.facturas + :n, v.subtotal = v.subtotal + :sub, "
+                + "v.impuestoVenta = v.impuestoVenta + :iv, v.impuestoServicio = v.impuestoServicio + :is, "
+                + "v.descuento = v.descuento + :desc, v.total = v.total + :tot "
+                + "WHERE v.hora = :hora AND v.usuarioId = :u AND v.saloneroId = :sl AND v.salonId = :sa")
+                .setParameter("n", m.facturas)
+                .setParameter("sub", m.subtotal)
+                .setParameter("iv", m.impuestoVenta)
+                .setParameter("is", m.impuestoServicio)
+                .setParameter("desc", m.descuento)
+                .setParameter("tot", m.total)
+                .setParameter("hora", k.hora())
+                .setParameter("u", k.usuarioId())
+                .setParameter("sl", k.saloneroId())
+                .setParameter("sa", k.salonId())
+                .executeUpdate();
+        if (filas == 0) {
+            VentaHora v = new VentaHora(k.hora(), k.usuarioId(), k.saloneroId(), k.salonId());
+            v.setFacturas(m.facturas);
+            v.setSubtotal(m.subtotal);
+            v.setImpuestoVenta(m.impuestoVenta);
+            v.setImpuestoServicio(m.impuestoServicio);
+            v.setDescuento(m.descuento);
+            v.setTotal(m.total);
+            em.persist(v);
+        }
+    }
+
+    /** UPDATE relativo de ventas_hora_producto; false si la fila todavía no existe. */
+    private boolean actualizar(ClaveProducto k, Cantidades c) {
+        return em.createQuery(
+                "UPDATE VentaHoraProducto v SET v.cantidad = v.cantidad + :c, v.subtotal = v.subtotal + :sub "
+                + "WHERE v.hora = :hora AND v.productoId = :p AND v.usuarioId = :u AND v.salonId = :sa")
+                .setParameter("c", c.cantidad)
+                .setParameter("sub", c.subtotal)
+                .setParameter("hora", k.hora())
+                .setParameter("p", k.productoId())
+                .setParameter("u", k.usuarioId())
+                .setParameter("sa", k.salonId())
+                .executeUpdate() > 0;
+    }
+
+    private void insertar(ClaveProducto k, Long grupoId, Cantidades c) {
+        VentaHoraProducto v = new VentaHoraProducto(k.hora(), k.productoId(), grupoId, k.usuarioId(), k.salonId());
+        v.setCantidad(c.cantidad);
+        v.setSubtotal(c.subtotal);
+        em.persist(v);
+    }
+
+    private void escribir(ClaveDia k, Montos m) {
+        int filas = em.createQuery(
+                "UPDATE VentaDia v SET v.facturas = v.facturas + :n, v.facturasDescuento = v.facturasDescuento + :nd, "
+                + "v.subtotal = v.subtotal + :sub, v.impuestoVenta = v.impuestoVenta + :iv, "
+                + "v.impuestoServicio = v.impuestoServicio + :is, v.descuento = v.descuento + :desc, "
+                + "v.total = v.total + :tot "
+                + "WHERE v.dia = :dia AND v.usuarioId = :u AND v.saloneroId = :sl")
+                .setParameter("n", m.facturas)
+                .setParameter("nd", m.facturasDescuento)
+                .setParameter("sub", m.subtotal)
+                .setParameter("iv", m.impuestoVenta)
+                .setParameter("is", m.impuestoServicio)
+                .setParameter("desc", m.descuento)
+                .setParameter("tot", m.total)
+                .setParameter("dia", k.dia())
+                .setParameter("u", k.usuarioId())
+                .setParameter("sl", k.saloneroId())
+                .executeUpdate();
+        if (filas == 0) {
+            VentaDia v = new VentaDia(k.dia(), k.usuarioId(), k.saloneroId());
+            v.setFacturas(m.facturas);
+            v.setFacturasDescuento(m.facturasDescuento);
+            v.setSubtotal(m.subtotal);
+            v.setImpuestoVenta(m.impuestoVenta);
+            v.setImpuestoServicio(m.impuestoServicio);
+            v.setDescuento(m.descuento);
+            v.setTotal(m.total);
+            em.persist(v);
+        }
+    }
+
+    private void escribir(ClaveCliente k, Montos m) {
+        int filas = em.createQuery(
+                "UPDATE VentaDiaCliente v SET v.facturas = v.facturas + :n, v.descuento = v.descuento + :desc, "
+                + "v.total = v.total + :tot WHERE v.dia = :dia AND v.clienteId = :c")
+                .setParameter("n", m.facturas)
+                .setParameter("desc", m.descuento)
+                .setParameter("tot", m.total)
+                .setParameter("dia", k.dia())
+                .setParameter("c", k.clienteId())
+                .executeUpdate();
+        if (filas == 0) {
+            VentaDiaCliente v = new VentaDiaCliente(k.dia(), k.clienteId());
+            v.setFacturas(m.facturas);
+            v.setDescuento(m.descuento);
+            v.setTotal(m.total);
+            em.persist(v);
+        }
+    }
+
+    private Map<Long, Long> gruposDe(List<Long> productoIds) {
+        Map<Long, Long> grupos = new HashMap<>();
+        if (!productoIds.isEmpty()) {
+            for (Object[] r : em.createQuery(
+                    "SELECT p.id, p.grupo.id FROM Producto p WHERE p.id IN :ids", Object[].class)
+                    .setParameter("ids", productoIds)
+                    .getResultList()) {
+                grupos.put((Long) r[0], r[1] != null ? (Long) r[1] : NINGUNO);
+            }
+        }
+        return grupos;
+    }
+
+    /**
+     * Recalcula los días indicados desde las facturas activas, un día por transacción.
+     * Solo llega hasta {@link #corte()}: la hora en curso se lee siempre de las
+     * facturas, y las tablas por día solo se recalculan para días completos.
+     *
+     * @return cantidad de filas escritas en ventas_hora
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public synchronized int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("Rango de fechas inválido");
+        }
+        VentasHoraService self = ctx.getBusinessObject(VentasHoraService.class);
+        LocalDateTime corte = corte();
+        int filas = 0;
+        for (LocalDate dia = desde; !dia.isAfter(hasta); dia = dia.plusDays(1)) {
+            LocalDateTime ini = dia.atStartOfDay();
+            LocalDateTime fin = dia.plusDays(1).atStartOfDay();
+            if (fin.isAfter(corte)) {
+                fin = corte;
+            }
+            if (!ini.isBefore(fin)) {
+                break;
+            }
+            filas += self.reconstruirRango(ini, fin);
+        }
+        LOG.log(Level.INFO, "Ventas por hora reconstruidas de {0} a {1}: {2} filas",
+                new Object[]{desde, hasta, filas});
+        return filas;
+    }
+
+    /**
+     * Un tramo de {@link #reconstruir} en su propia transacción; público solo
+     * para que el contenedor abra la transacción nueva.
+     *
+     * Antes de borrar se bloquean las facturas del tramo (UPDATE sin cambios):
+     * una anulación de esas fechas que esté en curso termina antes del
+     * recálculo, y una que empiece después espera a que este haga commit y
+     * aplica su delta sobre las filas nuevas. Sin esto una anulación podía
+     * quedar fuera del recálculo y además restarse encima.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int reconstruirRango(LocalDateTime ini, LocalDateTime fin) {
+        try {
+            em.createQuery("UPDATE Factura f SET f.version = f.version "
+                    + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin")
+                    .setParameter("ini", ini).setParameter("fin", fin).executeUpdate();
+            em.createQuery("DELETE FROM VentaHora v WHERE v.hora >= :ini AND v.hora < :fin")
+                    .setParameter("ini", ini).setParameter("fin", fin).executeUpdate();
+            em.createQuery("DELETE FROM VentaHoraProducto v WHERE v.hora >= :ini AND v.hora < :fin")
+                    .setParameter("ini", ini).setParameter("fin", fin).executeUpdate();
+            boolean diaCompleto = fin.equals(ini.plusDays(1));
+            if (diaCompleto) {
+                em.createQuery("DELETE FROM VentaDia v WHERE v.dia = :dia")
+                        .setParameter("dia", ini.toLocalDate()).executeUpdate();
+                em.createQuery("DELETE FROM VentaDiaCliente v WHERE v.dia = :dia")
+                        .setParameter("dia", ini.toLocalDate()).executeUpdate();
+            }
+
+            Map<ClaveFactura, Montos> facturas = new HashMap<>();
+            Map<ClaveDia, Montos> dias = new HashMap<>();
+            Map<ClaveCliente, Montos> clientes = new HashMap<>();
+            for (Object[] r : em.createQuery(
+                    "SELECT f.fechaHora, u.id, os.id, s.id, c.id, f.subtotal, f.impuestoVenta, f.impuestoServicio, "
+                    + "f.descuento, f.total FROM Factura f JOIN f.usuario u LEFT JOIN f.cliente c "
+                    + "LEFT JOIN f.orden o LEFT JOIN o.usuario os LEFT JOIN o.mesa m LEFT JOIN m.salon s "
+                    + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin AND f.estado = 'A'", Object[].class)
+                    .setParameter("ini", ini).setParameter("fin", fin)
+                    .getResultList()) {
+                LocalDateTime h = hora((LocalDateTime) r[0]);
+                BigDecimal desc = nz((BigDecimal) r[8]);
+                long nd = desc.signum() > 0 ? 1 : 0;
+                Montos fila = new Montos();
+                fila.sumar(1, nd, nz((BigDecimal) r[5]), nz((BigDecimal) r[6]), nz((BigDecimal) r[7]),
+                        desc, nz((BigDecimal) r[9]));
+
+                facturas.computeIfAbsent(new ClaveFactura(h, (Long) r[1], id(r[2]), id(r[3])), k -> new Montos())
+                        .sumar(fila);
+                if (diaCompleto) {
+                    dias.computeIfAbsent(new ClaveDia(h.toLocalDate(), (Long) r[1], id(r[2])), k -> new Montos())
+                            .sumar(fila);
+                    if (r[4] != null) {
+                        clientes.computeIfAbsent(new ClaveCliente(h.toLocalDate(), (Long) r[4]), k -> new Montos())
+                                .sumar(fila);
+                    }
+                }
+            }
+
+            Map<ClaveProducto, Cantidades> productos = new HashMap<>();
+            Map<Long, Long> grupos = new HashMap<>();
+            for (Object[] r : em.createQuery(
+                    "SELECT f.fechaHora, p.id, g.id, f.usuario.id, s.id, d.cantidad, d.subtotal "
+                    + "FROM DetalleFactura d JOIN d.factura f JOIN d.producto p LEFT JOIN p.grupo g "
+                    + "LEFT JOIN f.orden o LEFT JOIN o.mesa m LEFT JOIN m.salon s "
+                    + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin AND f.estado = 'A'", Object[].class)
+                    .setParameter("ini", ini).setParameter("fin", fin)
+                    .getResultList()) {
+                grupos.put((Long) r[1], id(r[2]));
+                productos.computeIfAbsent(new ClaveProducto(hora((LocalDateTime) r[0]), (Long) r[1], (Long) r[3], id(r[4])),
+                        k -> new Cantidades())
+                        .sumar(((Number) r[5]).longValue(), nz((BigDecimal) r[6]));
+            }
+
+            facturas.forEach(this::escribir);
+            productos.forEach((k, c) -> insertar(k, grupos.getOrDefault(k.productoId(), NINGUNO), c));
+            dias.forEach(this::escribir);
+            clientes.forEach(this::escribir);
+
+            cambiosReportes.fire(new ReporteCacheService.Cambio(ini, null));
+            return facturas.size();
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error al reconstruir ventas por hora de " + ini + ": " + e.getMessage(), e);
+        }
+    }
+
+    // ==============================
+    // CONSULTAS
+    // ==============================
+
+    /**
+     * Hasta dónde (exclusivo) se lee el agregado: el inicio de la hora en
+     * curso. Esa hora se lee de las facturas, que es poco, y así
+     * {@link #reconstruir} nunca recalcula una hora que sigue recibiendo ventas.
+     */
+    public LocalDateTime corte() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /**
+     * Primer día que todavía no está completo en ventas_dia y ventas_dia_cliente;
+     * desde ahí los reportes por día leen las facturas.
+     */
+    public LocalDate diaCorte() {
+        return corte().toLocalDate();
+    }
+
+    /**
+     * Total vendido (facturas activas) entre {@code inicio} y {@code fin}, ambos inclusive.
+     */
+    public BigDecimal totalVentas(LocalDateTime inicio, LocalDateTime fin) {
+        Tramos t = tramos(inicio, fin);
+        BigDecimal total = BigDecimal.ZERO;
+        if (t.agregado) {
+            total = total.add(em.createQuery(
+                    "SELECT COALESCE(SUM(v.total), 0) FROM VentaHora v WHERE v.hora >= :ini AND v.hora < :fin",
+                    BigDecimal.class)
+                    .setParameter("ini", t.aggIni).setParameter("fin", t.aggFin)
+                    .getSingleResult());
+        }
+        for (LocalDateTime[] r : t.crudos) {
+            total = total.add(em.createQuery(
+                    "SELECT COALESCE(SUM(f.total), 0) FROM Factura f "
+                    + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin AND f.estado = 'A'", BigDecimal.class)
+                    .setParameter("ini", r[0]).setParameter("fin", r[1])
+                    .getSingleResult());
+        }
+        return total;
+    }
+
+    /**
+     * Cantidad vendida por producto entre {@code inicio} y {@code fin} (inclusive),
+     * opcionalmente solo de los productos que hoy pertenecen a {@code grupoId}.
+     */
+    public Map<Long, Long> cantidadesPorProducto(LocalDateTime inicio, LocalDateTime fin, Long grupoId) {
+        Tramos t = tramos(inicio, fin);
+        Map<Long, Long> out = new HashMap<>();
+        String filtroGrupo = grupoId != null
+                ? "AND %s IN (SELECT gp.id FROM Producto gp WHERE gp.grupo.id = :grupoId) " : "";
+
+        if (t.agregado) {
+            TypedQuery<Object[]> q = em.createQuery(
+                    "SELECT v.productoId, SUM(v.cantidad) FROM VentaHoraProducto v "
+                    + "WHERE v.hora >= :ini AND v.hora < :fin " + String.format(filtroGrupo, "v.productoId")
+                    + "GROUP BY v.productoId", Object[].class)
+                    .setParameter("ini", t.aggIni).setParameter("fin", t.aggFin);
+            sumarCantidades(grupoId != null ? q.setParameter("grupoId", grupoId) : q, out);
+        }
+        for (LocalDateTime[] r : t.crudos) {
+            TypedQuery<Object[]> q = em.createQuery(
+                    "SELECT d.producto.id, SUM(d.cantidad) FROM DetalleFactura d JOIN d.factura f "
+                    + "WHERE f.fechaHora >= :ini AND f.fechaHora < :fin AND f.estado = 'A' "
+                    + String.format(filtroGrupo, "d.producto.id")
+                    + "GROUP BY d.producto.id", Object[].class)
+                    .setParameter("ini", r[0]).setParameter("fin", r[1]);
+            sumarCantidades(grupoId != null ? q.setParameter("grupoId", grupoId) : q, out);
+        }
+        out.values().removeIf(c -> c == 0);
+        return out;
+    }
+
+    private static void sumarCantidades(TypedQuery<Object[]> q, Map<Long, Long> out) {
+        for (Object[] r : q.getResultList()) {
+            out.merge((Long) r[0], r[1] != null ? ((Number) r[1]).longValue() : 0L, Long::sum);
+        }
+    }
+
+    /**
+     * Parte un rango inclusivo en horas completas ya agregadas y tramos que se
+     * leen de las facturas (inicio y fin semiabiertos [ini, fin)).
+     */
+    private Tramos tramos(LocalDateTime inicio, LocalDateTime fin) {
+        Objects.requireNonNull(inicio, "inicio");
+        Objects.requireNonNull(fin, "fin");
+        LocalDateTime finExcl = fin.plusNanos(1);
+        LocalDateTime aggIni = inicio.truncatedTo(ChronoUnit.HOURS);
+        if (aggIni.isBefore(inicio)) {
+            aggIni = aggIni.plusHours(1);
+        }
+        LocalDateTime aggFin = finExcl.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime corte = corte();
+        if (aggFin.isAfter(corte)) {
+            aggFin = corte;
+        }
+
+        Tramos t = new Tramos();
+        if (aggIni.isBefore(aggFin)) {
+            t.agregado = true;
+            t.aggIni = aggIni;
+            t.aggFin = aggFin;
+            if (inicio.isBefore(aggIni)) {
+                t.crudos.add(new LocalDateTime[]{inicio, aggIni});
+            }
+            if (aggFin.isBefore(finExcl)) {
+                t.crudos.add(new LocalDateTime[]{aggFin, finExcl});
+            }
+        } else if (inicio.isBefore(finExcl)) {
+            t.crudos.add(new LocalDateTime[]{inicio, finExcl});
+        }
+        return t;
+    }
+
+    private static final class Tramos {
+        boolean agregado;
+        LocalDateTime aggIni;
+        LocalDateTime aggFin;
+        final List<LocalDateTime[]> crudos = new ArrayList<>(2);
+    }
+
+    static LocalDateTime hora(LocalDateTime t) {
+        return t.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private static Long id(Object v) {
+        return v != null ? (Long) v : NINGUNO;
+    }
+
+    private static BigDecimal nz(BigDecimal v) {
+        return v != null ? v : BigDecimal.ZERO;
+    }
+}
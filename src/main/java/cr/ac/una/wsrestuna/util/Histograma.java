@@ -0,0 +1,115 @@
+package cr.ac.una.wsrestuna.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma log-lineal de latencias en microsegundos, sin locks y de
+ * tamaño fijo.
+ *
+ * Los valores menores que {@link #SUB} caen en un bucket propio; de ahí en
+ * adelante cada potencia de 2 se parte en {@link #SUB} buckets iguales, así
+ * que el error relativo es a lo sumo 1/SUB (12,5 %) en todo el rango. Lo
+ * que llega a 2^({@link #EXP_MAX}+1) µs (~134 s) se cuenta en el último bucket.
+ * Registrar es un cálculo de bits y dos sumas atómicas.
+ */
+public final class Histograma {
+
+    /** Buckets por potencia de 2 (debe ser potencia de 2). */
+    public static final int SUB = 8;
+    private static final int SUB_BITS = 3;
+    /** Exponente del último grupo de buckets. */
+    public static final int EXP_MAX = 26;
+    /** Cantidad total de buckets. */
+    public static final int BUCKETS = (EXP_MAX - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray cuentas = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumaMicros = new LongAdder();
+
+    /** Registra una duración en microsegundos. */
+    public void registrar(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        cuentas.incrementAndGet(indice(micros));
+        sumaMicros.add(micros);
+    }
+
+    /** Bucket de un valor. */
+    static int indice(long v) {
+        if (v < SUB) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > EXP_MAX) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Límite superior (exclusivo) del bucket, en µs. */
+    public static long limiteSuperior(int indice) {
+        if (indice < SUB) {
+            return indice + 1L;
+        }
+        int exp = indice / SUB + SUB_BITS - 1;
+        int sub = indice % SUB;
+        return (1L << exp) + ((sub + 1L) << (exp - SUB_BITS));
+    }
+
+    /**
+     * Copia de las cuentas. El total se calcula de la copia, así que siempre
+     * coincide con la suma de los buckets aunque haya registros en curso.
+     */
+    public Foto foto() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = cuentas.get(i);
+            total += c[i];
+        }
+        return new Foto(c, total, sumaMicros.sum());
+    }
+
+    /** Estado del histograma en un momento dado. */
+    public static final class Foto {
+        private final long[] cuentas;
+        private final long total;
+        private final long sumaMicros;
+
+        Foto(long[] cuentas, long total, long sumaMicros) {
+            this.cuentas = cuentas;
+            this.total = total;
+            this.sumaMicros = sumaMicros;
+        }
+
+        public long getTotal() { return total; }
+        public long getSumaMicros() { return sumaMicros; }
+
+        /** Cantidad de registros menores que {@code limiteMicros}, que debe ser un límite de bucket. */
+        public long acumuladoHasta(long limiteMicros) {
+            long n = 0;
+            for (int i = 0; i < BUCKETS && limiteSuperior(i) <= limiteMicros; i++) {
+                n += cuentas[i];
+            }
+            return n;
+        }
+
+        /** Percentil aproximado (límite superior del bucket), en µs. */
+        public long percentil(double p) {
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(total * p);
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += cuentas[i];
+                if (n >= objetivo) {
+                    return limiteSuperior(i);
+                }
+            }
+            return limiteSuperior(BUCKETS - 1);
+        }
+    }
+}
@@ -3,17 +3,120 @@ package cr.ac.una.wsrestuna.util;
 import net.sf.jasperreports.engine.*;
 import net.sf.jasperreports.engine.data.JRBeanCollectionDataSource;
 import net.sf.jasperreports.engine.data.JRMapCollectionDataSource;
+import net.sf.jasperreports.engine.fill.JRSwapFileVirtualizer;
+import net.sf.jasperreports.engine.util.JRSwapFile;
 
+import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public final class JasperUtil {
 
+    private static final Logger LOG = Logger.getLogger(JasperUtil.class.getName());
+
+    /**
+     * Modo desarrollo (-Drestuna.reportes.recargar=true): si el .jrxml cambió
+     * en disco se vuelve a compilar. En producción se compila una sola vez.
+     */
+    private static final boolean RECARGAR = Boolean.getBoolean("restuna.reportes.recargar");
+
+    /**
+     * Páginas llenas que {@link #streamPdf} mantiene en memoria; el resto va al
+     * archivo de intercambio en {@code restuna.reportes.swapDir}.
+     */
+    private static final int PAGINAS_EN_MEMORIA = Integer.getInteger("restuna.reportes.paginasMemoria", 50);
+    private static final String SWAP_DIR = System.getProperty("restuna.reportes.swapDir",
+            System.getProperty("java.io.tmpdir"));
+
+    /** Plantillas ya compiladas, por ruta en el classpath. */
+    private static final Map<String, Compilada> PLANTILLAS = new ConcurrentHashMap<>();
+
+    private static final class Compilada {
+        final JasperReport report;
+        final long modificada;
+
+        Compilada(JasperReport report, long modificada) {
+            this.report = report;
+            this.modificada = modificada;
+        }
+    }
+
     private JasperUtil() {}
 
+    /**
+     * Devuelve la plantilla compilada; la compila la primera vez que se pide.
+     */
+    public static JasperReport plantilla(String jrxmlOnClasspath) {
+        URL url = JasperUtil.class.getResource(jrxmlOnClasspath);
+        if (url == null) {
+            throw new IllegalArgumentException("Plantilla no encontrada en classpath: " + jrxmlOnClasspath);
+        }
+        long modificada = RECARGAR ? modificada(url) : 0L;
+
+        Compilada c = PLANTILLAS.get(jrxmlOnClasspath);
+        if (c != null && c.modificada == modificada) {
+            return c.report;
+        }
+        return PLANTILLAS.compute(jrxmlOnClasspath, (k, actual) ->
+                actual != null && actual.modificada == modificada
+                        ? actual
+                        : new Compilada(compilar(url, k), modificada)).report;
+    }
+
+    /**
+     * Igual que {@link #plantilla(String)}, probando varias rutas en orden.
+     */
+    public static JasperReport plantilla(String... candidatos) {
+        for (String c : candidatos) {
+            if (JasperUtil.class.getResource(c) != null) {
+                return plantilla(c);
+            }
+        }
+        throw new IllegalStateException("Plantilla no encontrada. Probé: " + Arrays.toString(candidatos));
+    }
+
+    /**
+     * Compila por adelantado las plantillas indicadas (se llama al arrancar).
+     */
+    public static void precompilar(String... rutas) {
+        for (String ruta : rutas) {
+            try {
+                plantilla(ruta);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "No se pudo precompilar " + ruta, e);
+            }
+        }
+    }
+
+    private static JasperReport compilar(URL url, String ruta) {
+        long inicio = System.nanoTime();
+        try (InputStream in = url.openStream()) {
+            JasperReport report = JasperCompileManager.compileReport(in);
+            LOG.log(Level.INFO, "Plantilla {0} compilada en {1} ms",
+                    new Object[]{ruta, (System.nanoTime() - inicio) / 1_000_000});
+            return report;
+        } catch (Exception e) {
+            throw new RuntimeException("Error compilando plantilla " + ruta + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long modificada(URL url) {
+        try {
+            return "file".equals(url.getProtocol()) ? new File(url.toURI()).lastModified() : 0L;
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+
     public static byte[] renderPdfFromMaps(
             String jrxmlOnClasspath,
             Collection<? extends Map<String, ?>> data,
@@ -39,16 +142,45 @@ public final class JasperUtil {
         return compileFillExport(jrxmlOnClasspath, ds, params);
     }
 
+    /**
+     * Llena el reporte y escribe el PDF directo en {@code out}, sin armar un byte[].
+     *
+     * Pensado junto con {@link LotesDataSource}: los datos llegan por lotes y
+     * las páginas ya llenas se pasan a un archivo de intercambio, así la
+     * memoria usada no depende de la cantidad de filas.
+     */
+    public static void streamPdf(
+            String jrxmlOnClasspath,
+            JRDataSource dataSource,
+            Map<String, Object> params,
+            OutputStream out
+    ) {
+        JRSwapFileVirtualizer virtualizer = new JRSwapFileVirtualizer(
+                PAGINAS_EN_MEMORIA, new JRSwapFile(SWAP_DIR, 4096, 64), true);
+        try {
+            JasperReport report = plantilla(jrxmlOnClasspath);
+
+            Map<String, Object> mutableParams = new HashMap<>();
+            if (params != null) mutableParams.putAll(params);
+            mutableParams.put(JRParameter.REPORT_VIRTUALIZER, virtualizer);
+
+            JasperPrint print = JasperFillManager.fillReport(report, mutableParams, dataSource);
+            virtualizer.setReadOnly(true);
+            JasperExportManager.exportReportToPdfStream(print, out);
+        } catch (Exception e) {
+            throw new RuntimeException("Error generando PDF con plantilla " + jrxmlOnClasspath + ": " + e.getMessage(), e);
+        } finally {
+            virtualizer.cleanup();
+        }
+    }
+
     private static byte[] compileFillExport(
             String jrxmlOnClasspath,
             JRDataSource dataSource,
             Map<String, Object> params
     ) {
-        try (InputStream in = JasperUtil.class.getResourceAsStream(jrxmlOnClasspath)) {
-            if (in == null) {
-                throw new IllegalArgumentException("Plantilla no encontrada en classpath: " + jrxmlOnClasspath);
-            }
-            JasperReport report = JasperCompileManager.compileReport(in);
+        try {
+            JasperReport report = plantilla(jrxmlOnClasspath);
 
             Map<String, Object> mutableParams = new HashMap<>();
             if (params != null) mutableParams.putAll(params);
@@ -0,0 +1,81 @@
+package cr.ac.una.wsrestuna.util;
+
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRField;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JRDataSource de solo avance que pide las filas por lotes.
+ *
+ * Solo mantiene en memoria el lote actual: cuando se agota, le pasa al
+ * {@link Lector} la última fila leída para que traiga las siguientes
+ * (keyset). Un lote con menos filas que el tamaño pedido marca el final.
+ */
+public class LotesDataSource implements JRDataSource {
+
+    public static final int TAMANO_DEFECTO = 500;
+
+    /**
+     * Trae hasta {@code tamano} filas posteriores a {@code ultima} (null en el primer lote).
+     */
+    @FunctionalInterface
+    public interface Lector {
+        List<Map<String, Object>> siguiente(Map<String, Object> ultima, int tamano);
+    }
+
+    private final Lector lector;
+    private final int tamano;
+
+    private List<Map<String, Object>> lote = Collections.emptyList();
+    private int indice = -1;
+    private boolean terminado = false;
+    private long leidas = 0;
+
+    public LotesDataSource(Lector lector) {
+        this(lector, TAMANO_DEFECTO);
+    }
+
+    public LotesDataSource(Lector lector, int tamano) {
+        this.lector = lector;
+        this.tamano = tamano;
+    }
+
+    @Override
+    public boolean next() throws JRException {
+        if (indice + 1 < lote.size()) {
+            indice++;
+            leidas++;
+            return true;
+        }
+        if (terminado) {
+            return false;
+        }
+
+        Map<String, Object> ultima = lote.isEmpty() ? null : lote.get(lote.size() - 1);
+        try {
+            lote = lector.siguiente(ultima, tamano);
+        } catch (RuntimeException e) {
+            throw new JRException("Error leyendo lote de datos: " + e.getMessage(), e);
+        }
+        if (lote == null) {
+            lote = Collections.emptyList();
+        }
+        terminado = lote.size() < tamano;
+        indice = -1;
+        return next();
+    }
+
+    @Override
+    public Object getFieldValue(JRField field) throws JRException {
+        return lote.get(indice).get(field.getName());
+    }
+
+    /** Filas entregadas hasta ahora. */
+    public long getLeidas() {
+        return leidas;
+    }
+}
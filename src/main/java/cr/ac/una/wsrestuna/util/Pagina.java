@@ -0,0 +1,60 @@
+package cr.ac.una.wsrestuna.util;
+
+import jakarta.persistence.TypedQuery;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados con paginación por keyset (id descendente).
+ *
+ * El cliente manda el nextCursor de la página anterior y el servidor sigue
+ * con "id < cursor", así que cada página cuesta lo mismo sin importar cuántas
+ * filas tenga la tabla. El tamaño de página lo limita el servidor.
+ */
+public final class Pagina<T> {
+
+    public static final int LIMITE_DEFECTO = 50;
+    public static final int LIMITE_MAXIMO = 200;
+
+    private final List<T> items;
+    private final Long nextCursor;
+
+    private Pagina(List<T> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+
+    /** null cuando ya no hay más páginas. */
+    public Long getNextCursor() { return nextCursor; }
+
+    /**
+     * Tamaño de página efectivo: el solicitado, acotado a [1, LIMITE_MAXIMO].
+     */
+    public static int limite(Integer solicitado) {
+        if (solicitado == null || solicitado <= 0) {
+            return LIMITE_DEFECTO;
+        }
+        return Math.min(solicitado, LIMITE_MAXIMO);
+    }
+
+    /**
+     * Ejecuta una consulta de keyset. La consulta debe filtrar con
+     * ":cursor" (id &lt; cursor) y ordenar por id descendente.
+     * Se pide una fila de más para saber si hay otra página.
+     */
+    public static <T> Pagina<T> de(TypedQuery<T> query, Long cursor, Integer limite, Function<T, Long> id) {
+        int max = limite(limite);
+        List<T> filas = query
+                .setParameter("cursor", cursor != null ? cursor : Long.MAX_VALUE)
+                .setMaxResults(max + 1)
+                .getResultList();
+
+        if (filas.size() <= max) {
+            return new Pagina<>(filas, null);
+        }
+        List<T> items = filas.subList(0, max);
+        return new Pagina<>(items, id.apply(items.get(max - 1)));
+    }
+}
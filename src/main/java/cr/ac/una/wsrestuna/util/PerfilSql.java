@@ -0,0 +1,96 @@
+package cr.ac.una.wsrestuna.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Conteo de sentencias SQL de la petición en curso (por hilo).
+ *
+ * MetricasFilter abre el perfil al entrar y lo cierra al salir; el listener
+ * de EclipseLink que registra SqlPerfilService avisa antes y después de cada
+ * llamada a la BD. Fuera de una petición (timers, hilos del executor) no hay
+ * perfil y no se cuenta nada.
+ *
+ * Cada sentencia se agrupa por su forma: el SQL con los literales numéricos
+ * y de texto cambiados por ?, para que el mismo SELECT con distinto id
+ * cuente como repetido.
+ */
+public final class PerfilSql {
+
+    private static final Pattern TEXTOS = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMEROS = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    private static final ThreadLocal<PerfilSql> ACTUAL = new ThreadLocal<>();
+
+    private int sentencias;
+    private long filas;
+    private long dbNanos;
+    private long inicioLlamada;
+    private final Map<String, int[]> formas = new HashMap<>();
+
+    private PerfilSql() {
+    }
+
+    /** Empieza a contar en este hilo. */
+    public static void iniciar() {
+        ACTUAL.set(new PerfilSql());
+    }
+
+    /** Deja de contar y devuelve lo acumulado, o null si no había perfil. */
+    public static PerfilSql terminar() {
+        PerfilSql p = ACTUAL.get();
+        ACTUAL.remove();
+        return p;
+    }
+
+    /** true si este hilo está dentro de una petición medida. */
+    public static boolean activo() {
+        return ACTUAL.get() != null;
+    }
+
+    /** Llamado por el listener antes de ejecutar una sentencia. */
+    public static void antes() {
+        PerfilSql p = ACTUAL.get();
+        if (p != null) {
+            p.inicioLlamada = System.nanoTime();
+        }
+    }
+
+    /** Llamado por el listener después de ejecutar una sentencia. */
+    public static void despues(String sql, long filas) {
+        PerfilSql p = ACTUAL.get();
+        if (p == null) {
+            return;
+        }
+        if (p.inicioLlamada != 0) {
+            p.dbNanos += System.nanoTime() - p.inicioLlamada;
+            p.inicioLlamada = 0;
+        }
+        p.sentencias++;
+        p.filas += Math.max(0, filas);
+        if (sql != null) {
+            p.formas.computeIfAbsent(forma(sql), k -> new int[1])[0]++;
+        }
+    }
+
+    public int getSentencias() { return sentencias; }
+    public long getFilas() { return filas; }
+    public long getDbMicros() { return dbNanos / 1000L; }
+
+    /** La forma más repetida y cuántas veces se ejecutó, o null si no hubo sentencias. */
+    public Map.Entry<String, Integer> masRepetida() {
+        Map.Entry<String, Integer> max = null;
+        for (Map.Entry<String, int[]> e : formas.entrySet()) {
+            if (max == null || e.getValue()[0] > max.getValue()) {
+                max = Map.entry(e.getKey(), e.getValue()[0]);
+            }
+        }
+        return max;
+    }
+
+    static String forma(String sql) {
+        String s = TEXTOS.matcher(sql).replaceAll("?");
+        return NUMEROS.matcher(s).replaceAll("?");
+    }
+}
@@ -0,0 +1,72 @@
+package cr.ac.una.wsrestuna.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización y n-gramas para los índices de búsqueda en memoria.
+ *
+ * Se quitan tildes y diéresis (la ñ queda como n), se pasa a minúsculas y todo
+ * lo que no es letra o dígito se vuelve un espacio, así "Café  Özil" y
+ * "cafe ozil" producen el mismo texto.
+ */
+public final class TextoBusqueda {
+
+    /** Largo de los n-gramas para búsqueda dentro de las palabras. */
+    public static final int N = 3;
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+
+    private TextoBusqueda() {
+    }
+
+    /** Texto normalizado, sin espacios al inicio ni al final; "" si es null. */
+    public static String normalizar(String s) {
+        if (s == null || s.isEmpty()) {
+            return "";
+        }
+        String sinMarcas = MARCAS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARADORES.matcher(sinMarcas.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    /** Palabras del texto ya normalizado. */
+    public static List<String> palabras(String normalizado) {
+        List<String> out = new ArrayList<>();
+        for (String p : normalizado.split(" ")) {
+            if (!p.isEmpty()) {
+                out.add(p);
+            }
+        }
+        return out;
+    }
+
+    /** N-gramas de una palabra; vacío si tiene menos de {@link #N} caracteres. */
+    public static List<String> ngramas(String palabra) {
+        List<String> out = new ArrayList<>(Math.max(0, palabra.length() - N + 1));
+        for (int i = 0; i + N <= palabra.length(); i++) {
+            out.add(palabra.substring(i, i + N));
+        }
+        return out;
+    }
+
+    /** Intersección de dos listas ordenadas de posiciones. */
+    public static int[] interseccion(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return k == out.length ? out : java.util.Arrays.copyOf(out, k);
+    }
+}